@@ -0,0 +1,77 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.util.Base62Encoder;
+import com.urlshortener.util.IdScrambler;
+import com.urlshortener.util.ShortCodeCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short code encode/decode cost per call, for a spread of IDs around the given magnitude.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class Base62Benchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000", "1000000000"})
+    public long magnitude;
+
+    private final long[] ids = new long[SAMPLES];
+    private final String[] codes = new String[SAMPLES];
+    private final String[] scrambledCodes = new String[SAMPLES];
+    private ShortCodeCodec scrambledCodec;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        scrambledCodec = new ShortCodeCodec(7, new IdScrambler(7, 42L));
+        for (int i = 0; i < SAMPLES; i++) {
+            ids[i] = magnitude + random.nextLong(magnitude);
+            codes[i] = Base62Encoder.encode(ids[i]);
+            scrambledCodes[i] = scrambledCodec.encode(ids[i]);
+        }
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (SAMPLES - 1);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base62Encoder.encode(ids[next()]);
+    }
+
+    @Benchmark
+    public long decode() {
+        return Base62Encoder.decode(codes[next()]);
+    }
+
+    @Benchmark
+    public String encodeScrambled() {
+        return scrambledCodec.encode(ids[next()]);
+    }
+
+    @Benchmark
+    public long decodeScrambled() {
+        return scrambledCodec.decode(scrambledCodes[next()]);
+    }
+}
@@ -0,0 +1,213 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.benchmark.support.InMemoryMongoTemplate;
+import com.urlshortener.benchmark.support.InMemoryReactiveRedisTemplate;
+import com.urlshortener.benchmark.support.InMemoryRedisTemplate;
+import com.urlshortener.benchmark.support.InMemoryUrlMappingRepository;
+import com.urlshortener.cache.CacheInvalidationPublisher;
+import com.urlshortener.cache.TwoLevelCacheManager;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.repo.UrlMappingRepository;
+import com.urlshortener.service.ClickAnalyticsService;
+import com.urlshortener.service.ClickBufferService;
+import com.urlshortener.service.CounterService;
+import com.urlshortener.service.FallbackClickService;
+import com.urlshortener.service.HotKeyService;
+import com.urlshortener.service.LinkStateStore;
+import com.urlshortener.service.ReactiveRedirectService;
+import com.urlshortener.service.RedisCircuitBreaker;
+import com.urlshortener.service.ShortCodeFilter;
+import com.urlshortener.service.UrlShortenerCacheService;
+import com.urlshortener.service.UrlShortenerService;
+import com.urlshortener.util.ShortCodeCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The servlet and reactive redirect paths under more concurrent requests than the server has
+ * threads, with REDIRECT_SCRIPT taking scriptLatencyMicros per call (a healthy round-trip, and a
+ * latency spike).
+ *
+ * Each benchmark thread is a client; its request is handed to a fixed pool of serverThreads
+ * standing in for Tomcat's. servlet runs UrlShortenerService.getUrlMappingByShortCode on a pool
+ * thread, which is parked for the whole script call, so requests queue for threads once
+ * clients × latency outgrows the pool. reactive only subscribes ReactiveRedirectService's
+ * pipeline on a pool thread and frees it; the script's reply arrives on Reactor's timer. Both
+ * share the same two-level cache, seeded so every lookup is a local hit, and count every click
+ * with the script (no pinning, no buffering), so the script's latency is the only I/O.
+ *
+ * Throughput is requests completed per millisecond across all clients; the sample-time run gives
+ * the latency percentiles a client sees, queueing included.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(64)
+@State(Scope.Benchmark)
+public class ConcurrentRedirectBenchmark {
+
+    private static final int LINKS = 10_000;
+    private static final int SAMPLES = 1 << 14;
+    private static final String[] VISITORS = {"203.0.113.7", "198.51.100.23", "192.0.2.140", "203.0.113.99"};
+
+    @Param({"500", "5000"})
+    public long scriptLatencyMicros;
+
+    @Param({"16"})
+    public int serverThreads;
+
+    private UrlShortenerService urlShortenerService;
+    private ReactiveRedirectService reactiveRedirectService;
+    private CounterService counterService;
+    private ExecutorService server;
+    private final String[] codes = new String[SAMPLES];
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ShortenerMetrics metrics = new ShortenerMetrics(meterRegistry);
+        UrlMappingRepository repository = InMemoryUrlMappingRepository.create();
+        InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate(scriptLatencyMicros);
+        InMemoryReactiveRedisTemplate reactiveRedisTemplate =
+                new InMemoryReactiveRedisTemplate(new InMemoryRedisTemplate(), scriptLatencyMicros);
+        ShortCodeCodec codec = new ShortCodeCodec(0, null);
+        counterService = new CounterService(new InMemoryMongoTemplate(0), metrics);
+
+        RedisCircuitBreaker circuitBreaker = new RedisCircuitBreaker(metrics);
+        ReflectionTestUtils.setField(circuitBreaker, "failureThreshold", 5);
+        ReflectionTestUtils.setField(circuitBreaker, "openMillis", 5000L);
+        circuitBreaker.init();
+
+        ClickAnalyticsService clickAnalytics = new ClickAnalyticsService(redisTemplate, null, circuitBreaker, metrics);
+        ReflectionTestUtils.setField(clickAnalytics, "lookbackHours", 2);
+        LinkStateStore linkStateStore = new LinkStateStore(redisTemplate, codec, clickAnalytics);
+        ReflectionTestUtils.setField(linkStateStore, "dirtyShards", 16);
+
+        ClickBufferService clickBufferService = new ClickBufferService(linkStateStore, clickAnalytics);
+        ReflectionTestUtils.setField(clickBufferService, "enabled", false);
+        HotKeyService hotKeyService = new HotKeyService(clickBufferService, metrics);
+        ReflectionTestUtils.setField(hotKeyService, "enabled", false);
+
+        // Local tier over an in-memory "remote" one; every link is put in up front
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(
+                new ConcurrentMapCacheManager(),
+                null,
+                new CacheInvalidationPublisher(redisTemplate),
+                circuitBreaker,
+                LINKS * 2L,
+                Duration.ofHours(1),
+                null,
+                meterRegistry);
+
+        UrlShortenerCacheService cacheService = new UrlShortenerCacheService(
+                repository, cacheManager, redisTemplate, circuitBreaker, metrics);
+        ReflectionTestUtils.setField(cacheService, "clusterLockMillis", 0L);
+        cacheService.init();
+
+        ShortCodeFilter shortCodeFilter = new ShortCodeFilter(redisTemplate, null, codec, null, circuitBreaker);
+        ReflectionTestUtils.setField(shortCodeFilter, "ready", true);
+
+        urlShortenerService = new UrlShortenerService(
+                repository,
+                counterService,
+                null,
+                null,
+                linkStateStore,
+                cacheService,
+                clickBufferService,
+                clickAnalytics,
+                codec,
+                shortCodeFilter,
+                circuitBreaker,
+                new FallbackClickService(null, linkStateStore, circuitBreaker, metrics),
+                hotKeyService,
+                metrics
+        );
+
+        // No ReactiveMongoTemplate: the cache is seeded, so nothing loads from MongoDB
+        reactiveRedirectService = new ReactiveRedirectService(urlShortenerService, linkStateStore,
+                reactiveRedisTemplate, null, cacheManager, codec, circuitBreaker, metrics);
+        ReflectionTestUtils.setField(reactiveRedirectService, "enabled", true);
+        reactiveRedirectService.init();
+
+        Cache cache = cacheManager.getCache("urlMappingsByShortCode");
+        LocalDateTime now = LocalDateTime.now();
+        String[] linkCodes = new String[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            long id = i + 1;
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortCode(codec.encode(id));
+            mapping.setOriginalUrl("https://example.com/articles/" + id);
+            mapping.setClickCount(0L);
+            mapping.setCreatedAt(now);
+            mapping.setExpiryDate(now.plusDays(30));
+            repository.save(mapping);
+            cache.put(mapping.getShortCode(), mapping);
+            shortCodeFilter.add(id);
+            linkCodes[i] = mapping.getShortCode();
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            codes[i] = linkCodes[random.nextInt(LINKS)];
+        }
+
+        server = Executors.newFixedThreadPool(serverThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.shutdownNow();
+        counterService.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public UrlMapping servlet(Cursor cursor) throws Exception {
+        cursor.next = (cursor.next + 1) & (SAMPLES - 1);
+        String code = codes[cursor.next];
+        String visitor = VISITORS[cursor.next & (VISITORS.length - 1)];
+        return server.submit(() -> urlShortenerService.getUrlMappingByShortCode(code, visitor)).get();
+    }
+
+    @Benchmark
+    public UrlMapping reactive(Cursor cursor) throws Exception {
+        cursor.next = (cursor.next + 1) & (SAMPLES - 1);
+        String code = codes[cursor.next];
+        String visitor = VISITORS[cursor.next & (VISITORS.length - 1)];
+        CompletableFuture<UrlMapping> reply = new CompletableFuture<>();
+        server.execute(() -> reactiveRedirectService.getUrlMappingByShortCode(code, visitor)
+                .subscribe(reply::complete, reply::completeExceptionally));
+        return reply.get();
+    }
+}
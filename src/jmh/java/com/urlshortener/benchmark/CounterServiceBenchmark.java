@@ -0,0 +1,56 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.benchmark.support.InMemoryMongoTemplate;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.service.CounterService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID handout throughput under contention. mongoLatencyMicros simulates the findAndModify
+ * round-trip, which is what callers end up waiting on when a range runs out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+@State(Scope.Benchmark)
+public class CounterServiceBenchmark {
+
+    @Param({"0", "1000"})
+    public long mongoLatencyMicros;
+
+    private CounterService counterService;
+
+    @Setup
+    public void setUp() {
+        ShortenerMetrics metrics = new ShortenerMetrics(new SimpleMeterRegistry());
+        counterService = new CounterService(new InMemoryMongoTemplate(mongoLatencyMicros), metrics);
+    }
+
+    @TearDown
+    public void tearDown() {
+        counterService.shutdown();
+    }
+
+    @Benchmark
+    public long nextSequence() {
+        return counterService.getNextSequence("url_sequence");
+    }
+}
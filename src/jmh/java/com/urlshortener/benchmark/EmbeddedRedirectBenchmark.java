@@ -0,0 +1,93 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.embedded.EmbeddedStore;
+import com.urlshortener.embedded.EmbeddedUrlShortener;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.ShortCodeCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * EmbeddedUrlShortener.getUrlMappingByShortCode against a real EmbeddedStore in a temp directory:
+ * decode, offset lookup, expiry and URL read from the mapped log, click increment. Same links and
+ * access pattern as RedirectBenchmark, so the two compare the Java-side cost of both profiles
+ * (the networked one additionally pays its Redis round-trip, which RedirectBenchmark leaves out).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class EmbeddedRedirectBenchmark {
+
+    private static final int LINKS = 10_000;
+    private static final int SAMPLES = 1 << 14;
+
+    private Path dataDir;
+    private EmbeddedStore store;
+    private EmbeddedUrlShortener urlShortener;
+    private final String[] codes = new String[SAMPLES];
+
+    @Setup
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("embedded-bench");
+        store = new EmbeddedStore();
+        ReflectionTestUtils.setField(store, "dataDir", dataDir.toString());
+        store.open();
+
+        urlShortener = new EmbeddedUrlShortener(store, new ShortCodeCodec(0, null),
+                new ShortenerMetrics(new SimpleMeterRegistry()));
+
+        String[] linkCodes = new String[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            linkCodes[i] = urlShortener.shortenUrl("https://example.com/articles/" + (i + 1), null);
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            codes[i] = linkCodes[random.nextInt(LINKS)];
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public UrlMapping redirect(Cursor cursor) {
+        cursor.next = (cursor.next + 1) & (SAMPLES - 1);
+        return urlShortener.getUrlMappingByShortCode(codes[cursor.next], "203.0.113.7");
+    }
+}
@@ -0,0 +1,162 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.benchmark.support.InMemoryMongoTemplate;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.benchmark.support.InMemoryRedisTemplate;
+import com.urlshortener.benchmark.support.InMemoryUrlMappingRepository;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.repo.UrlMappingRepository;
+import com.urlshortener.service.ClickAnalyticsService;
+import com.urlshortener.service.ClickBufferService;
+import com.urlshortener.service.CounterService;
+import com.urlshortener.service.FallbackClickService;
+import com.urlshortener.service.HotKeyService;
+import com.urlshortener.service.LinkStateStore;
+import com.urlshortener.service.RedisCircuitBreaker;
+import com.urlshortener.service.ShortCodeFilter;
+import com.urlshortener.service.UrlShortenerCacheService;
+import com.urlshortener.service.UrlShortenerService;
+import com.urlshortener.util.ShortCodeCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java-side cost of UrlShortenerService.getUrlMappingByShortCode with the repository, cache and
+ * Redis replaced by in-memory stand-ins: codec validation, mapping lookup, script argument
+ * building (or click buffering) and the result handling. The short code filter is loaded with
+ * every seeded ID. Network time is deliberately excluded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class RedirectBenchmark {
+
+    private static final int LINKS = 10_000;
+    private static final int SAMPLES = 1 << 14;
+    private static final String[] VISITORS = {"203.0.113.7", "198.51.100.23", "192.0.2.140", "203.0.113.99"};
+
+    @Param({"false", "true"})
+    public boolean bufferedClicks;
+
+    private UrlShortenerService urlShortenerService;
+    private CounterService counterService;
+    private ClickBufferService clickBufferService;
+    private final String[] codes = new String[SAMPLES];
+
+    @Setup
+    public void setUp() {
+        ShortenerMetrics metrics = new ShortenerMetrics(new SimpleMeterRegistry());
+        UrlMappingRepository repository = InMemoryUrlMappingRepository.create();
+        InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+        ShortCodeCodec codec = new ShortCodeCodec(0, null);
+        counterService = new CounterService(new InMemoryMongoTemplate(0), metrics);
+
+        RedisCircuitBreaker circuitBreaker = new RedisCircuitBreaker(metrics);
+        ReflectionTestUtils.setField(circuitBreaker, "failureThreshold", 5);
+        ReflectionTestUtils.setField(circuitBreaker, "openMillis", 5000L);
+        circuitBreaker.init();
+
+        ClickAnalyticsService clickAnalytics = new ClickAnalyticsService(redisTemplate, null, circuitBreaker, metrics);
+        ReflectionTestUtils.setField(clickAnalytics, "lookbackHours", 2);
+        LinkStateStore linkStateStore = new LinkStateStore(redisTemplate, codec, clickAnalytics);
+        ReflectionTestUtils.setField(linkStateStore, "dirtyShards", 16);
+
+        clickBufferService = new ClickBufferService(linkStateStore, clickAnalytics);
+        ReflectionTestUtils.setField(clickBufferService, "enabled", bufferedClicks);
+        ReflectionTestUtils.setField(clickBufferService, "flushBatchSize", 500);
+
+        // No scheduler here, so the window never rolls: at most maxPinned of the uniformly hit links get pinned
+        HotKeyService hotKeyService = new HotKeyService(clickBufferService, metrics);
+        ReflectionTestUtils.setField(hotKeyService, "enabled", true);
+        ReflectionTestUtils.setField(hotKeyService, "windowMillis", 10_000L);
+        ReflectionTestUtils.setField(hotKeyService, "pinRatePerSecond", 100L);
+        ReflectionTestUtils.setField(hotKeyService, "maxPinned", 100);
+        ReflectionTestUtils.setField(hotKeyService, "topK", 20);
+        hotKeyService.init();
+
+        // No-op cache: every lookup is a single-flight load from the in-memory repository, as before
+        UrlShortenerCacheService cacheService = new UrlShortenerCacheService(
+                repository, new NoOpCacheManager(), redisTemplate, circuitBreaker, metrics);
+        ReflectionTestUtils.setField(cacheService, "clusterLockMillis", 0L);
+        cacheService.init();
+
+        ShortCodeFilter shortCodeFilter = new ShortCodeFilter(redisTemplate, null, codec, null, circuitBreaker);
+        ReflectionTestUtils.setField(shortCodeFilter, "ready", true);
+
+        urlShortenerService = new UrlShortenerService(
+                repository,
+                counterService,
+                null,
+                null,
+                linkStateStore,
+                cacheService,
+                clickBufferService,
+                clickAnalytics,
+                codec,
+                shortCodeFilter,
+                circuitBreaker,
+                new FallbackClickService(null, linkStateStore, circuitBreaker, metrics),
+                hotKeyService,
+                metrics
+        );
+
+        LocalDateTime now = LocalDateTime.now();
+        String[] linkCodes = new String[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            long id = i + 1;
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortCode(codec.encode(id));
+            mapping.setOriginalUrl("https://example.com/articles/" + id);
+            mapping.setClickCount(0L);
+            mapping.setCreatedAt(now);
+            mapping.setExpiryDate(now.plusDays(30));
+            repository.save(mapping);
+            shortCodeFilter.add(id);
+            linkCodes[i] = mapping.getShortCode();
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            codes[i] = linkCodes[random.nextInt(LINKS)];
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        clickBufferService.flush();
+        counterService.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public UrlMapping redirect(Cursor cursor) {
+        cursor.next = (cursor.next + 1) & (SAMPLES - 1);
+        return urlShortenerService.getUrlMappingByShortCode(codes[cursor.next], VISITORS[cursor.next & (VISITORS.length - 1)]);
+    }
+}
@@ -0,0 +1,78 @@
+package com.urlshortener.benchmark;
+
+import com.urlshortener.cache.UrlMappingRedisSerializer;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.UrlFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of UrlMapping as a Redis cache value: JDK serialization (the RedisCacheConfiguration
+ * default, used before UrlMappingRedisSerializer) against the compact format.
+ * Every L2 cache hit pays deserialize(). The encoded sizes are printed once at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class UrlMappingSerializationBenchmark {
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+    private final UrlMappingRedisSerializer compactSerializer = new UrlMappingRedisSerializer();
+
+    private UrlMapping mapping;
+    private byte[] jdkBytes;
+    private byte[] compactBytes;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 2, 12, 10, 30);
+        mapping = new UrlMapping();
+        mapping.setId("65ca1b2f9d3e4a0012345678");
+        mapping.setShortCode("dnh3");
+        mapping.setOriginalUrl("https://example.com/articles/2026/02/12/some-fairly-typical-long-article-slug?utm_source=newsletter");
+        mapping.setUrlFingerprint(UrlFingerprint.of(mapping.getOriginalUrl()));
+        mapping.setClickCount(42L);
+        mapping.setCreatedAt(createdAt);
+        mapping.setExpiryDate(createdAt.plusDays(30));
+
+        jdkBytes = jdkSerializer.serialize(mapping);
+        compactBytes = compactSerializer.serialize(mapping);
+        System.out.println("JDK serialized UrlMapping: " + jdkBytes.length + " bytes, compact: "
+                + compactBytes.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] jdkSerialize() {
+        return jdkSerializer.serialize(mapping);
+    }
+
+    @Benchmark
+    public Object jdkDeserialize() {
+        return jdkSerializer.deserialize(jdkBytes);
+    }
+
+    @Benchmark
+    public byte[] compactSerialize() {
+        return compactSerializer.serialize(mapping);
+    }
+
+    @Benchmark
+    public Object compactDeserialize() {
+        return compactSerializer.deserialize(compactBytes);
+    }
+}
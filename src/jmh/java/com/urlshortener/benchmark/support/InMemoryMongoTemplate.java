@@ -0,0 +1,126 @@
+package com.urlshortener.benchmark.support;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoClients;
+import com.urlshortener.model.UrlMapping;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MongoTemplate stand-in for the `counters` collection: findAndModify with $inc on "seq"
+ * is served from memory, with an optional simulated round-trip latency.
+ *
+ * Unordered bulk writes are accepted too, each execute costing one round-trip: click counts
+ * written to url_mappings ($set or $inc of clickCount, by shortCode) are kept and readable with
+ * clickCounts(); writes to any other collection (the click_stats rollup) are only counted.
+ * The underlying client never connects — any other operation fails.
+ */
+public class InMemoryMongoTemplate extends MongoTemplate {
+
+    private final ConcurrentMap<Object, Long> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> clickCounts = new ConcurrentHashMap<>();
+    private final LongAdder bulkWrites = new LongAdder();
+    private final LongAdder otherWrites = new LongAdder();
+    private final long latencyNanos;
+
+    public InMemoryMongoTemplate(long latencyMicros) {
+        super(new SimpleMongoClientDatabaseFactory(
+                MongoClients.create("mongodb://localhost:1/?serverSelectionTimeoutMS=1"), "benchmark"));
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options,
+                               Class<T> entityClass, String collectionName) {
+        roundTrip();
+
+        Object id = query.getQueryObject().get("_id");
+        Document inc = (Document) update.getUpdateObject().get("$inc");
+        long delta = ((Number) inc.get("seq")).longValue();
+        long seq = counters.merge(id, delta, Long::sum);
+
+        return (T) new Document("_id", id).append("seq", seq);
+    }
+
+    @Override
+    public BulkOperations bulkOps(BulkOperations.BulkMode mode, Class<?> entityClass) {
+        boolean urlMappings = entityClass == UrlMapping.class;
+        List<Runnable> writes = new ArrayList<>();
+
+        return (BulkOperations) Proxy.newProxyInstance(
+                BulkOperations.class.getClassLoader(),
+                new Class<?>[]{BulkOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "updateOne", "upsert" -> {
+                        Query query = (Query) args[0];
+                        UpdateDefinition update = (UpdateDefinition) args[1];
+                        writes.add(urlMappings ? () -> writeClickCount(query, update) : otherWrites::increment);
+                        yield proxy;
+                    }
+                    case "execute" -> {
+                        roundTrip();
+                        writes.forEach(Runnable::run);
+                        bulkWrites.increment();
+                        yield BulkWriteResult.unacknowledged();
+                    }
+                    case "toString" -> "InMemoryMongoTemplate BulkOperations";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException("bulkOps()." + method.getName());
+                });
+    }
+
+    /**
+     * @return url_mappings click counts written so far, by shortCode
+     */
+    public Map<String, Long> clickCounts() {
+        return Collections.unmodifiableMap(clickCounts);
+    }
+
+    public long bulkWrites() {
+        return bulkWrites.sum();
+    }
+
+    /**
+     * @return documents written to collections other than url_mappings
+     */
+    public long otherWrites() {
+        return otherWrites.sum();
+    }
+
+    private void writeClickCount(Query query, UpdateDefinition update) {
+        String shortCode = (String) query.getQueryObject().get("shortCode");
+        Document set = (Document) update.getUpdateObject().get("$set");
+        Document inc = (Document) update.getUpdateObject().get("$inc");
+        if (set != null && set.get("clickCount") != null) {
+            clickCounts.put(shortCode, ((Number) set.get("clickCount")).longValue());
+        } else if (inc != null && inc.get("clickCount") != null) {
+            clickCounts.merge(shortCode, ((Number) inc.get("clickCount")).longValue(), Long::sum);
+        } else {
+            throw new UnsupportedOperationException("url_mappings update without clickCount: " + update.getUpdateObject());
+        }
+    }
+
+    private void roundTrip() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
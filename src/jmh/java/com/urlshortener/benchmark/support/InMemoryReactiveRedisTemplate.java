@@ -0,0 +1,46 @@
+package com.urlshortener.benchmark.support;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ReactiveStringRedisTemplate stand-in: scripts are evaluated by an InMemoryRedisTemplate after a
+ * simulated round-trip on Reactor's timer, so no thread is held while the "request" is in flight.
+ * The connection factory is a stub; anything but script execution fails.
+ */
+public class InMemoryReactiveRedisTemplate extends ReactiveStringRedisTemplate {
+
+    private final InMemoryRedisTemplate delegate;
+    private final Duration latency;
+
+    public InMemoryReactiveRedisTemplate(InMemoryRedisTemplate delegate, long scriptLatencyMicros) {
+        super(unsupportedConnectionFactory());
+        this.delegate = delegate;
+        this.latency = Duration.ofNanos(scriptLatencyMicros * 1000);
+    }
+
+    @Override
+    public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args) {
+        Mono<T> result = Mono.fromCallable(() -> delegate.execute(script, keys, args.toArray()));
+        return (latency.isZero() ? result : Mono.delay(latency).then(result)).flux();
+    }
+
+    private static ReactiveRedisConnectionFactory unsupportedConnectionFactory() {
+        return (ReactiveRedisConnectionFactory) Proxy.newProxyInstance(
+                ReactiveRedisConnectionFactory.class.getClassLoader(),
+                new Class<?>[]{ReactiveRedisConnectionFactory.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "toString" -> "InMemoryReactiveRedisTemplate";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
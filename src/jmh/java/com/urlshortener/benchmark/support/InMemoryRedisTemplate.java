@@ -0,0 +1,397 @@
+package com.urlshortener.benchmark.support;
+
+import com.urlshortener.util.RedisLuaScripts;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisHyperLogLogCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+
+/**
+ * RedisTemplate stand-in that evaluates the repo's Lua scripts against in-memory maps,
+ * mirroring their semantics so the Java side of the redirect path can be measured in isolation.
+ * A script latency parks the calling thread for each script call, like a blocking round-trip.
+ *
+ * Also covers what the sync and stats paths use: the string and set operations of RedisSyncService
+ * (lease, RENAME, SRANDMEMBER, SREM), and pipelines of hash, HyperLogLog and key commands. TTLs are ignored
+ * and HyperLogLogs are exact sets.
+ */
+public class InMemoryRedisTemplate extends RedisTemplate<String, String> {
+
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> hashes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> sets = new ConcurrentHashMap<>();
+
+    private final long scriptLatencyNanos;
+    private final ValueOperations<String, String> valueOps;
+    private final SetOperations<String, String> setOps;
+
+    public InMemoryRedisTemplate() {
+        this(0);
+    }
+
+    public InMemoryRedisTemplate(long scriptLatencyMicros) {
+        // No connection factory: only the overridden operations are supported
+        this.scriptLatencyNanos = TimeUnit.MICROSECONDS.toNanos(scriptLatencyMicros);
+        this.valueOps = operations(ValueOperations.class, this::valueOperation);
+        this.setOps = operations(SetOperations.class, this::setOperation);
+    }
+
+    /**
+     * Nothing to check or initialize without a connection factory, so this can be a Spring bean.
+     */
+    @Override
+    public void afterPropertiesSet() {
+    }
+
+    public void set(String key, String value) {
+        strings.put(key, value);
+    }
+
+    public String get(String key) {
+        return strings.get(key);
+    }
+
+    /**
+     * Connection-level callbacks (e.g. the short code filter's SETBIT) are not emulated and return null.
+     */
+    @Override
+    public <T> T execute(RedisCallback<T> action) {
+        return null;
+    }
+
+    /**
+     * Pipelines run against the maps as they're issued; results come back in order, converted as
+     * the string serializer would (values as Strings, counts as Longs).
+     */
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action) {
+        List<Object> results = new ArrayList<>();
+        action.doInRedis(pipeline(results));
+        return results;
+    }
+
+    @Override
+    public Long convertAndSend(String channel, Object message) {
+        return 0L;
+    }
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOps;
+    }
+
+    @Override
+    public SetOperations<String, String> opsForSet() {
+        return setOps;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return strings.containsKey(key) || hashes.containsKey(key) || sets.containsKey(key);
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        Set<String> members = sets.remove(oldKey);
+        if (members == null) {
+            throw new RedisSystemException("ERR no such key", null);
+        }
+        sets.put(newKey, members);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        if (scriptLatencyNanos > 0) {
+            LockSupport.parkNanos(scriptLatencyNanos);
+        }
+        String text = script.getScriptAsString();
+        if (RedisLuaScripts.REDIRECT_SCRIPT.equals(text)) {
+            return (T) redirect(keys, args);
+        }
+        if (RedisLuaScripts.CLICK_FLUSH_SCRIPT.equals(text)) {
+            return (T) clickFlush(keys, args);
+        }
+        if (RedisLuaScripts.RATE_LIMIT_LEASE_SCRIPT.equals(text)) {
+            return (T) rateLimitLease(keys, args);
+        }
+        if (RedisLuaScripts.LEASE_RENEW_SCRIPT.equals(text)) {
+            return (T) (Long) (args[0].equals(strings.get(keys.get(0))) ? 1L : 0L);
+        }
+        if (RedisLuaScripts.LEASE_RELEASE_SCRIPT.equals(text)) {
+            return (T) (Long) (strings.remove(keys.get(0), args[0]) ? 1L : 0L);
+        }
+        throw new UnsupportedOperationException("Script not emulated");
+    }
+
+    private Long redirect(List<String> keys, Object[] args) {
+        String expiry = ensure(keys.get(0), keys.get(1), keys.get(2),
+                (String) args[0], (String) args[1], (String) args[2], (String) args[3]);
+        if (Long.parseLong(expiry) < Long.parseLong((String) args[4])) {
+            return -1L;
+        }
+        long clicks = hincrBy(keys.get(0), (String) args[0], 1);
+        hincrBy(keys.get(4), (String) args[5], 1);
+        sadd(keys.get(5), (String) args[6]);  // HyperLogLog as an exact set, without the TTLs
+        sadd(keys.get(3), (String) args[5]);
+        return clicks;
+    }
+
+    private Long clickFlush(List<String> keys, Object[] args) {
+        long n = (keys.size() - 1) / 4;
+        for (int i = 0; i < n; i++) {
+            int k = 1 + i * 4;
+            int a = 1 + i * 6;
+            ensure(keys.get(k), keys.get(k + 1), keys.get(k + 2),
+                    (String) args[a + 2], (String) args[a + 3], (String) args[a + 4], (String) args[a + 5]);
+            hincrBy(keys.get(k), (String) args[a + 2], Long.parseLong((String) args[a + 1]));
+            hincrBy(keys.get(0), (String) args[a], Long.parseLong((String) args[a + 1]));
+            sadd(keys.get(k + 3), (String) args[a]);
+        }
+        return n;
+    }
+
+    private String ensure(String bucket, String legacyClicks, String legacyExpiry,
+                          String clicksField, String expiryField, String fallbackClicks, String fallbackExpiry) {
+        ConcurrentMap<String, String> fields = hashes.computeIfAbsent(bucket, k -> new ConcurrentHashMap<>());
+        String expiry = fields.get(expiryField);
+        if (expiry != null) {
+            return expiry;
+        }
+        String clicks = strings.remove(legacyClicks);
+        strings.remove(legacyExpiry);
+        fields.putIfAbsent(clicksField, clicks != null ? clicks : fallbackClicks);
+        String existing = fields.putIfAbsent(expiryField, fallbackExpiry);
+        return existing != null ? existing : fallbackExpiry;
+    }
+
+    // Fixed-window lease without the TTL: the window never resets
+    private List<Long> rateLimitLease(List<String> keys, Object[] args) {
+        synchronized (strings) {
+            long used = Long.parseLong(strings.getOrDefault(keys.get(0), "0"));
+            long grant = Math.min(Long.parseLong((String) args[2]), Long.parseLong((String) args[0]) - used);
+            if (grant < Long.parseLong((String) args[3])) {
+                return List.of(0L, -1L);
+            }
+            incrBy(keys.get(0), grant);
+            return List.of(grant, -1L);
+        }
+    }
+
+    private Object valueOperation(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "get" -> strings.get((String) args[0]);
+            case "set" -> {
+                strings.put((String) args[0], (String) args[1]);
+                yield null;
+            }
+            case "setIfAbsent" -> strings.putIfAbsent((String) args[0], (String) args[1]) == null;
+            case "multiGet" -> {
+                List<String> values = new ArrayList<>();
+                for (Object key : (Collection<?>) args[0]) {
+                    values.add(strings.get((String) key));
+                }
+                yield values;
+            }
+            default -> throw new UnsupportedOperationException("opsForValue()." + method.getName());
+        };
+    }
+
+    private Object setOperation(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "add" -> {
+                long added = 0;
+                for (Object member : (Object[]) args[1]) {
+                    added += sadd((String) args[0], (String) member) ? 1 : 0;
+                }
+                yield added;
+            }
+            case "pop" -> {
+                if (args.length == 1) {
+                    List<String> popped = spop((String) args[0], 1);
+                    yield popped.isEmpty() ? null : popped.get(0);
+                }
+                yield spop((String) args[0], (Long) args[1]);
+            }
+            case "distinctRandomMembers" -> srandmember((String) args[0], (Long) args[1]);
+            case "remove" -> {
+                long removed = 0;
+                for (Object member : (Object[]) args[1]) {
+                    removed += srem((String) args[0], (String) member) ? 1 : 0;
+                }
+                yield removed;
+            }
+            case "size" -> (long) sets.getOrDefault((String) args[0], Set.of()).size();
+            default -> throw new UnsupportedOperationException("opsForSet()." + method.getName());
+        };
+    }
+
+    private RedisConnection pipeline(List<Object> results) {
+        RedisHashCommands hashCommands = pipelined(RedisHashCommands.class, results, (method, args) -> switch (method.getName()) {
+            case "hGet" -> hashes.getOrDefault(string(args[0]), new ConcurrentHashMap<>()).get(string(args[1]));
+            case "hMGet" -> {
+                Map<String, String> fields = hashes.getOrDefault(string(args[0]), new ConcurrentHashMap<>());
+                List<String> values = new ArrayList<>();
+                for (byte[] field : (byte[][]) args[1]) {
+                    values.add(fields.get(string(field)));
+                }
+                yield values;
+            }
+            case "hMSet" -> {
+                ConcurrentMap<String, String> fields = hashes.computeIfAbsent(string(args[0]), k -> new ConcurrentHashMap<>());
+                ((Map<?, ?>) args[1]).forEach((field, value) -> fields.put(string(field), string(value)));
+                yield null;
+            }
+            case "hDel" -> {
+                Map<String, String> fields = hashes.getOrDefault(string(args[0]), new ConcurrentHashMap<>());
+                long removed = 0;
+                for (byte[] field : (byte[][]) args[1]) {
+                    removed += fields.remove(string(field)) != null ? 1 : 0;
+                }
+                yield removed;
+            }
+            default -> throw new UnsupportedOperationException("hashCommands()." + method.getName());
+        });
+        RedisHyperLogLogCommands hyperLogLogCommands = pipelined(RedisHyperLogLogCommands.class, results, (method, args) -> switch (method.getName()) {
+            case "pfAdd" -> {
+                boolean changed = false;
+                for (byte[] value : (byte[][]) args[1]) {
+                    changed |= sadd(string(args[0]), string(value));
+                }
+                yield changed ? 1L : 0L;
+            }
+            case "pfCount" -> {
+                Set<String> union = new HashSet<>();
+                for (byte[] key : (byte[][]) args[0]) {
+                    union.addAll(sets.getOrDefault(string(key), Set.of()));
+                }
+                yield (long) union.size();
+            }
+            default -> throw new UnsupportedOperationException("hyperLogLogCommands()." + method.getName());
+        });
+        RedisKeyCommands keyCommands = pipelined(RedisKeyCommands.class, results, (method, args) -> switch (method.getName()) {
+            case "expire" -> hasKey(string(args[0]));
+            case "unlink", "del" -> {
+                long removed = 0;
+                for (byte[] key : (byte[][]) args[0]) {
+                    String name = string(key);
+                    removed += strings.remove(name) != null | hashes.remove(name) != null | sets.remove(name) != null ? 1 : 0;
+                }
+                yield removed;
+            }
+            default -> throw new UnsupportedOperationException("keyCommands()." + method.getName());
+        });
+        // The short code filter's bitmap isn't kept, as with execute(RedisCallback)
+        RedisStringCommands stringCommands = pipelined(RedisStringCommands.class, results, (method, args) -> switch (method.getName()) {
+            case "setBit" -> false;
+            default -> throw new UnsupportedOperationException("stringCommands()." + method.getName());
+        });
+
+        return operations(RedisConnection.class, (method, args) -> switch (method.getName()) {
+            case "hashCommands" -> hashCommands;
+            case "hyperLogLogCommands" -> hyperLogLogCommands;
+            case "keyCommands" -> keyCommands;
+            case "stringCommands" -> stringCommands;
+            default -> throw new UnsupportedOperationException("RedisConnection." + method.getName() + " in a pipeline");
+        });
+    }
+
+    // Pipelined commands return null; their results are collected instead
+    private static <T> T pipelined(Class<T> type, List<Object> results, BiFunction<Method, Object[], Object> command) {
+        return operations(type, (method, args) -> {
+            results.add(command.apply(method, args));
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T operations(Class<?> type, BiFunction<Method, Object[], Object> operation) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "toString" -> "InMemoryRedisTemplate " + type.getSimpleName();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> operation.apply(method, args);
+                });
+    }
+
+    private long incrBy(String key, long delta) {
+        return Long.parseLong(strings.merge(key, String.valueOf(delta),
+                (current, d) -> String.valueOf(Long.parseLong(current) + Long.parseLong(d))));
+    }
+
+    private long hincrBy(String key, String field, long delta) {
+        return Long.parseLong(hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).merge(field, String.valueOf(delta),
+                (current, d) -> String.valueOf(Long.parseLong(current) + Long.parseLong(d))));
+    }
+
+    // SADD, SPOP, SREM and RENAME each hold the key's bin while they run, so they're atomic with respect to
+    // one another, as in Redis: a member added during a RENAME lands in the old set or the new one
+    private boolean sadd(String key, String member) {
+        boolean[] added = new boolean[1];
+        sets.compute(key, (k, members) -> {
+            Set<String> set = members != null ? members : ConcurrentHashMap.newKeySet();
+            added[0] = set.add(member);
+            return set;
+        });
+        return added[0];
+    }
+
+    private List<String> spop(String key, long count) {
+        List<String> popped = new ArrayList<>();
+        sets.computeIfPresent(key, (k, members) -> {
+            Iterator<String> it = members.iterator();
+            while (popped.size() < count && it.hasNext()) {
+                popped.add(it.next());
+                it.remove();
+            }
+            return members.isEmpty() ? null : members;
+        });
+        return popped;
+    }
+
+    private boolean srem(String key, String member) {
+        boolean[] removed = new boolean[1];
+        sets.computeIfPresent(key, (k, members) -> {
+            removed[0] = members.remove(member);
+            return members.isEmpty() ? null : members;
+        });
+        return removed[0];
+    }
+
+    private Set<String> srandmember(String key, long count) {
+        Set<String> picked = new HashSet<>();
+        Iterator<String> it = sets.getOrDefault(key, Set.of()).iterator();
+        while (picked.size() < count && it.hasNext()) {
+            picked.add(it.next());
+        }
+        return picked;
+    }
+
+    private static String string(Object bytes) {
+        return new String((byte[]) bytes, StandardCharsets.UTF_8);
+    }
+}
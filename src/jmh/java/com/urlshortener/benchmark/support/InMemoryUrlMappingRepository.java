@@ -0,0 +1,56 @@
+package com.urlshortener.benchmark.support;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.repo.UrlMappingRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map-backed UrlMappingRepository for benchmarks. Only the methods the services call on the
+ * measured paths are implemented; anything else throws UnsupportedOperationException.
+ */
+public final class InMemoryUrlMappingRepository {
+
+    private InMemoryUrlMappingRepository() {}
+
+    public static UrlMappingRepository create() {
+        Map<String, UrlMapping> byShortCode = new ConcurrentHashMap<>();
+        Map<String, UrlMapping> byFingerprint = new ConcurrentHashMap<>();
+
+        return (UrlMappingRepository) Proxy.newProxyInstance(
+                UrlMappingRepository.class.getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByShortCode" -> Optional.ofNullable(byShortCode.get((String) args[0]));
+                    case "findByUrlFingerprint" -> Optional.ofNullable(byFingerprint.get((String) args[0]));
+                    case "save", "insert" -> {
+                        UrlMapping mapping = (UrlMapping) args[0];
+                        // What @CreatedDate gets from auditing (MongoConfig)
+                        if (mapping.getCreatedAt() == null) {
+                            mapping.setCreatedAt(LocalDateTime.now());
+                        }
+                        byShortCode.put(mapping.getShortCode(), mapping);
+                        if (mapping.getUrlFingerprint() != null) {
+                            byFingerprint.put(mapping.getUrlFingerprint(), mapping);
+                        }
+                        yield mapping;
+                    }
+                    case "count" -> (long) byShortCode.size();
+                    case "toString" -> "InMemoryUrlMappingRepository";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    public static List<UrlMapping> seed(UrlMappingRepository repository, List<UrlMapping> mappings) {
+        mappings.forEach(repository::save);
+        return mappings;
+    }
+}
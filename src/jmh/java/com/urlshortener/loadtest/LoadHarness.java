@@ -0,0 +1,353 @@
+package com.urlshortener.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.benchmark.support.InMemoryMongoTemplate;
+import com.urlshortener.controller.RedirectFilter;
+import com.urlshortener.controller.UrlShortenerController;
+import com.urlshortener.exception.GlobalExceptionHandler;
+import com.urlshortener.metrics.ShortenerMetrics.RedirectStage;
+import com.urlshortener.service.ClickBufferService;
+import com.urlshortener.service.FallbackClickService;
+import com.urlshortener.service.RedisSyncService;
+import com.urlshortener.service.ShortCodeFilter;
+import com.urlshortener.service.UrlShortenerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Offline load test: the application (LoadTestConfig — the real services, controller and
+ * RedirectFilter on in-memory MongoDB and Redis) driven through its HTTP layer by an open-model
+ * mix of shortens, redirects and lifetime stats requests, with Zipf-distributed short codes.
+ * Writes a JSON report (LoadReport) and, given a baseline report, exits with 1 on regressions.
+ *
+ *   ./mvnw -Pjmh test-compile exec:exec@load -Dload.args="--rate=2000 --duration=60"
+ *
+ * Options, as --name=value:
+ *   rate                requests per second, all operations together (1000)
+ *   duration / warmup   seconds measured / run before measuring (30 / 10)
+ *   mix                 operation weights (shorten:5,redirect:90,stats:5)
+ *   links               links created before the run, the ones redirects and stats go to (10000)
+ *   zipf                Zipf exponent of link popularity; 0 is uniform (1.0)
+ *   visitors            distinct client addresses (10000)
+ *   workers             request threads, like server.tomcat.threads.max (200)
+ *   redisLatencyMicros  simulated round-trip of each Lua script call (200)
+ *   mongoLatencyMicros  simulated round-trip of counter allocations and bulk writes (500)
+ *   seed                random seed of the request sequence (42)
+ *   out                 report file (target/load-report.json)
+ *   baseline            report of an earlier run to compare against (none)
+ *   maxRegression       allowed relative slowdown against the baseline (0.2)
+ *   set                 application property override, key=value; may be repeated
+ *
+ * Sync runs every second (scheduler.sync.interval=1000) so a short run exercises it, and the
+ * shorten rate limit is off; both can be set back with --set.
+ */
+public final class LoadHarness {
+
+    private static final Map<String, Object> DEFAULT_OVERRIDES = Map.of(
+            "scheduler.sync.interval", "1000",
+            "rate.limit.shorten.maxRequests", "0");
+
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private LoadHarness() {}
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        List<String> regressions;
+
+        try (AnnotationConfigApplicationContext context = start(options)) {
+            LoadReport report = run(context, options);
+
+            if (options.baseline != null) {
+                JsonNode baseline = new ObjectMapper().readTree(new File(options.baseline));
+                report = report.withRegressions(report.compare(baseline, options.maxRegression));
+            }
+            regressions = report.regressions();
+
+            File out = new File(options.out);
+            if (out.getAbsoluteFile().getParentFile() != null) {
+                out.getAbsoluteFile().getParentFile().mkdirs();
+            }
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out, report);
+            print(report, out);
+        }
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+
+    private static AnnotationConfigApplicationContext start(Options options) throws Exception {
+        Map<String, Object> overrides = new LinkedHashMap<>(DEFAULT_OVERRIDES);
+        overrides.putAll(options.overrides);
+        overrides.put("load.redisLatencyMicros", String.valueOf(options.redisLatencyMicros));
+        overrides.put("load.mongoLatencyMicros", String.valueOf(options.mongoLatencyMicros));
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("load", overrides));
+        context.getEnvironment().getPropertySources().addLast(new ResourcePropertySource("classpath:application.properties"));
+        context.register(LoadTestConfig.class);
+        context.refresh();
+        return context;
+    }
+
+    private static LoadReport run(AnnotationConfigApplicationContext context, Options options) throws Exception {
+        UrlShortenerService urlShortenerService = context.getBean(UrlShortenerService.class);
+        List<String> codes = new ArrayList<>(options.links);
+        for (int i = 0; i < options.links; i++) {
+            codes.add(urlShortenerService.shortenUrl("https://example.com/articles/" + i, null));
+        }
+        // Popularity shouldn't follow creation order (neighbouring IDs share Redis buckets)
+        Collections.shuffle(codes, new Random(options.seed));
+        // Stands in for the ApplicationReadyEvent load, which reads the bitmap from Redis
+        ReflectionTestUtils.setField(context.getBean(ShortCodeFilter.class), "ready", true);
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(UrlShortenerController.class))
+                .addFilters(context.getBean(RedirectFilter.class))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        LongAdder redirectsServed = new LongAdder();
+        ZipfSampler popularity = new ZipfSampler(codes.size(), options.zipf);
+        SplittableRandom random = new SplittableRandom(options.seed);
+        List<String> operations = new ArrayList<>(options.mix.keySet());
+        long[] newUrls = {0};
+
+        // Called by the dispatcher thread only, so the request sequence is fixed by the seed
+        Supplier<OpenLoopRunner.Call> calls = () -> {
+            String operation = options.pick(random.nextDouble());
+            String visitor = visitor(random.nextInt(options.visitors));
+            String code = codes.get(popularity.sample(random.nextDouble()));
+            return switch (operation) {
+                case "shorten" -> {
+                    String body = "{\"originalUrl\":\"https://example.com/load/" + options.seed + "/" + newUrls[0]++ + "\"}";
+                    yield new OpenLoopRunner.Call(operation, () -> mockMvc.perform(post("/api/shorten")
+                                    .contentType(MediaType.APPLICATION_JSON).content(body)
+                                    .header("X-Forwarded-For", visitor))
+                            .andReturn().getResponse().getStatus() == 200);
+                }
+                case "redirect" -> new OpenLoopRunner.Call(operation, () -> {
+                    int status = mockMvc.perform(get("/api/{shortCode}", code).header("X-Forwarded-For", visitor))
+                            .andReturn().getResponse().getStatus();
+                    boolean redirected = status / 100 == 3;
+                    if (redirected) {
+                        redirectsServed.increment();
+                    }
+                    return redirected;
+                });
+                case "stats" -> new OpenLoopRunner.Call(operation, () -> mockMvc.perform(get("/api/{shortCode}/stats", code)
+                                .header("X-Forwarded-For", visitor))
+                        .andReturn().getResponse().getStatus() == 200);
+                default -> throw new IllegalStateException(operation);
+            };
+        };
+
+        OpenLoopRunner.Result result = new OpenLoopRunner(options.workers).run(options.rate,
+                TimeUnit.SECONDS.toNanos(options.warmup), TimeUnit.SECONDS.toNanos(options.duration),
+                DRAIN_TIMEOUT_NANOS, operations, calls);
+
+        // Stop the scheduled jobs (waiting for a running sync), then flush and sync what's left, so
+        // every counted click should be in MongoDB
+        context.getBean(ThreadPoolTaskScheduler.class).shutdown();
+        context.getBean(ClickBufferService.class).flush();
+        context.getBean(FallbackClickService.class).flush();
+        context.getBean(RedisSyncService.class).syncClicksToDatabase();
+
+        return report(context, options, result, redirectsServed.sum());
+    }
+
+    private static LoadReport report(AnnotationConfigApplicationContext context, Options options,
+                                     OpenLoopRunner.Result result, long redirectsServed) {
+        double seconds = result.measuredNanos() / 1e9;
+        Map<String, LoadReport.OperationReport> operations = new LinkedHashMap<>();
+        result.operations().forEach((name, stats) -> operations.put(name, new LoadReport.OperationReport(
+                stats.latency.getTotalCount(),
+                stats.errors.sum(),
+                Math.round(stats.completedInWindow.sum() / seconds * 10) / 10.0,
+                LoadReport.Percentiles.of(stats.latency),
+                LoadReport.Percentiles.of(stats.serviceTime))));
+
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        InMemoryMongoTemplate mongoTemplate = context.getBean(InMemoryMongoTemplate.class);
+        Timer syncRuns = registry.get("urlshortener.sync.run").timer();
+        LoadReport.SyncReport sync = new LoadReport.SyncReport(
+                syncRuns.count(),
+                Math.round(syncRuns.mean(TimeUnit.MICROSECONDS)) / 1e3,
+                Math.round(syncRuns.max(TimeUnit.MICROSECONDS)) / 1e3,
+                (long) registry.get("urlshortener.sync.shard").tag("result", "claimed").counter().count(),
+                (long) registry.get("urlshortener.sync.shard").tag("result", "busy").counter().count(),
+                (long) registry.get("urlshortener.sync.entries").counter().count(),
+                mongoTemplate.bulkWrites(),
+                mongoTemplate.otherWrites());
+
+        long persisted = mongoTemplate.clickCounts().values().stream().mapToLong(Long::longValue).sum();
+        LoadReport.ClickReport clicks = new LoadReport.ClickReport(redirectsServed, persisted, redirectsServed - persisted);
+
+        Map<String, Long> redirectStages = new LinkedHashMap<>();
+        for (RedirectStage stage : RedirectStage.values()) {
+            long count = registry.get("urlshortener.redirect.stage").tag("stage", stage.name().toLowerCase()).timer().count();
+            if (count > 0) {
+                redirectStages.put(stage.name().toLowerCase(), count);
+            }
+        }
+
+        return new LoadReport(options.toMap(), operations,
+                new LoadReport.RunnerReport(result.scheduled(), result.incomplete(), LoadReport.millis(result.maxDispatchLagNanos())),
+                sync, clicks, redirectStages, List.of());
+    }
+
+    private static void print(LoadReport report, File out) {
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        report.operations().forEach((name, op) -> System.out.printf("%-10s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                name, op.requests(), op.errors(), op.throughputPerSecond(), op.latencyMillis().p50(),
+                op.latencyMillis().p99(), op.latencyMillis().p999(), op.latencyMillis().max()));
+        System.out.printf("sync: %d run(s), mean %.3f ms, max %.3f ms, %d entries; clicks served %d, persisted %d%n",
+                report.sync().runs(), report.sync().meanRunMillis(), report.sync().maxRunMillis(),
+                report.sync().entriesWritten(), report.clicks().redirectsServed(), report.clicks().persisted());
+        if (report.runner().maxDispatchLagMillis() > 10) {
+            System.out.printf("warning: requests started up to %.1f ms late; the load generator was short of CPU%n",
+                    report.runner().maxDispatchLagMillis());
+        }
+        report.regressions().forEach(regression -> System.out.println("REGRESSION " + regression));
+        System.out.println("Report: " + out.getPath());
+    }
+
+    // Addresses in 10.0.0.0/8, one per visitor index
+    private static String visitor(int index) {
+        return "10." + ((index >> 16) & 0xff) + "." + ((index >> 8) & 0xff) + "." + (index & 0xff);
+    }
+
+    private static final class Options {
+
+        double rate = 1000;
+        long duration = 30;
+        long warmup = 10;
+        Map<String, Double> mix = parseMix("shorten:5,redirect:90,stats:5");
+        int links = 10_000;
+        double zipf = 1.0;
+        int visitors = 10_000;
+        int workers = 200;
+        long redisLatencyMicros = 200;
+        long mongoLatencyMicros = 500;
+        long seed = 42;
+        String out = "target/load-report.json";
+        String baseline;
+        double maxRegression = 0.2;
+        final Map<String, Object> overrides = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (name) {
+                    case "rate" -> options.rate = Double.parseDouble(value);
+                    case "duration" -> options.duration = Long.parseLong(value);
+                    case "warmup" -> options.warmup = Long.parseLong(value);
+                    case "mix" -> options.mix = parseMix(value);
+                    case "links" -> options.links = Integer.parseInt(value);
+                    case "zipf" -> options.zipf = Double.parseDouble(value);
+                    case "visitors" -> options.visitors = Integer.parseInt(value);
+                    case "workers" -> options.workers = Integer.parseInt(value);
+                    case "redisLatencyMicros" -> options.redisLatencyMicros = Long.parseLong(value);
+                    case "mongoLatencyMicros" -> options.mongoLatencyMicros = Long.parseLong(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    case "out" -> options.out = value;
+                    case "baseline" -> options.baseline = value;
+                    case "maxRegression" -> options.maxRegression = Double.parseDouble(value);
+                    case "set" -> {
+                        int kv = value.indexOf('=');
+                        if (kv < 1) {
+                            throw new IllegalArgumentException("Expected --set=key=value, got " + arg);
+                        }
+                        options.overrides.put(value.substring(0, kv), value.substring(kv + 1));
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option --" + name);
+                }
+            }
+            if (options.rate <= 0 || options.duration <= 0 || options.warmup < 0 || options.links < 1
+                    || options.visitors < 1 || options.workers < 1) {
+                throw new IllegalArgumentException("rate, duration, links, visitors and workers must be positive, warmup not negative");
+            }
+            return options;
+        }
+
+        private static Map<String, Double> parseMix(String value) {
+            Map<String, Double> mix = new LinkedHashMap<>();
+            double total = 0;
+            for (String part : value.split(",")) {
+                String[] weight = part.trim().split(":");
+                if (weight.length != 2 || !List.of("shorten", "redirect", "stats").contains(weight[0])) {
+                    throw new IllegalArgumentException("Expected --mix=shorten:N,redirect:N,stats:N, got " + value);
+                }
+                double w = Double.parseDouble(weight[1]);
+                if (w > 0) {
+                    mix.put(weight[0], w);
+                    total += w;
+                }
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("--mix needs a positive weight, got " + value);
+            }
+            double finalTotal = total;
+            mix.replaceAll((operation, w) -> w / finalTotal);
+            return mix;
+        }
+
+        String pick(double uniform) {
+            double cumulative = 0;
+            String last = null;
+            for (Map.Entry<String, Double> entry : mix.entrySet()) {
+                cumulative += entry.getValue();
+                last = entry.getKey();
+                if (uniform < cumulative) {
+                    break;
+                }
+            }
+            return last;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("rate", rate);
+            map.put("durationSeconds", duration);
+            map.put("warmupSeconds", warmup);
+            map.put("mix", mix);
+            map.put("links", links);
+            map.put("zipf", zipf);
+            map.put("visitors", visitors);
+            map.put("workers", workers);
+            map.put("redisLatencyMicros", redisLatencyMicros);
+            map.put("mongoLatencyMicros", mongoLatencyMicros);
+            map.put("seed", seed);
+            map.put("overrides", overrides);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.urlshortener.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LoadHarness's JSON report. Latencies are in milliseconds; "latencyMillis" is measured from each
+ * request's scheduled start (queueing included), "serviceTimeMillis" from when a worker picked it up.
+ * "redirectStages" counts urlshortener.redirect.stage timings, e.g. how many redirects were pinned.
+ *
+ * compare() checks a report against one from an earlier build, so a run can fail on regressions.
+ */
+record LoadReport(Map<String, Object> config,
+                  Map<String, OperationReport> operations,
+                  RunnerReport runner,
+                  SyncReport sync,
+                  ClickReport clicks,
+                  Map<String, Long> redirectStages,
+                  List<String> regressions) {
+
+    // Differences below this are run-to-run noise on a dev box, whatever the ratio
+    private static final double LATENCY_NOISE_MILLIS = 0.5;
+    private static final double SYNC_NOISE_MILLIS = 2;
+    private static final double ERROR_RATE_NOISE = 0.001;
+
+    record OperationReport(long requests, long errors, double throughputPerSecond,
+                           Percentiles latencyMillis, Percentiles serviceTimeMillis) {}
+
+    record Percentiles(double p50, double p90, double p99,
+                       @JsonProperty("p99.9") double p999, double max) {
+
+        static Percentiles of(Histogram histogram) {
+            return new Percentiles(
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+    }
+
+    /**
+     * @param maxDispatchLagMillis how far behind schedule measured requests were started; if it's more
+     *                             than a few ms the load generator was competing for CPU
+     */
+    record RunnerReport(long scheduled, long incomplete, double maxDispatchLagMillis) {}
+
+    /**
+     * RedisSyncService over the whole run, warmup and final sync included.
+     */
+    record SyncReport(long runs, double meanRunMillis, double maxRunMillis, long shardsClaimed,
+                      long shardsBusy, long entriesWritten, long bulkWrites, long clickStatsWrites) {}
+
+    /**
+     * Clicks of redirects answered during the run against the click counts in the MongoDB stand-in
+     * after a final flush and sync. ClickBufferService may drop a click that races with the removal
+     * of an idle entry, so a handful unaccounted is possible; more means clicks are being lost.
+     */
+    record ClickReport(long redirectsServed, long persisted, long unaccounted) {}
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    LoadReport withRegressions(List<String> found) {
+        return new LoadReport(config, operations, runner, sync, clicks, redirectStages, List.copyOf(found));
+    }
+
+    /**
+     * @param maxRegression allowed relative slowdown (0.2 = 20%) of latency percentiles, throughput
+     *                      and the mean sync run before it counts as a regression
+     * @return one line per regression, empty if none
+     */
+    List<String> compare(JsonNode baseline, double maxRegression) {
+        List<String> found = new ArrayList<>();
+
+        operations.forEach((name, current) -> {
+            JsonNode before = baseline.path("operations").path(name);
+            if (before.isMissingNode()) {
+                return;
+            }
+            JsonNode beforeLatency = before.path("latencyMillis");
+            Map<String, Double> latency = Map.of("p50", current.latencyMillis().p50(),
+                    "p99", current.latencyMillis().p99(), "p99.9", current.latencyMillis().p999());
+            for (String percentile : List.of("p50", "p99", "p99.9")) {
+                double now = latency.get(percentile);
+                double then = beforeLatency.path(percentile).asDouble();
+                if (now > then * (1 + maxRegression) && now - then > LATENCY_NOISE_MILLIS) {
+                    found.add(String.format("%s latency %s: %.3f ms, was %.3f ms", name, percentile, now, then));
+                }
+            }
+
+            double throughput = before.path("throughputPerSecond").asDouble();
+            if (current.throughputPerSecond() < throughput * (1 - maxRegression)) {
+                found.add(String.format("%s throughput: %.1f/s, was %.1f/s", name, current.throughputPerSecond(), throughput));
+            }
+
+            double errorRate = errorRate(current.errors(), current.requests());
+            double beforeErrorRate = errorRate(before.path("errors").asLong(), before.path("requests").asLong());
+            if (errorRate > beforeErrorRate + ERROR_RATE_NOISE) {
+                found.add(String.format("%s errors: %.2f%%, was %.2f%%", name, errorRate * 100, beforeErrorRate * 100));
+            }
+        });
+
+        double syncMean = baseline.path("sync").path("meanRunMillis").asDouble();
+        if (sync.meanRunMillis() > syncMean * (1 + maxRegression) && sync.meanRunMillis() - syncMean > SYNC_NOISE_MILLIS) {
+            found.add(String.format("sync run mean: %.3f ms, was %.3f ms", sync.meanRunMillis(), syncMean));
+        }
+
+        long unaccounted = baseline.path("clicks").path("unaccounted").asLong();
+        if (clicks.unaccounted() > unaccounted) {
+            found.add(String.format("unaccounted clicks: %d, was %d", clicks.unaccounted(), unaccounted));
+        }
+        return found;
+    }
+
+    private static double errorRate(long errors, long requests) {
+        return requests > 0 ? (double) errors / requests : 0;
+    }
+}
@@ -0,0 +1,163 @@
+package com.urlshortener.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.benchmark.support.InMemoryMongoTemplate;
+import com.urlshortener.benchmark.support.InMemoryRedisTemplate;
+import com.urlshortener.benchmark.support.InMemoryUrlMappingRepository;
+import com.urlshortener.cache.CacheInvalidationPublisher;
+import com.urlshortener.cache.TwoLevelCacheManager;
+import com.urlshortener.config.ShortCodeConfig;
+import com.urlshortener.controller.RedirectFilter;
+import com.urlshortener.controller.UrlShortenerController;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.repo.UrlMappingRepository;
+import com.urlshortener.service.BatchShortenService;
+import com.urlshortener.service.BatchStatsService;
+import com.urlshortener.service.ClickAnalyticsService;
+import com.urlshortener.service.ClickBufferService;
+import com.urlshortener.service.CounterService;
+import com.urlshortener.service.FallbackClickService;
+import com.urlshortener.service.HotKeyService;
+import com.urlshortener.service.LinkStateStore;
+import com.urlshortener.service.RateLimiterService;
+import com.urlshortener.service.RedisCircuitBreaker;
+import com.urlshortener.service.RedisSyncService;
+import com.urlshortener.service.ShortCodeFilter;
+import com.urlshortener.service.UrlShortenerCacheService;
+import com.urlshortener.service.UrlShortenerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+
+/**
+ * The application's default-profile beans for LoadHarness, with in-memory stand-ins where they'd
+ * reach MongoDB or Redis. The services, the controller and RedirectFilter are the real classes,
+ * configured from application.properties (plus the harness's overrides) and running their
+ * @PostConstruct checks, @Cacheable and @Scheduled jobs: the click buffer flush, hot-key windows,
+ * the fallback flush and RedisSyncService.
+ *
+ * Not included, as they'd only talk to servers: the index and counter initializers, the
+ * expiry, migration and backfill jobs, the reactive redirect path, export/import and the actuator
+ * endpoints. The Redis tier of the cache is a ConcurrentMapCacheManager, so it never misses to
+ * MongoDB once a mapping is cached.
+ */
+@Configuration
+@EnableCaching
+@EnableScheduling
+@Import({
+        ShortCodeConfig.class,
+        ShortenerMetrics.class,
+        RedisCircuitBreaker.class,
+        CounterService.class,
+        LinkStateStore.class,
+        ClickAnalyticsService.class,
+        ClickBufferService.class,
+        HotKeyService.class,
+        FallbackClickService.class,
+        ShortCodeFilter.class,
+        UrlShortenerCacheService.class,
+        BatchShortenService.class,
+        BatchStatsService.class,
+        UrlShortenerService.class,
+        RedisSyncService.class,
+        RateLimiterService.class,
+        UrlShortenerController.class,
+        RedirectFilter.class
+})
+class LoadTestConfig {
+
+    // Unresolvable placeholders fail the startup, as under Spring Boot
+    @Bean
+    static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+        return new PropertySourcesPlaceholderConfigurer();
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    InMemoryRedisTemplate redisTemplate(@Value("${load.redisLatencyMicros}") long latencyMicros) {
+        return new InMemoryRedisTemplate(latencyMicros);
+    }
+
+    @Bean
+    InMemoryMongoTemplate mongoTemplate(@Value("${load.mongoLatencyMicros}") long latencyMicros) {
+        return new InMemoryMongoTemplate(latencyMicros);
+    }
+
+    @Bean
+    UrlMappingRepository urlMappingRepository() {
+        return InMemoryUrlMappingRepository.create();
+    }
+
+    @Bean
+    CacheInvalidationPublisher cacheInvalidationPublisher(InMemoryRedisTemplate redisTemplate) {
+        return new CacheInvalidationPublisher(redisTemplate);
+    }
+
+    @Bean
+    TwoLevelCacheManager cacheManager(CacheInvalidationPublisher cacheInvalidationPublisher,
+                                      RedisCircuitBreaker redisCircuitBreaker,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${cache.local.maxSize}") long localMaxSize,
+                                      @Value("${cache.local.ttlSeconds}") long localTtlSeconds,
+                                      @Value("${cache.local.refreshAfterSeconds}") long localRefreshAfterSeconds) {
+        return new TwoLevelCacheManager(
+                new ConcurrentMapCacheManager(),
+                null,
+                cacheInvalidationPublisher,
+                redisCircuitBreaker,
+                localMaxSize,
+                Duration.ofSeconds(localTtlSeconds),
+                localRefreshAfterSeconds > 0 ? Duration.ofSeconds(localRefreshAfterSeconds) : null,
+                meterRegistry);
+    }
+
+    // ShortCodeFilter registers its listener on it; with a single instance there's nothing to receive
+    @Bean
+    RedisMessageListenerContainer redisMessageListenerContainer() {
+        return new RedisMessageListenerContainer() {
+            @Override
+            public void afterPropertiesSet() {
+            }
+
+            @Override
+            public boolean isAutoStartup() {
+                return false;
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+    }
+
+    @Bean
+    ThreadPoolTaskScheduler taskScheduler(@Value("${spring.task.scheduling.pool.size}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(60);
+        return scheduler;
+    }
+
+    @Bean
+    ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+}
@@ -0,0 +1,132 @@
+package com.urlshortener.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-model load: requests are started on a fixed schedule (one every 1/rate seconds) whether or
+ * not earlier ones have finished, like independent users arriving. They're run by a fixed pool of
+ * worker threads with an unbounded queue, standing in for the servlet container's threads and
+ * accept queue.
+ *
+ * Latency is measured from a request's scheduled start, not from when a worker picked it up, so
+ * time spent queued behind slow requests counts (no coordinated omission: a stall shows up in
+ * every request scheduled during it, not just the one that hit it). Service time, from pickup to
+ * completion, is kept alongside; the gap between the two is queueing.
+ */
+final class OpenLoopRunner {
+
+    /**
+     * One request to send; the callable runs it and returns whether the response was the expected one.
+     */
+    record Call(String operation, Callable<Boolean> request) {}
+
+    static final class OperationStats {
+
+        final Histogram latency = new ConcurrentHistogram(3);
+        final Histogram serviceTime = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder completedInWindow = new LongAdder();
+    }
+
+    /**
+     * @param scheduled   requests started in the measurement window
+     * @param incomplete  requests still running or queued when the drain timeout ran out
+     * @param maxDispatchLagNanos how far behind schedule the dispatcher got after the warmup; it's
+     *                    in the measured latencies, but more than a few ms means the load generator
+     *                    itself was starved of CPU
+     */
+    record Result(long measuredNanos, long scheduled, long incomplete, long maxDispatchLagNanos,
+                  Map<String, OperationStats> operations) {}
+
+    private final int workers;
+
+    OpenLoopRunner(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sends rate requests per second for warmup + duration, then waits up to drainTimeout for the
+     * rest to finish. Only requests scheduled after the warmup are measured.
+     */
+    Result run(double rate, long warmupNanos, long durationNanos, long drainTimeoutNanos,
+               List<String> operations, Supplier<Call> calls) throws InterruptedException {
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        operations.forEach(operation -> stats.put(operation, new OperationStats()));
+
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "load-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.prestartAllCoreThreads();
+
+        double intervalNanos = 1e9 / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long scheduled = 0;
+        long maxLag = 0;
+
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            boolean measured = intended >= measureFrom;
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+            } else if (measured) {
+                maxLag = Math.max(maxLag, now - intended);
+            }
+
+            Call call = calls.get();
+            OperationStats operation = stats.get(call.operation());
+            if (measured) {
+                scheduled++;
+            }
+            pool.execute(() -> {
+                long began = System.nanoTime();
+                boolean ok;
+                try {
+                    ok = call.request().call();
+                } catch (Exception e) {
+                    ok = false;
+                }
+                long done = System.nanoTime();
+                if (measured) {
+                    operation.latency.recordValue(done - intended);
+                    operation.serviceTime.recordValue(done - began);
+                    if (!ok) {
+                        operation.errors.increment();
+                    }
+                    if (done < end) {
+                        operation.completedInWindow.increment();
+                    }
+                }
+            });
+        }
+
+        pool.shutdown();
+        long incomplete = 0;
+        if (!pool.awaitTermination(drainTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            incomplete = pool.shutdownNow().size() + pool.getActiveCount();
+        }
+        return new Result(durationNanos, scheduled, incomplete, maxLag, stats);
+    }
+}
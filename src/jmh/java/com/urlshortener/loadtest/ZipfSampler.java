@@ -0,0 +1,36 @@
+package com.urlshortener.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Ranks 0..n-1 drawn with probability proportional to 1 / (rank + 1)^exponent. With an exponent
+ * around 1 a few links get most of the clicks and most links are rarely clicked, as for real
+ * short links. The CDF is built once, so a sample is a binary search.
+ */
+final class ZipfSampler {
+
+    private final double[] cdf;
+
+    ZipfSampler(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be at least 1, got " + n);
+        }
+        cdf = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cdf[rank] /= sum;
+        }
+    }
+
+    /**
+     * @param uniform a uniform draw from [0, 1)
+     */
+    int sample(double uniform) {
+        int i = Arrays.binarySearch(cdf, uniform);
+        return Math.min(i >= 0 ? i + 1 : -i - 1, cdf.length - 1);
+    }
+}
@@ -0,0 +1,45 @@
+package com.urlshortener.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies invalidations published by other instances to the local (L1) tier.
+ * The shared Redis tier has already been updated by the publishing instance.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CacheInvalidationListener implements MessageListener {
+
+    private final TwoLevelCacheManager cacheManager;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+
+        if (body.startsWith(CacheInvalidationPublisher.EVICT_PREFIX)) {
+            String rest = body.substring(CacheInvalidationPublisher.EVICT_PREFIX.length());
+            int separator = rest.indexOf(':');
+            if (separator < 0) {
+                log.warn("Ignoring malformed cache invalidation: {}", body);
+                return;
+            }
+            TwoLevelCache cache = cacheManager.getLocalCache(rest.substring(0, separator));
+            if (cache != null) {
+                cache.evictLocal(rest.substring(separator + 1));
+            }
+        } else if (body.startsWith(CacheInvalidationPublisher.CLEAR_PREFIX)) {
+            TwoLevelCache cache = cacheManager.getLocalCache(
+                    body.substring(CacheInvalidationPublisher.CLEAR_PREFIX.length()));
+            if (cache != null) {
+                cache.clearLocal();
+            }
+        } else {
+            log.warn("Ignoring malformed cache invalidation: {}", body);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.urlshortener.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * Broadcasts cache evictions over Redis pub/sub so every instance drops its local (L1) copy.
+ *
+ * Message format:
+ *   evict:{cacheName}:{key}
+ *   clear:{cacheName}
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CacheInvalidationPublisher {
+
+    public static final String CHANNEL = "cache_invalidation";
+
+    static final String EVICT_PREFIX = "evict:";
+    static final String CLEAR_PREFIX = "clear:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public void publishEvict(String cacheName, Object key) {
+        publish(EVICT_PREFIX + cacheName + ":" + key);
+    }
+
+    public void publishClear(String cacheName) {
+        publish(CLEAR_PREFIX + cacheName);
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, message);
+        } catch (Exception e) {
+            // Other instances fall back to the local TTL for staleness in this case
+            log.warn("Failed to publish cache invalidation '{}': {}", message, e.getMessage());
+        }
+    }
+}
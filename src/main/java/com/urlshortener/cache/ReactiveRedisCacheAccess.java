@@ -0,0 +1,58 @@
+package com.urlshortener.cache;
+
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * Single-key reads and writes on a RedisCache's entries through the reactive connection, for
+ * callers that must not block on the round-trip. Like RedisCacheBulkAccess, keys and values are
+ * laid out exactly as RedisCache does, so entries are shared with the blocking path.
+ */
+final class ReactiveRedisCacheAccess {
+
+    private final String name;
+    private final RedisCacheConfiguration configuration;
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    ReactiveRedisCacheAccess(RedisCache cache, ReactiveRedisConnectionFactory connectionFactory) {
+        this.name = cache.getName();
+        this.configuration = cache.getCacheConfiguration();
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * @return the value, or empty if there's no entry (or one the value serializer can't read)
+     */
+    Mono<Object> get(Object key) {
+        return Mono.usingWhen(
+                Mono.fromSupplier(connectionFactory::getReactiveConnection),
+                connection -> connection.stringCommands().get(cacheKey(key)),
+                connection -> connection.closeLater())
+                .mapNotNull(value -> configuration.getValueSerializationPair().read(value));
+    }
+
+    Mono<Void> put(Object key, Object value) {
+        Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+        Expiration expiration = ttl != null && !ttl.isZero() && !ttl.isNegative()
+                ? Expiration.from(ttl) : Expiration.persistent();
+        ByteBuffer bytes = configuration.getValueSerializationPair().write(value);
+        return Mono.usingWhen(
+                Mono.fromSupplier(connectionFactory::getReactiveConnection),
+                connection -> connection.stringCommands().set(cacheKey(key), bytes, expiration,
+                        RedisStringCommands.SetOption.upsert()),
+                connection -> connection.closeLater())
+                .then();
+    }
+
+    private ByteBuffer cacheKey(Object key) {
+        String cacheKey = configuration.usePrefix() ? configuration.getKeyPrefixFor(name) + key : key.toString();
+        return configuration.getKeySerializationPair().write(cacheKey);
+    }
+}
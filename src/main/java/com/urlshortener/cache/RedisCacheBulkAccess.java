@@ -0,0 +1,82 @@
+package com.urlshortener.cache;
+
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-key reads and writes on a RedisCache's entries, which RedisCache itself only offers one
+ * key at a time: one MGET for a batch of lookups, one pipeline of SETs for a batch of puts. Keys
+ * and values are laid out exactly as RedisCache does (key prefix, key and value serializers, TTL
+ * function), so entries written either way are read either way.
+ *
+ * Keys are converted with toString(), which is what RedisCache does for the String keys the
+ * UrlMapping caches use.
+ */
+final class RedisCacheBulkAccess {
+
+    private final String name;
+    private final RedisCacheConfiguration configuration;
+    private final RedisConnectionFactory connectionFactory;
+
+    RedisCacheBulkAccess(RedisCache cache, RedisConnectionFactory connectionFactory) {
+        this.name = cache.getName();
+        this.configuration = cache.getCacheConfiguration();
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * @return the values in keys order, null where there's no entry
+     */
+    List<Object> getAll(List<?> keys) {
+        byte[][] cacheKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            cacheKeys[i] = cacheKey(keys.get(i));
+        }
+
+        List<byte[]> values;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            values = connection.stringCommands().mGet(cacheKeys);
+        }
+
+        List<Object> result = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = values != null ? values.get(i) : null;
+            result.add(value != null ? configuration.getValueSerializationPair().read(ByteBuffer.wrap(value)) : null);
+        }
+        return result;
+    }
+
+    void putAll(Map<?, ?> entries) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            try {
+                for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                    Duration ttl = configuration.getTtlFunction().getTimeToLive(entry.getKey(), entry.getValue());
+                    byte[] value = ByteUtils.getBytes(configuration.getValueSerializationPair().write(entry.getValue()));
+                    Expiration expiration = ttl != null && !ttl.isZero() && !ttl.isNegative()
+                            ? Expiration.from(ttl) : Expiration.persistent();
+                    connection.stringCommands().set(cacheKey(entry.getKey()), value, expiration,
+                            RedisStringCommands.SetOption.upsert());
+                }
+            } finally {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    private byte[] cacheKey(Object key) {
+        String cacheKey = configuration.usePrefix() ? configuration.getKeyPrefixFor(name) + key : key.toString();
+        return ByteUtils.getBytes(configuration.getKeySerializationPair().write(cacheKey));
+    }
+}
@@ -0,0 +1,378 @@
+package com.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.service.RedisCircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Two-level cache: an in-process Caffeine tier (L1) in front of the shared Redis cache (L2).
+ * Reads hit L1 first and only fall through to Redis on a local miss, so hot short codes are
+ * served without a network round-trip or deserialization. Evictions are applied to both tiers
+ * and broadcast to the other instances so their L1 copies are dropped too.
+ *
+ * Reads and writes of the Redis tier go through the RedisCircuitBreaker: while Redis is down a
+ * local miss is treated as a remote miss (the caller loads from MongoDB) instead of an error.
+ *
+ * With refresh-ahead (a refreshAfterWrite on the local tier) a local entry that's read once it's
+ * old enough is reloaded in the background while the old value is still served: from Redis, or,
+ * if the Redis entry has expired, from the origin loader the cache's owner registered, which also
+ * puts it back into Redis. So a key that stays hot never misses in either tier.
+ *
+ * getAll and putAll work on many keys at once: one MGET or one pipeline against Redis when the
+ * remote tier is a RedisCache (see RedisCacheBulkAccess), one call per key otherwise.
+ *
+ * getAsync and putAsync are for the non-blocking redirect path: a local hit is answered in
+ * place, and the Redis tier is reached through the reactive connection (ReactiveRedisCacheAccess)
+ * so no thread waits on it. Without one, the blocking remote call runs on the bounded elastic
+ * scheduler instead of the caller's thread.
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final Cache<Object, Object> local;
+    private final org.springframework.cache.Cache remote;
+    private final RedisCacheBulkAccess remoteBulk;
+    private final ReactiveRedisCacheAccess remoteReactive;
+    private final CacheInvalidationPublisher invalidationPublisher;
+    private final RedisCircuitBreaker circuitBreaker;
+
+    private final Counter localHits;
+    private final Counter remoteHits;
+    // A miss in both tiers means the caller goes to MongoDB
+    private final Counter misses;
+    private final Counter remoteRefreshes;
+    private final Counter originRefreshes;
+
+    private volatile Function<Object, Object> origin;
+
+    public TwoLevelCache(String name,
+                         Caffeine<Object, Object> local,
+                         org.springframework.cache.Cache remote,
+                         RedisCacheBulkAccess remoteBulk,
+                         ReactiveRedisCacheAccess remoteReactive,
+                         CacheInvalidationPublisher invalidationPublisher,
+                         RedisCircuitBreaker circuitBreaker,
+                         boolean allowNullValues,
+                         MeterRegistry meterRegistry) {
+        super(allowNullValues);
+        this.name = name;
+        // Only refreshes load through the loader; reads use getIfPresent
+        this.local = local.build(this::reload);
+        this.remote = remote;
+        this.remoteBulk = remoteBulk;
+        this.remoteReactive = remoteReactive;
+        this.invalidationPublisher = invalidationPublisher;
+        this.circuitBreaker = circuitBreaker;
+        this.localHits = lookupCounter(meterRegistry, "local", "hit");
+        this.remoteHits = lookupCounter(meterRegistry, "remote", "hit");
+        this.misses = lookupCounter(meterRegistry, "remote", "miss");
+        this.remoteRefreshes = refreshCounter(meterRegistry, "remote");
+        this.originRefreshes = refreshCounter(meterRegistry, "origin");
+    }
+
+    /**
+     * Sets where refresh-ahead loads a value from when the Redis tier no longer has it. The loader
+     * returns null if the value doesn't exist anymore; the local entry is dropped then.
+     */
+    public void setOrigin(Function<Object, Object> origin) {
+        this.origin = origin;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            localHits.increment();
+            return value;
+        }
+
+        ValueWrapper wrapper = remoteGet(key);
+        if (wrapper == null) {
+            misses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        value = toStoreValue(wrapper.get());
+        local.put(key, value);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            localHits.increment();
+            return (T) fromStoreValue(value);
+        }
+
+        T loaded = remote.get(key, valueLoader);
+        local.put(key, toStoreValue(loaded));
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remotePut(key, value);
+        local.put(key, toStoreValue(value));
+    }
+
+    /**
+     * Looks up many keys: the local tier first, then the remote tier for the rest in one go.
+     * Remote hits are copied into the local tier.
+     *
+     * @return the cached values by key; keys cached in neither tier are left out
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> found = new HashMap<>(local.getAllPresent(keys));
+        localHits.increment(found.size());
+
+        List<Object> missing = new ArrayList<>(keys.size() - found.size());
+        for (Object key : keys) {
+            if (!found.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return fromStoreValues(found);
+        }
+
+        List<Object> values = remoteGetAll(missing);
+        for (int i = 0; i < missing.size(); i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                misses.increment();
+                continue;
+            }
+            remoteHits.increment();
+            value = toStoreValue(value);
+            local.put(missing.get(i), value);
+            found.put(missing.get(i), value);
+        }
+        return fromStoreValues(found);
+    }
+
+    /**
+     * Puts many entries into both tiers; the remote tier in one pipeline.
+     */
+    public void putAll(Map<?, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (circuitBreaker.allowRequest()) {
+            try {
+                if (remoteBulk != null) {
+                    remoteBulk.putAll(entries);
+                } else {
+                    entries.forEach(remote::put);
+                }
+                circuitBreaker.recordSuccess();
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure();
+            }
+        }
+        entries.forEach((key, value) -> local.put(key, toStoreValue(value)));
+    }
+
+    /**
+     * Non-blocking lookup: the local tier, then the remote one. A remote hit is copied into the
+     * local tier; a remote failure counts against the circuit breaker and reads as a miss.
+     *
+     * @return the cached value, or empty if neither tier has it
+     */
+    public Mono<Object> getAsync(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            localHits.increment();
+            return Mono.justOrEmpty(fromStoreValue(value));
+        }
+        if (remoteReactive == null) {
+            return Mono.fromCallable(() -> get(key))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .mapNotNull(ValueWrapper::get);
+        }
+        if (!circuitBreaker.allowRequest()) {
+            misses.increment();
+            return Mono.empty();
+        }
+
+        return remoteReactive.get(key)
+                .doOnSuccess(remoteValue -> {
+                    circuitBreaker.recordSuccess();
+                    if (remoteValue == null) {
+                        misses.increment();
+                        return;
+                    }
+                    remoteHits.increment();
+                    local.put(key, toStoreValue(remoteValue));
+                })
+                .onErrorResume(e -> {
+                    circuitBreaker.recordFailure();
+                    misses.increment();
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Non-blocking put: into the local tier right away, into the remote tier when the returned
+     * Mono is subscribed. A remote failure is swallowed like put's.
+     */
+    public Mono<Void> putAsync(Object key, Object value) {
+        local.put(key, toStoreValue(value));
+        if (remoteReactive == null) {
+            return Mono.<Void>fromRunnable(() -> remotePut(key, value)).subscribeOn(Schedulers.boundedElastic());
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return Mono.empty();
+        }
+        return remoteReactive.put(key, value)
+                .doOnSuccess(done -> circuitBreaker.recordSuccess())
+                .onErrorResume(e -> {
+                    circuitBreaker.recordFailure();
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        invalidationPublisher.publishEvict(name, key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        invalidationPublisher.publishClear(name);
+    }
+
+    private ValueWrapper remoteGet(Object key) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        try {
+            ValueWrapper wrapper = remote.get(key);
+            circuitBreaker.recordSuccess();
+            return wrapper;
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure();
+            return null;
+        }
+    }
+
+    private void remotePut(Object key, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            remote.put(key, value);
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+     * @return the remote values in keys order, null where there's none or Redis is unavailable
+     */
+    private List<Object> remoteGetAll(List<Object> keys) {
+        if (remoteBulk == null) {
+            List<Object> values = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                ValueWrapper wrapper = remoteGet(key);
+                values.add(wrapper != null ? wrapper.get() : null);
+            }
+            return values;
+        }
+
+        if (circuitBreaker.allowRequest()) {
+            try {
+                List<Object> values = remoteBulk.getAll(keys);
+                circuitBreaker.recordSuccess();
+                return values;
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure();
+            }
+        }
+        return Collections.nCopies(keys.size(), null);
+    }
+
+    private Map<Object, Object> fromStoreValues(Map<Object, Object> values) {
+        values.replaceAll((key, value) -> fromStoreValue(value));
+        return values;
+    }
+
+    // Refresh-ahead loader (Caffeine runs it on its executor); null drops the local entry
+    private Object reload(Object key) {
+        ValueWrapper wrapper = remoteGet(key);
+        if (wrapper != null) {
+            remoteRefreshes.increment();
+            return toStoreValue(wrapper.get());
+        }
+
+        Function<Object, Object> loader = origin;
+        Object value = loader != null ? loader.apply(key) : null;
+        if (value == null) {
+            return null;
+        }
+        originRefreshes.increment();
+        remotePut(key, value);
+        return toStoreValue(value);
+    }
+
+    private Counter refreshCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("cache.refreshes")
+                .description("Local entries reloaded ahead of expiry, by where the value came from")
+                .tag("cache", name)
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    private Counter lookupCounter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.gets")
+                .description("Cache lookups by tier and result")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops a key from the local tier only. Called when another instance evicted it.
+     */
+    void evictLocal(Object key) {
+        local.invalidate(key);
+    }
+
+    /**
+     * Drops the whole local tier only. Called when another instance cleared the cache.
+     */
+    void clearLocal() {
+        local.invalidateAll();
+    }
+}
@@ -0,0 +1,98 @@
+package com.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.service.RedisCircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * CacheManager that decorates every cache of the remote (Redis) manager with a bounded,
+ * TTL-evicting local tier. The local TTL bounds staleness if an invalidation message is missed.
+ * A non-null localRefreshAfter turns on refresh-ahead for the local tier (see TwoLevelCache).
+ * With a connection factory, the multi-key operations of Redis-backed caches go through it; one
+ * that is also reactive (Lettuce's) serves their non-blocking getAsync and putAsync.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager remoteCacheManager;
+    private final RedisConnectionFactory connectionFactory;
+    private final CacheInvalidationPublisher invalidationPublisher;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final long localMaxSize;
+    private final Duration localTtl;
+    private final Duration localRefreshAfter;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remoteCacheManager,
+                                RedisConnectionFactory connectionFactory,
+                                CacheInvalidationPublisher invalidationPublisher,
+                                RedisCircuitBreaker circuitBreaker,
+                                long localMaxSize,
+                                Duration localTtl,
+                                Duration localRefreshAfter,
+                                MeterRegistry meterRegistry) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.connectionFactory = connectionFactory;
+        this.invalidationPublisher = invalidationPublisher;
+        this.circuitBreaker = circuitBreaker;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+        this.localRefreshAfter = localRefreshAfter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    /**
+     * Returns the cache only if it has already been created on this instance —
+     * there is nothing to invalidate locally otherwise.
+     */
+    TwoLevelCache getLocalCache(String name) {
+        return caches.get(name);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            throw new IllegalStateException("No remote cache named " + name);
+        }
+        Caffeine<Object, Object> local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtl);
+        if (localRefreshAfter != null) {
+            local.refreshAfterWrite(localRefreshAfter);
+        }
+        RedisCache redisCache = remote instanceof RedisCache cache && connectionFactory != null ? cache : null;
+        return new TwoLevelCache(
+                name,
+                local,
+                remote,
+                redisCache != null ? new RedisCacheBulkAccess(redisCache, connectionFactory) : null,
+                redisCache != null && connectionFactory instanceof ReactiveRedisConnectionFactory reactive
+                        ? new ReactiveRedisCacheAccess(redisCache, reactive) : null,
+                invalidationPublisher,
+                circuitBreaker,
+                true,
+                meterRegistry
+        );
+    }
+}
@@ -0,0 +1,187 @@
+package com.urlshortener.cache;
+
+import com.urlshortener.model.UrlMapping;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Redis value format of the UrlMapping caches, in place of JDK serialization (class descriptors,
+ * field names and boxed objects on every entry, and a reflective decode on every L2 hit).
+ *
+ *   version | flags | shortCode | originalUrl | [urlFingerprint] | [createdAt] | [expiryDate] | [redirectStatus] | clickCount
+ *
+ * version and flags are one byte each; flags mark which optional fields are present. Strings are a
+ * varint byte length and UTF-8, times are epoch milliseconds as 8-byte longs (the LocalDateTime
+ * taken as UTC, which round-trips it at MongoDB's millisecond precision); redirectStatus and
+ * clickCount are varints.
+ *
+ * Only what a cache reader uses is kept. The Mongo _id is dropped: cached mappings are never
+ * written back, and jobs that need the _id query MongoDB. clickCount is the DB value at load time,
+ * only used to seed Redis link state that went missing and as the stats fallback, as before.
+ *
+ * An entry this codec can't read — another version, or a JDK-serialized entry from before this
+ * format — decodes to null, which RedisCache reports as a miss: the lookup falls through to
+ * MongoDB and the put overwrites it in the current format. Changing the format needs no flush.
+ */
+public final class UrlMappingRedisSerializer implements RedisSerializer<UrlMapping> {
+
+    static final byte VERSION = 1;
+
+    private static final int HAS_FINGERPRINT = 1;
+    private static final int HAS_CREATED_AT = 1 << 1;
+    private static final int HAS_EXPIRY_DATE = 1 << 2;
+    private static final int HAS_REDIRECT_STATUS = 1 << 3;
+
+    @Override
+    public byte[] serialize(UrlMapping mapping) {
+        if (mapping == null) {
+            return null;
+        }
+        if (mapping.getShortCode() == null || mapping.getOriginalUrl() == null) {
+            throw new SerializationException("UrlMapping without shortCode or originalUrl can't be cached");
+        }
+
+        byte[] shortCode = mapping.getShortCode().getBytes(StandardCharsets.UTF_8);
+        byte[] originalUrl = mapping.getOriginalUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] fingerprint = mapping.getUrlFingerprint() != null
+                ? mapping.getUrlFingerprint().getBytes(StandardCharsets.UTF_8) : null;
+        long clickCount = mapping.getClickCount() != null ? mapping.getClickCount() : 0;
+
+        int flags = 0;
+        int size = 2 + stringSize(shortCode) + stringSize(originalUrl) + varintSize(clickCount);
+        if (fingerprint != null) {
+            flags |= HAS_FINGERPRINT;
+            size += stringSize(fingerprint);
+        }
+        if (mapping.getCreatedAt() != null) {
+            flags |= HAS_CREATED_AT;
+            size += Long.BYTES;
+        }
+        if (mapping.getExpiryDate() != null) {
+            flags |= HAS_EXPIRY_DATE;
+            size += Long.BYTES;
+        }
+        if (mapping.getRedirectStatus() != null) {
+            flags |= HAS_REDIRECT_STATUS;
+            size += varintSize(mapping.getRedirectStatus());
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(VERSION).put((byte) flags);
+        putString(out, shortCode);
+        putString(out, originalUrl);
+        if (fingerprint != null) {
+            putString(out, fingerprint);
+        }
+        if (mapping.getCreatedAt() != null) {
+            out.putLong(epochMillis(mapping.getCreatedAt()));
+        }
+        if (mapping.getExpiryDate() != null) {
+            out.putLong(epochMillis(mapping.getExpiryDate()));
+        }
+        if (mapping.getRedirectStatus() != null) {
+            putVarint(out, mapping.getRedirectStatus());
+        }
+        putVarint(out, clickCount);
+        return out.array();
+    }
+
+    @Override
+    public UrlMapping deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length < 2 || bytes[0] != VERSION) {
+            return null;
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            int flags = in.get();
+            UrlMapping mapping = new UrlMapping();
+            mapping.setShortCode(getString(in));
+            mapping.setOriginalUrl(getString(in));
+            if ((flags & HAS_FINGERPRINT) != 0) {
+                mapping.setUrlFingerprint(getString(in));
+            }
+            if ((flags & HAS_CREATED_AT) != 0) {
+                mapping.setCreatedAt(localDateTime(in.getLong()));
+            }
+            if ((flags & HAS_EXPIRY_DATE) != 0) {
+                mapping.setExpiryDate(localDateTime(in.getLong()));
+            }
+            if ((flags & HAS_REDIRECT_STATUS) != 0) {
+                mapping.setRedirectStatus((int) getVarint(in));
+            }
+            mapping.setClickCount(getVarint(in));
+            return in.hasRemaining() ? null : mapping;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Truncated or corrupt: a miss, so it gets rewritten
+            return null;
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return UrlMapping.class;
+    }
+
+    private static long epochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime localDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return varintSize(bytes.length) + bytes.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        putVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        long length = getVarint(in);
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " past the end of the entry");
+        }
+        String value = new String(in.array(), in.position(), (int) length, StandardCharsets.UTF_8);
+        in.position(in.position() + (int) length);
+        return value;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 10 bytes");
+    }
+}
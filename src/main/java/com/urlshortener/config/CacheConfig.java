@@ -1,15 +1,119 @@
-//package com.urlshortener.config;
-//
-//import org.springframework.context.annotation.Bean;
-//import org.springframework.context.annotation.Configuration;
-//import org.springframework.data.redis.cache.RedisCacheConfiguration;
-//
-//@Configuration
-//public class CacheConfig {
-//
-//    @Bean
-//    public RedisCacheConfiguration cacheConfiguration() {
-//        return RedisCacheConfiguration.defaultCacheConfig()
-//                .disableCachingNullValues(); // THIS disables caching nulls
-//    }
-//}
+package com.urlshortener.config;
+
+import com.urlshortener.cache.CacheInvalidationListener;
+import com.urlshortener.cache.CacheInvalidationPublisher;
+import com.urlshortener.cache.TwoLevelCacheManager;
+import com.urlshortener.cache.UrlMappingRedisSerializer;
+import com.urlshortener.service.RedisCircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+
+/**
+ * Two-level cache setup: local Caffeine (L1) → Redis (L2) → MongoDB.
+ *
+ * The UrlMapping caches are stored in Redis with UrlMappingRedisSerializer and their own TTL;
+ * any other cache gets the JDK-serialized defaults with cache.redis.defaultTtlSeconds.
+ * Null results are never cached in either tier: the `unless` conditions in
+ * UrlShortenerCacheService skip them, and the Redis tier rejects them outright. A cached
+ * "not found" would outlive the link's creation, and unknown short codes are already turned
+ * away by ShortCodeFilter before the cache.
+ */
+@Configuration
+@Profile("!embedded")
+public class CacheConfig {
+
+    @Value("${cache.local.maxSize}")
+    private long localMaxSize;
+
+    @Value("${cache.local.ttlSeconds}")
+    private long localTtlSeconds;
+
+    @Value("${cache.local.refreshAfterSeconds}")
+    private long localRefreshAfterSeconds;
+
+    @Value("${cache.redis.defaultTtlSeconds}")
+    private long defaultTtlSeconds;
+
+    @Value("${cache.redis.shortCodeTtlSeconds}")
+    private long shortCodeTtlSeconds;
+
+    @Value("${cache.redis.fingerprintTtlSeconds}")
+    private long fingerprintTtlSeconds;
+
+    @Bean
+    public CacheInvalidationPublisher cacheInvalidationPublisher(RedisTemplate<String, String> redisTemplate) {
+        return new CacheInvalidationPublisher(redisTemplate);
+    }
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             CacheInvalidationPublisher cacheInvalidationPublisher,
+                                             RedisCircuitBreaker redisCircuitBreaker,
+                                             MeterRegistry meterRegistry) {
+        RedisCacheConfiguration defaults = RedisCacheConfiguration.defaultCacheConfig(getClass().getClassLoader())
+                .entryTtl(ttl("cache.redis.defaultTtlSeconds", defaultTtlSeconds))
+                .disableCachingNullValues();
+        RedisCacheConfiguration urlMappings = defaults.serializeValuesWith(
+                RedisSerializationContext.SerializationPair.fromSerializer(new UrlMappingRedisSerializer()));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(defaults)
+                // Redirect path: kept for a long time, links never change and are evicted on delete
+                .withCacheConfiguration("urlMappingsByShortCode",
+                        urlMappings.entryTtl(ttl("cache.redis.shortCodeTtlSeconds", shortCodeTtlSeconds)))
+                // Only read when shortening, so a URL that isn't shortened again shouldn't stay for long
+                .withCacheConfiguration("urlMappingsByFingerprint",
+                        urlMappings.entryTtl(ttl("cache.redis.fingerprintTtlSeconds", fingerprintTtlSeconds)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+
+        // An entry that expires before it's due for a refresh would never be refreshed
+        if (localRefreshAfterSeconds < 0 || (localRefreshAfterSeconds > 0 && localRefreshAfterSeconds >= localTtlSeconds)) {
+            throw new IllegalStateException("cache.local.refreshAfterSeconds must be 0 (off) or below cache.local.ttlSeconds, got "
+                    + localRefreshAfterSeconds);
+        }
+
+        return new TwoLevelCacheManager(
+                redisCacheManager,
+                connectionFactory,
+                cacheInvalidationPublisher,
+                redisCircuitBreaker,
+                localMaxSize,
+                Duration.ofSeconds(localTtlSeconds),
+                localRefreshAfterSeconds > 0 ? Duration.ofSeconds(localRefreshAfterSeconds) : null,
+                meterRegistry
+        );
+    }
+
+    private static Duration ttl(String property, long seconds) {
+        if (seconds <= 0) {
+            throw new IllegalStateException(property + " must be positive, got " + seconds);
+        }
+        return Duration.ofSeconds(seconds);
+    }
+
+    // Shared pub/sub container; other subscribers (e.g. ShortCodeFilter) register their own listeners on it
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                new CacheInvalidationListener(cacheManager),
+                new ChannelTopic(CacheInvalidationPublisher.CHANNEL)
+        );
+        return container;
+    }
+}
@@ -2,6 +2,7 @@ package com.urlshortener.config;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -9,6 +10,7 @@ import org.bson.Document;
 
 @Slf4j
 @Component
+@Profile("!embedded")
 @RequiredArgsConstructor
 public class CounterInitializer {
 
@@ -0,0 +1,66 @@
+package com.urlshortener.config;
+
+import com.urlshortener.model.ClickStats;
+import com.urlshortener.model.UrlMapping;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+
+import java.time.Duration;
+
+/**
+ * Creates the url_mapping and click_stats indexes the queries rely on that aren't covered by
+ * @Indexed (auto-index creation is off). createIndex is a no-op when the index already exists.
+ */
+@Slf4j
+@Component
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class IndexInitializer {
+
+    private final MongoTemplate mongoTemplate;
+
+    // The TTL index is a backstop only: ExpiryService deletes links on time and evicts them from
+    // Redis and the caches; Mongo's TTL monitor only removes what the job missed by a day.
+    static final Duration EXPIRY_TTL_GRACE = Duration.ofDays(1);
+
+    @PostConstruct
+    public void createIndexes() {
+        // Sparse: documents not yet backfilled by FingerprintBackfillService have no fingerprint
+        String fingerprintIndex = mongoTemplate.indexOps(UrlMapping.class).createIndex(
+                new Index().on("urlFingerprint", Sort.Direction.ASC)
+                        .named("urlFingerprint_unique")
+                        .unique()
+                        .sparse());
+        log.info("Ensured url_mapping index {}", fingerprintIndex);
+
+        try {
+            String name = mongoTemplate.indexOps(UrlMapping.class).createIndex(
+                    new Index().on("expiryDate", Sort.Direction.ASC)
+                            .named("expiryDate_ttl")
+                            .expire(EXPIRY_TTL_GRACE));
+            log.info("Ensured url_mapping index {}", name);
+        } catch (Exception e) {
+            // e.g. an existing expiryDate index with different options — the job still works, just slower
+            log.warn("Could not create expiryDate index on url_mapping: {}", e.getMessage());
+        }
+
+        // Stats range queries: one link, a range of days
+        String statsIndex = mongoTemplate.indexOps(ClickStats.class).createIndex(
+                new Index().on("shortCode", Sort.Direction.ASC).on("day", Sort.Direction.ASC)
+                        .named("shortCode_day"));
+        log.info("Ensured click_stats index {}", statsIndex);
+
+        // Retention: expireAt is already day + analytics.retentionDays
+        String retentionIndex = mongoTemplate.indexOps(ClickStats.class).createIndex(
+                new Index().on("expireAt", Sort.Direction.ASC)
+                        .named("expireAt_ttl")
+                        .expire(Duration.ZERO));
+        log.info("Ensured click_stats index {}", retentionIndex);
+    }
+}
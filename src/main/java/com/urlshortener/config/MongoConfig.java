@@ -1,9 +1,11 @@
 package com.urlshortener.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
 
 @Configuration
+@Profile("!embedded")
 @EnableMongoAuditing
 public class MongoConfig {
 }
@@ -0,0 +1,30 @@
+package com.urlshortener.config;
+
+import com.urlshortener.util.IdScrambler;
+import com.urlshortener.util.ShortCodeCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Short code format. Changing width or the scramble key changes how existing codes decode,
+ * so both must stay fixed once links have been issued.
+ */
+@Configuration
+public class ShortCodeConfig {
+
+    @Value("${shortcode.width}")
+    private int width;
+
+    @Value("${shortcode.scramble.enabled}")
+    private boolean scrambleEnabled;
+
+    @Value("${shortcode.scramble.key}")
+    private long scrambleKey;
+
+    @Bean
+    public ShortCodeCodec shortCodeCodec() {
+        IdScrambler scrambler = scrambleEnabled ? new IdScrambler(width, scrambleKey) : null;
+        return new ShortCodeCodec(width, scrambler);
+    }
+}
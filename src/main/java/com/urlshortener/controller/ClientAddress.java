@@ -0,0 +1,20 @@
+package com.urlshortener.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Client IP of a request, for rate limiting and unique-visitor counts.
+ */
+final class ClientAddress {
+
+    private ClientAddress() {
+    }
+
+    static String of(HttpServletRequest request) {
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded != null && !forwarded.isEmpty()) {
+            return forwarded.split(",")[0].trim();
+        }
+        return request.getRemoteAddr();
+    }
+}
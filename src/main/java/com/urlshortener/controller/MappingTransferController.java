@@ -0,0 +1,90 @@
+package com.urlshortener.controller;
+
+import com.urlshortener.exception.BadRequestException;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.model.MappingImportResult;
+import com.urlshortener.service.MappingTransferService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Admin export and import of the mapping set (see MappingTransferService). Authenticated with the
+ * X-Admin-Token header against admin.token; the endpoints don't exist while that is blank.
+ *
+ * Both run on the request thread rather than as async responses, so a large export isn't cut
+ * off by the async request timeout; the body is written to the response as the cursor advances.
+ */
+@RestController
+@RequestMapping("/admin/mappings")
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class MappingTransferController {
+
+    private static final String GZIP = "application/gzip";
+
+    private final MappingTransferService mappingTransferService;
+
+    @Value("${admin.token}")
+    private String adminToken;
+
+    @GetMapping("/export")
+    public void export(@RequestHeader(value = "X-Admin-Token", required = false) String token,
+                       HttpServletResponse response) throws IOException {
+        if (!authorized(token)) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Invalid admin token");
+            return;
+        }
+
+        response.setContentType(GZIP);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"url_mapping-" + LocalDate.now(ZoneOffset.UTC) + ".ndjson.gz\"");
+        mappingTransferService.export(response.getOutputStream());
+    }
+
+    /**
+     * Takes a gzipped NDJSON export as the raw request body. Batches already written stay written
+     * if the import fails part way; sending the same file again skips them as duplicates.
+     */
+    @PostMapping(value = "/import", consumes = GZIP)
+    public ResponseEntity<?> importMappings(@RequestHeader(value = "X-Admin-Token", required = false) String token,
+                                            HttpServletRequest request) {
+        if (!authorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid admin token");
+        }
+
+        MappingImportResult result;
+        try {
+            result = mappingTransferService.importFrom(request.getInputStream());
+        } catch (IOException e) {
+            throw new BadRequestException("Unreadable import stream (expected gzipped NDJSON): " + e.getMessage());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private boolean authorized(String token) {
+        if (adminToken.isBlank()) {
+            throw new NotFoundException("Mapping transfer is disabled");
+        }
+        return token != null && MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,303 @@
+package com.urlshortener.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.exception.ExpiredException;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.model.RedirectStatus;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.model.UrlStatsResponse;
+import com.urlshortener.service.RateLimiterService;
+import com.urlshortener.service.ReactiveRedirectService;
+import com.urlshortener.service.UrlShortener;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.filter.ServerHttpObservationFilter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers redirects, GET (or HEAD) /api/{shortCode}, before the DispatcherServlet: no handler
+ * lookup, argument resolution, ResponseEntity or URI parsing per hit — the status, Location and
+ * Cache-Control headers are written straight to the response. Every other request goes on to
+ * the controllers.
+ *
+ * The status is the link's own (301, 302 or 307) or redirect.defaultStatus. Cache-Control lets
+ * browsers and CDNs reuse a redirect for redirect.cacheMaxAgeSeconds, but never past the link's
+ * expiry. Clicks answered from those caches never get here; a CDN's can be added back from its
+ * logs through POST /api/clicks. With redirect.cacheMaxAgeSeconds=0 redirects are no-store and
+ * every click is counted here.
+ *
+ * Runs after the observation filter, so http.server.requests still times redirects (tagged with
+ * the /api/{shortCode} pattern the controller mapping used to provide).
+ *
+ * With redirect.reactive.enabled, redirects and lifetime stats (GET /api/{shortCode}/stats
+ * without from or to) are answered asynchronously: the request is put into async mode and
+ * ReactiveRedirectService's result completes it, so the container thread goes back to the pool
+ * instead of waiting on Redis or MongoDB. Stats with a series still go to the controller.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+public class RedirectFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = "/api/";
+    private static final String PATH_PATTERN = "/api/{shortCode}";
+    private static final String STATS_SUFFIX = "/stats";
+    private static final String STATS_PATH_PATTERN = "/api/{shortCode}/stats";
+    private static final String NO_STORE = "no-store";
+
+    private final UrlShortener urlShortener;
+    private final RateLimiterService rateLimiterService;
+    private final ObjectProvider<ReactiveRedirectService> reactiveRedirectServiceProvider;
+    private final ObjectMapper objectMapper;
+
+    @Value("${redirect.defaultStatus}")
+    private int defaultStatus;
+
+    @Value("${redirect.cacheMaxAgeSeconds}")
+    private long cacheMaxAgeSeconds;
+
+    // Null unless redirect.reactive.enabled (and not in the embedded profile, which has no such service)
+    private ReactiveRedirectService reactiveRedirects;
+
+    @PostConstruct
+    public void validate() {
+        boolean supported = false;
+        for (RedirectStatus status : RedirectStatus.values()) {
+            supported |= status.code() == defaultStatus;
+        }
+        if (!supported) {
+            throw new IllegalStateException("redirect.defaultStatus must be 301, 302 or 307, got " + defaultStatus);
+        }
+        if (cacheMaxAgeSeconds < 0) {
+            throw new IllegalStateException("redirect.cacheMaxAgeSeconds must not be negative, got " + cacheMaxAgeSeconds);
+        }
+        ReactiveRedirectService reactive = reactiveRedirectServiceProvider.getIfAvailable();
+        reactiveRedirects = reactive != null && reactive.isEnabled() ? reactive : null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String shortCode = shortCode(request);
+        if (shortCode == null) {
+            String statsShortCode = reactiveRedirects != null ? statsShortCode(request) : null;
+            if (statsShortCode != null) {
+                statsAsync(request, response, statsShortCode);
+            } else {
+                chain.doFilter(request, response);
+            }
+            return;
+        }
+        ServerHttpObservationFilter.findObservationContext(request)
+                .ifPresent(context -> context.setPathPattern(PATH_PATTERN));
+
+        String clientIp = ClientAddress.of(request);
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.REDIRECT, clientIp)) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, NO_STORE);
+            return;
+        }
+
+        if (reactiveRedirects != null) {
+            AsyncReply reply = new AsyncReply(request.startAsync());
+            reactiveRedirects.getUrlMappingByShortCode(shortCode, clientIp).subscribe(
+                    mapping -> reply.send(() -> sendRedirect(response, mapping)),
+                    error -> reply.send(() -> sendFailure(response, error)));
+            return;
+        }
+
+        UrlMapping mapping;
+        try {
+            mapping = urlShortener.getUrlMappingByShortCode(shortCode, clientIp);
+        } catch (NotFoundException e) {
+            sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+            return;
+        } catch (ExpiredException e) {
+            sendError(response, HttpStatus.GONE, e.getMessage());
+            return;
+        }
+
+        sendRedirect(response, mapping);
+    }
+
+    private void statsAsync(HttpServletRequest request, HttpServletResponse response, String shortCode) throws IOException {
+        ServerHttpObservationFilter.findObservationContext(request)
+                .ifPresent(context -> context.setPathPattern(STATS_PATH_PATTERN));
+
+        // Same limit and response as the controller's stats endpoint
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.STATS, ClientAddress.of(request))) {
+            sendError(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests. Please try again after a while.");
+            return;
+        }
+
+        AsyncReply reply = new AsyncReply(request.startAsync());
+        reactiveRedirects.getStats(shortCode).subscribe(
+                stats -> reply.send(() -> sendStats(response, stats)),
+                error -> reply.send(() -> sendFailure(response, error)));
+    }
+
+    private void sendRedirect(HttpServletResponse response, UrlMapping mapping) {
+        Integer status = mapping.getRedirectStatus();
+        response.setStatus(status != null ? status : defaultStatus);
+        response.setHeader(HttpHeaders.LOCATION, location(mapping.getOriginalUrl()));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl(mapping.getExpiryDate()));
+    }
+
+    private void sendStats(HttpServletResponse response, UrlStatsResponse stats) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), stats);
+    }
+
+    // What the blocking path's exceptions turn into, for the errors of an async lookup
+    private static void sendFailure(HttpServletResponse response, Throwable error) throws IOException {
+        if (error instanceof NotFoundException) {
+            sendError(response, HttpStatus.NOT_FOUND, error.getMessage());
+        } else if (error instanceof ExpiredException) {
+            sendError(response, HttpStatus.GONE, error.getMessage());
+        } else {
+            log.error("Async lookup failed", error);
+            sendError(response, HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error");
+        }
+    }
+
+    /**
+     * @return the short code of a redirect request, or null for anything else
+     */
+    private static String shortCode(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        int prefixStart = request.getContextPath().length();
+        int start = prefixStart + PREFIX.length();
+        if (uri.length() <= start || !uri.startsWith(PREFIX, prefixStart) || uri.indexOf('/', start) >= 0) {
+            return null;
+        }
+        return uri.substring(start);
+    }
+
+    /**
+     * @return the short code of a lifetime stats request (no from or to), or null for anything else
+     */
+    private static String statsShortCode(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        int prefixStart = request.getContextPath().length();
+        int start = prefixStart + PREFIX.length();
+        int end = uri.length() - STATS_SUFFIX.length();
+        if (end <= start || !uri.startsWith(PREFIX, prefixStart) || !uri.endsWith(STATS_SUFFIX)
+                || uri.indexOf('/', start) != end) {
+            return null;
+        }
+        if (request.getParameter("from") != null || request.getParameter("to") != null) {
+            return null;
+        }
+        return uri.substring(start, end);
+    }
+
+    private String cacheControl(LocalDateTime expiryDate) {
+        if (cacheMaxAgeSeconds == 0) {
+            return NO_STORE;
+        }
+        long maxAge = Math.min(cacheMaxAgeSeconds, Duration.between(LocalDateTime.now(), expiryDate).getSeconds());
+        return maxAge > 0 ? "public, max-age=" + maxAge : NO_STORE;
+    }
+
+    // Location must be ASCII; other URLs are percent-encoded the way ResponseEntity.location(URI) did
+    private static String location(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c >= 0x7F) {
+                return URI.create(url).toASCIIString();
+            }
+        }
+        return url;
+    }
+
+    // Same plain-text bodies as GlobalExceptionHandler gives the controllers
+    private static void sendError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, NO_STORE);
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(message);
+    }
+
+    private interface ResponseWriter {
+        void write() throws IOException;
+    }
+
+    /**
+     * Completes an async request exactly once: with the lookup's response, or with a 503 if the
+     * container's async timeout fires first (the lookup's late result is dropped then).
+     */
+    private static final class AsyncReply implements AsyncListener {
+
+        private final AsyncContext context;
+        private final AtomicBoolean sent = new AtomicBoolean();
+
+        private AsyncReply(AsyncContext context) {
+            this.context = context;
+            context.addListener(this);
+        }
+
+        void send(ResponseWriter writer) {
+            if (!sent.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                writer.write();
+            } catch (IOException e) {
+                // The client went away
+                log.debug("Async response not written: {}", e.getMessage());
+            } finally {
+                context.complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            send(() -> sendError((HttpServletResponse) context.getResponse(), HttpStatus.SERVICE_UNAVAILABLE,
+                    "Timed out"));
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            send(() -> {});
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
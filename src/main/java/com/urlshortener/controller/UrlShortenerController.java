@@ -1,53 +1,114 @@
 package com.urlshortener.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.model.BatchShortenRequest;
+import com.urlshortener.model.BatchStatsRequest;
+import com.urlshortener.model.BatchStatsResponse;
+import com.urlshortener.model.ClickIngestRequest;
+import com.urlshortener.model.ClickIngestResponse;
+import com.urlshortener.model.RedirectStatus;
 import com.urlshortener.model.ShortenUrlRequest;
-import com.urlshortener.model.UrlMapping;
 import com.urlshortener.model.UrlStatsResponse;
+import com.urlshortener.service.ClickAnalyticsService;
 import com.urlshortener.service.RateLimiterService;
-import com.urlshortener.service.UrlShortenerService;
+import com.urlshortener.service.UrlShortener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.net.URI;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * REST API. Redirects (GET /api/{shortCode}) don't come through here: RedirectFilter answers
+ * them before the DispatcherServlet.
+ */
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
 public class UrlShortenerController {
 
-    private final UrlShortenerService urlShortenerService;
+    private final UrlShortener urlShortener;
     private final RateLimiterService rateLimiterService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${clicks.ingest.token}")
+    private String ingestToken;
 
     @PostMapping("/shorten")
     public ResponseEntity<String> shortenUrl(@Valid @RequestBody ShortenUrlRequest request,
                                              HttpServletRequest servletRequest) {
 
-        String clientIp = extractClientIp(servletRequest);
+        String clientIp = ClientAddress.of(servletRequest);
 
-        if (!rateLimiterService.isAllowed(clientIp)) {
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.SHORTEN, clientIp)) {
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
                     .body("Too many requests. Please try again after a while.");
         }
 
-        String shortCode = urlShortenerService.shortenUrl(request.getOriginalUrl());
+        String shortCode = urlShortener.shortenUrl(request.getOriginalUrl(),
+                RedirectStatus.of(request.getRedirectStatus()));
         return ResponseEntity.ok(shortCode);
     }
 
-    @GetMapping("/{shortCode}")
-    public ResponseEntity<Void> redirect(@PathVariable String shortCode) {
-        UrlMapping mapping = urlShortenerService.getUrlMappingByShortCode(shortCode);
-        return ResponseEntity.status(302)
-                .location(URI.create(mapping.getOriginalUrl()))
-                .build();
+    /**
+     * Shortens up to BatchShortenRequest.MAX_URLS URLs. Results are streamed back as NDJSON,
+     * one {"originalUrl", "shortCode"} object per distinct URL. The batch counts against its own
+     * rate limit (BATCH_SHORTEN) by its size.
+     */
+    @PostMapping("/shorten/batch")
+    public ResponseEntity<StreamingResponseBody> shortenBatch(@Valid @RequestBody BatchShortenRequest request,
+                                                              HttpServletRequest servletRequest) {
+
+        String clientIp = ClientAddress.of(servletRequest);
+
+        // Typed as StreamingResponseBody throughout: MVC only streams a ResponseEntity whose body type says so
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.BATCH_SHORTEN, clientIp,
+                request.getOriginalUrls().size())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write("Too many requests. Please try again after a while.".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        StreamingResponseBody body = out -> urlShortener.shortenBatch(request.getOriginalUrls(),
+                result -> writeLine(out, result));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
+    /**
+     * Lifetime stats; with from and/or to (yyyy-MM-dd, UTC) also a click series over that range,
+     * at granularity=day (clicks and unique visitors per day) or hour (clicks per hour).
+     */
     @GetMapping("/{shortCode}/stats")
-    public ResponseEntity<?> getStats(@PathVariable String shortCode) {
-        UrlStatsResponse stats = urlShortenerService.getStats(shortCode);
+    public ResponseEntity<?> getStats(@PathVariable String shortCode,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                      @RequestParam(defaultValue = "day") String granularity,
+                                      HttpServletRequest servletRequest) {
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.STATS, ClientAddress.of(servletRequest))) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body("Too many requests. Please try again after a while.");
+        }
+
+        UrlStatsResponse stats = urlShortener.getStats(shortCode, from, to,
+                ClickAnalyticsService.Granularity.parse(granularity));
         if (stats != null) {
             return ResponseEntity.ok(stats);
         } else {
@@ -55,11 +116,76 @@ public class UrlShortenerController {
         }
     }
 
-    private String extractClientIp(HttpServletRequest request) {
-        String forwarded = request.getHeader("X-Forwarded-For");
-        if (forwarded != null && !forwarded.isEmpty()) {
-            return forwarded.split(",")[0].trim();
+    /**
+     * Lifetime stats of up to BatchStatsRequest.MAX_CODES links in one response. Like a batch
+     * shorten, the batch counts against the stats rate limit by its size.
+     */
+    @PostMapping("/stats/batch")
+    public ResponseEntity<?> getStatsBatch(@Valid @RequestBody BatchStatsRequest request,
+                                           HttpServletRequest servletRequest) {
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.STATS, ClientAddress.of(servletRequest),
+                request.getShortCodes().size())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body("Too many requests. Please try again after a while.");
+        }
+
+        List<UrlStatsResponse> stats = new ArrayList<>(request.getShortCodes().size());
+        List<String> notFound = new ArrayList<>();
+        urlShortener.getStatsBatch(request.getShortCodes(), stats::add, notFound::add);
+        return ResponseEntity.ok(new BatchStatsResponse(stats, notFound));
+    }
+
+    /**
+     * Streaming form of /stats/batch for large sets: NDJSON, one stats object per code as each
+     * chunk is resolved, or {"shortCode", "notFound": true} for a code that matched no link.
+     */
+    @PostMapping("/stats/batch/stream")
+    public ResponseEntity<StreamingResponseBody> streamStatsBatch(@Valid @RequestBody BatchStatsRequest request,
+                                                                  HttpServletRequest servletRequest) {
+        if (!rateLimiterService.isAllowed(RateLimiterService.Endpoint.STATS, ClientAddress.of(servletRequest),
+                request.getShortCodes().size())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write("Too many requests. Please try again after a while.".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        StreamingResponseBody body = out -> urlShortener.getStatsBatch(request.getShortCodes(),
+                stats -> writeLine(out, stats),
+                shortCode -> writeLine(out, new NotFoundLine(shortCode, true)));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Adds clicks counted outside this service — typically redirects a CDN served from its cache,
+     * summed per short code from its logs. Authenticated with the X-Ingest-Token header against
+     * clicks.ingest.token; the endpoint doesn't exist while that is blank.
+     */
+    @PostMapping("/clicks")
+    public ResponseEntity<?> ingestClicks(@RequestHeader(value = "X-Ingest-Token", required = false) String token,
+                                          @Valid @RequestBody ClickIngestRequest request) {
+        if (ingestToken.isBlank()) {
+            throw new NotFoundException("Click ingest is disabled");
+        }
+        if (token == null || !MessageDigest.isEqual(ingestToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid ingest token");
+        }
+
+        List<String> unknown = urlShortener.ingestClicks(request.getClicks());
+        return ResponseEntity.ok(new ClickIngestResponse(request.getClicks().size() - unknown.size(), unknown));
+    }
+
+    private record NotFoundLine(String shortCode, boolean notFound) {}
+
+    private void writeLine(OutputStream out, Object value) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return request.getRemoteAddr();
     }
 }
@@ -0,0 +1,293 @@
+package com.urlshortener.embedded;
+
+import com.urlshortener.util.PagedLongArray;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Link storage of the embedded profile: MongoDB, the ID counter and the Redis link state replaced
+ * by files in embedded.dataDir on one node.
+ *
+ *   mappings.log   MappingLog — every created and deleted link, append-only, memory-mapped
+ *   snapshot.bin   the index and click counts as of some log offset
+ *
+ * In memory there are two PagedLongArrays indexed by link ID (the decoded short code): the log
+ * offset of each live link and its click count. A redirect is an array read, two reads from the
+ * mapped log and an atomic increment — no hashing, no lock, no network. Fingerprints (for dedupe)
+ * are the only per-link objects, in a map.
+ *
+ * Every embedded.snapshotInterval the log is forced to disk and a snapshot is written (to a temp
+ * file, then renamed). Startup loads the latest snapshot and replays the log from the offset it
+ * covers; without a usable snapshot the whole log is replayed. Links are never lost once their
+ * record is in the log, but clicks since the last snapshot are lost if the process dies.
+ *
+ * Creates and deletes are serialized on this object; reads never block.
+ */
+@Slf4j
+@Component
+@Profile("embedded")
+public class EmbeddedStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x55534E50;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    @Value("${embedded.dataDir}")
+    private String dataDir;
+
+    private Path snapshotFile;
+    private MappingLog mappingLog;
+
+    // ID → log offset + 1 (0 = no live link), and ID → clicks
+    private PagedLongArray offsets = new PagedLongArray();
+    private PagedLongArray clicks = new PagedLongArray();
+    private final ConcurrentHashMap<String, Long> idsByFingerprint = new ConcurrentHashMap<>();
+
+    private volatile long maxId;
+
+    private final Object snapshotLock = new Object();
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path dir = Paths.get(dataDir);
+        Files.createDirectories(dir);
+        snapshotFile = dir.resolve("snapshot.bin");
+        long start = System.nanoTime();
+
+        mappingLog = new MappingLog(dir.resolve("mappings.log"));
+        long logOffset = loadSnapshot();
+        long replayed = mappingLog.replay(logOffset, new MappingLog.Visitor() {
+            @Override
+            public void put(long id, long offset) {
+                offsets.set(id, offset + 1);
+                maxId = Math.max(maxId, id);
+            }
+
+            @Override
+            public void delete(long id) {
+                offsets.set(id, 0);
+                clicks.set(id, 0);
+            }
+        });
+
+        long links = 0;
+        for (long id = 1; id <= maxId; id++) {
+            long offset = offsets.get(id) - 1;
+            if (offset >= 0) {
+                idsByFingerprint.put(mappingLog.fingerprint(offset), id);
+                links++;
+            }
+        }
+
+        log.info("Embedded store opened in {}ms: {} link(s), {} log record(s) replayed from offset {}",
+                (System.nanoTime() - start) / 1_000_000, links, replayed, logOffset);
+    }
+
+    /**
+     * @return the ID of the link with this fingerprint, or -1
+     */
+    public long findByFingerprint(String fingerprint) {
+        Long id = idsByFingerprint.get(fingerprint);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Creates a link, unless one with the same fingerprint exists.
+     *
+     * @param redirectStatus HTTP status of the link's redirects, 0 for the default
+     * @return the ID of the new or the existing link
+     */
+    public synchronized long create(String fingerprint, String originalUrl, long createdAt, long expiresAt,
+                                    int redirectStatus) {
+        Long existing = idsByFingerprint.get(fingerprint);
+        if (existing != null) {
+            return existing;
+        }
+
+        long id = maxId + 1;
+        long offset = mappingLog.appendPut(id, fingerprint, originalUrl, createdAt, expiresAt, redirectStatus);
+        offsets.set(id, offset + 1);
+        idsByFingerprint.put(fingerprint, id);
+        maxId = id;
+        return id;
+    }
+
+    /**
+     * @return false if there was no live link with this ID
+     */
+    public synchronized boolean delete(long id) {
+        long offset = offsetOf(id);
+        if (offset < 0) {
+            return false;
+        }
+
+        idsByFingerprint.remove(mappingLog.fingerprint(offset), id);
+        mappingLog.appendDelete(id);
+        offsets.set(id, 0);
+        clicks.set(id, 0);
+        return true;
+    }
+
+    /**
+     * @return the log offset of the live link with this ID, or -1
+     */
+    public long offsetOf(long id) {
+        return id > 0 ? offsets.get(id) - 1 : -1;
+    }
+
+    public long createdAt(long offset) {
+        return mappingLog.createdAt(offset);
+    }
+
+    public long expiresAt(long offset) {
+        return mappingLog.expiresAt(offset);
+    }
+
+    public String originalUrl(long offset) {
+        return mappingLog.originalUrl(offset);
+    }
+
+    public int redirectStatus(long offset) {
+        return mappingLog.redirectStatus(offset);
+    }
+
+    public long recordClick(long id) {
+        return clicks.incrementAndGet(id);
+    }
+
+    public void addClicks(long id, long count) {
+        clicks.addAndGet(id, count);
+    }
+
+    public long getClicks(long id) {
+        return clicks.get(id);
+    }
+
+    public long maxId() {
+        return maxId;
+    }
+
+    @Scheduled(fixedDelayString = "${embedded.snapshotInterval}", initialDelayString = "${embedded.snapshotInterval}")
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        long start = System.nanoTime();
+        long logOffset;
+        long lastId;
+        synchronized (this) {
+            logOffset = mappingLog.end();
+            lastId = maxId;
+        }
+        // The snapshot must never point past what's on disk
+        mappingLog.force();
+
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        long links = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(logOffset);
+            out.writeLong(lastId);
+            // Links created after logOffset are skipped here and replayed from the log instead;
+            // deletes after it are replayed again, which is harmless
+            for (long id = 1; id <= lastId; id++) {
+                long offset = offsets.get(id) - 1;
+                if (offset >= 0 && offset < logOffset) {
+                    out.writeLong(id);
+                    out.writeLong(offset);
+                    out.writeLong(clicks.get(id));
+                    links++;
+                }
+            }
+            out.writeLong(0);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Embedded store snapshot failed, keeping the previous one: {}", e.getMessage());
+            return;
+        }
+
+        log.debug("Embedded store snapshot: {} link(s) at log offset {} in {}ms",
+                links, logOffset, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshot();
+        mappingLog.close();
+    }
+
+    /**
+     * Restores offsets and clicks from the snapshot.
+     *
+     * @return the log offset to replay from: the one the snapshot covers, or 0 without a usable snapshot
+     */
+    private long loadSnapshot() {
+        try (InputStream in = Files.newInputStream(snapshotFile)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in, 1 << 16), new CRC32());
+            DataInputStream data = new DataInputStream(checked);
+            if (data.readInt() != SNAPSHOT_MAGIC || data.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("not an embedded store snapshot");
+            }
+            long logOffset = data.readLong();
+            long lastId = data.readLong();
+
+            long id;
+            while ((id = data.readLong()) != 0) {
+                if (id < 0) {
+                    throw new IOException("corrupt entry");
+                }
+                offsets.set(id, data.readLong() + 1);
+                clicks.set(id, data.readLong());
+            }
+            long expected = checked.getChecksum().getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+
+            maxId = lastId;
+            return logOffset;
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            log.warn("Ignoring embedded store snapshot, replaying the whole log (clicks are lost): {}", e.getMessage());
+            offsets = new PagedLongArray();
+            clicks = new PagedLongArray();
+            maxId = 0;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.urlshortener.embedded;
+
+import com.urlshortener.exception.BadRequestException;
+import com.urlshortener.exception.ExpiredException;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.metrics.ShortenerMetrics.RedirectStage;
+import com.urlshortener.model.RedirectStatus;
+import com.urlshortener.model.ShortenedUrl;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.model.UrlStatsResponse;
+import com.urlshortener.service.ClickAnalyticsService;
+import com.urlshortener.service.UrlShortener;
+import com.urlshortener.util.ShortCodeCodec;
+import com.urlshortener.util.UrlFingerprint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * UrlShortener of the embedded profile, on EmbeddedStore: no MongoDB, no Redis, no caches —
+ * the store's ID-indexed arrays are already faster than any cache in front of them, and since
+ * codes decode to IDs they also answer unknown codes without a filter.
+ *
+ * Same link semantics as UrlShortenerService (fingerprint dedupe, fixed 30-day expiry, lifetime
+ * click counts). Click series and unique visitors aren't tracked.
+ */
+@Slf4j
+@Service
+@Profile("embedded")
+@RequiredArgsConstructor
+public class EmbeddedUrlShortener implements UrlShortener {
+
+    private final EmbeddedStore store;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortenerMetrics metrics;
+
+    private static final Duration LINK_TTL = Duration.ofDays(30);
+
+    @Override
+    public String shortenUrl(String originalUrl, RedirectStatus redirectStatus) {
+        String fingerprint = UrlFingerprint.of(originalUrl);
+        long id = store.findByFingerprint(fingerprint);
+        if (id < 0) {
+            LocalDateTime now = LocalDateTime.now();
+            id = store.create(fingerprint, originalUrl, epochSeconds(now), epochSeconds(now.plus(LINK_TTL)),
+                    redirectStatus != null ? redirectStatus.code() : 0);
+        }
+        return shortCodeCodec.encode(id);
+    }
+
+    /**
+     * Creates are appends to the mapped log, so a batch is simply one shorten per distinct URL.
+     */
+    @Override
+    public void shortenBatch(List<String> originalUrls, Consumer<ShortenedUrl> sink) {
+        for (String originalUrl : new LinkedHashSet<>(originalUrls)) {
+            sink.accept(new ShortenedUrl(originalUrl, shortenUrl(originalUrl, null)));
+        }
+    }
+
+    @Override
+    public UrlMapping getUrlMappingByShortCode(String shortCode, String visitor) throws ExpiredException, NotFoundException {
+        long start = System.nanoTime();
+        long id = shortCodeCodec.decode(shortCode);
+        long offset = store.offsetOf(id);
+        if (offset < 0) {
+            throw new NotFoundException("Short code not found");
+        }
+
+        long expiresAt = store.expiresAt(offset);
+        if (expiresAt < System.currentTimeMillis() / 1000) {
+            throw new ExpiredException("Short code expired");
+        }
+
+        long clicks = store.recordClick(id);
+        UrlMapping mapping = toMapping(shortCode, offset, expiresAt, clicks);
+        metrics.recordRedirectStage(RedirectStage.EMBEDDED, start);
+        return mapping;
+    }
+
+    @Override
+    public UrlStatsResponse getStats(String shortCode, LocalDate from, LocalDate to,
+                                     ClickAnalyticsService.Granularity granularity) {
+        if (from != null || to != null) {
+            throw new BadRequestException("Click series are not available in embedded mode");
+        }
+
+        long id = shortCodeCodec.decode(shortCode);
+        long offset = store.offsetOf(id);
+        if (offset < 0) {
+            throw new NotFoundException("Short code not found");
+        }
+
+        UrlMapping mapping = toMapping(shortCode, offset, store.expiresAt(offset), store.getClicks(id));
+        return UrlStatsResponse.of(mapping, mapping.getClickCount());
+    }
+
+    /**
+     * Every lookup is in-process here, so a batch is just a loop.
+     */
+    @Override
+    public void getStatsBatch(List<String> shortCodes, Consumer<UrlStatsResponse> sink, Consumer<String> notFound) {
+        for (String shortCode : new LinkedHashSet<>(shortCodes)) {
+            long id = shortCodeCodec.decode(shortCode);
+            long offset = store.offsetOf(id);
+            if (offset < 0) {
+                notFound.accept(shortCode);
+                continue;
+            }
+            UrlMapping mapping = toMapping(shortCode, offset, store.expiresAt(offset), store.getClicks(id));
+            sink.accept(UrlStatsResponse.of(mapping, mapping.getClickCount()));
+        }
+    }
+
+    /**
+     * Ingested clicks are added to the click array right away, like redirects.
+     */
+    @Override
+    public List<String> ingestClicks(Map<String, Long> clicks) {
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : clicks.entrySet()) {
+            long id = shortCodeCodec.decode(entry.getKey());
+            boolean known = store.offsetOf(id) >= 0;
+            if (known) {
+                store.addClicks(id, entry.getValue());
+            } else {
+                unknown.add(entry.getKey());
+            }
+            metrics.recordIngestedClicks(known, entry.getValue());
+        }
+        return unknown;
+    }
+
+    /**
+     * Deletes expired links. A sweep over the offset array: reading one expiry per live link
+     * from the mapped log is cheap enough that no expiry index is kept.
+     */
+    @Scheduled(fixedDelayString = "${expiry.interval}", initialDelayString = "${expiry.interval}")
+    public void expireLinks() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis() / 1000;
+        long expired = 0;
+
+        long maxId = store.maxId();
+        for (long id = 1; id <= maxId; id++) {
+            long offset = store.offsetOf(id);
+            if (offset >= 0 && store.expiresAt(offset) < now && store.delete(id)) {
+                expired++;
+            }
+        }
+
+        metrics.recordExpiryBucket(expired);
+        metrics.recordExpiryRun(start);
+        if (expired > 0) {
+            log.info("Expired {} link(s) from the embedded store", expired);
+        }
+    }
+
+    private UrlMapping toMapping(String shortCode, long offset, long expiresAt, long clicks) {
+        UrlMapping mapping = new UrlMapping();
+        mapping.setShortCode(shortCode);
+        mapping.setOriginalUrl(store.originalUrl(offset));
+        mapping.setClickCount(clicks);
+        mapping.setCreatedAt(toDateTime(store.createdAt(offset)));
+        mapping.setExpiryDate(toDateTime(expiresAt));
+        int redirectStatus = store.redirectStatus(offset);
+        mapping.setRedirectStatus(redirectStatus != 0 ? redirectStatus : null);
+        return mapping;
+    }
+
+    private static long epochSeconds(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static LocalDateTime toDateTime(long epochSeconds) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,281 @@
+package com.urlshortener.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of link records in one memory-mapped file, mapped in SEGMENT_SIZE regions as it
+ * grows. Records live off-heap in the page cache; callers keep only their offsets.
+ *
+ *   PUT_V2  size | type | id | createdAt | expiresAt | redirect status | fingerprint length | fingerprint | url length | url | crc
+ *   PUT     size | type | id | createdAt | expiresAt | fingerprint length | fingerprint | url length | url | crc
+ *   DELETE  size | type | id | crc
+ *
+ * PUT records are only read, from logs written before links had a redirect status (a 16-bit HTTP
+ * code, 0 for the default); new links are written as PUT_V2.
+ * size is the whole record in bytes, times are epoch seconds, strings are UTF-8 and crc is a CRC32
+ * of the bytes between size and crc. A record never spans two segments: one that doesn't fit in the
+ * rest of a segment is replaced by a SKIP marker and written at the start of the next one. Mapped
+ * bytes past the end are zero, so a size of 0 marks the end of the log.
+ *
+ * Appends are serialized by the caller (EmbeddedStore); reads are absolute and may run concurrently
+ * with appends, for any record whose offset was handed out before. A write survives a crash of the
+ * process as soon as it's in the mapping; force() makes it survive a crash of the machine too.
+ */
+@Slf4j
+final class MappingLog implements Closeable {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte PUT_V2 = 3;
+
+    private static final int SEGMENT_SHIFT = 26;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int SKIP = -1;
+
+    private static final int TYPE = 4;
+    private static final int ID = 5;
+    private static final int CREATED_AT = 13;
+    private static final int EXPIRES_AT = 21;
+    private static final int FINGERPRINT_LENGTH = 29;
+    private static final int REDIRECT_STATUS = 29;
+    private static final int FINGERPRINT_LENGTH_V2 = 31;
+    private static final int DELETE_SIZE = 17;
+    private static final int CRC_SIZE = 4;
+
+    /**
+     * Replay callback; offset is the record's position in the log.
+     */
+    interface Visitor {
+        void put(long id, long offset);
+
+        void delete(long id);
+    }
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long end;
+
+    MappingLog(Path file) {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long segmentCount = Math.max(1, (channel.size() + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            for (int i = 0; i < segmentCount; i++) {
+                mapSegment(i);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open mapping log " + file, e);
+        }
+    }
+
+    /**
+     * Reads every intact record from offset on and positions the log for appends after the last one.
+     * A torn or corrupt record (a crash mid-write) ends the replay; the rest of the log is zeroed
+     * so appends start from a clean tail.
+     *
+     * @return the number of records replayed
+     */
+    long replay(long offset, Visitor visitor) {
+        long records = 0;
+        long position = offset;
+        while (true) {
+            int segment = (int) (position >>> SEGMENT_SHIFT);
+            int pos = (int) (position & SEGMENT_MASK);
+            if (segment >= segments.length) {
+                break;
+            }
+            if (SEGMENT_SIZE - pos < CRC_SIZE) {
+                position = nextSegment(position);
+                continue;
+            }
+
+            MappedByteBuffer buffer = segments[segment];
+            int size = buffer.getInt(pos);
+            if (size == SKIP) {
+                position = nextSegment(position);
+                continue;
+            }
+            if (size == 0) {
+                break;
+            }
+            if (size < DELETE_SIZE || size > SEGMENT_SIZE - pos || !crcMatches(buffer, pos, size)) {
+                log.warn("Mapping log: corrupt record at offset {}, truncating the log there", position);
+                zeroTail(segment, pos);
+                break;
+            }
+
+            long id = buffer.getLong(pos + ID);
+            if (buffer.get(pos + TYPE) == DELETE) {
+                visitor.delete(id);
+            } else {
+                visitor.put(id, position);
+            }
+            records++;
+            position += size;
+        }
+
+        end = position;
+        return records;
+    }
+
+    long appendPut(long id, String fingerprint, String originalUrl, long createdAt, long expiresAt, int redirectStatus) {
+        byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+        byte[] urlBytes = originalUrl.getBytes(StandardCharsets.UTF_8);
+        int size = FINGERPRINT_LENGTH_V2 + 4 + fingerprintBytes.length + 4 + urlBytes.length + CRC_SIZE;
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(size).put(PUT_V2).putLong(id).putLong(createdAt).putLong(expiresAt)
+                .putShort((short) redirectStatus)
+                .putInt(fingerprintBytes.length).put(fingerprintBytes)
+                .putInt(urlBytes.length).put(urlBytes);
+        return append(record);
+    }
+
+    long appendDelete(long id) {
+        ByteBuffer record = ByteBuffer.allocate(DELETE_SIZE);
+        record.putInt(DELETE_SIZE).put(DELETE).putLong(id);
+        return append(record);
+    }
+
+    /**
+     * @return the offset just past the last record
+     */
+    long end() {
+        return end;
+    }
+
+    long createdAt(long offset) {
+        return segment(offset).getLong(position(offset) + CREATED_AT);
+    }
+
+    long expiresAt(long offset) {
+        return segment(offset).getLong(position(offset) + EXPIRES_AT);
+    }
+
+    /**
+     * @return the link's redirect status, 0 for the default
+     */
+    int redirectStatus(long offset) {
+        MappedByteBuffer buffer = segment(offset);
+        int pos = position(offset);
+        return buffer.get(pos + TYPE) == PUT_V2 ? buffer.getShort(pos + REDIRECT_STATUS) : 0;
+    }
+
+    String fingerprint(long offset) {
+        MappedByteBuffer buffer = segment(offset);
+        int pos = fingerprintLength(buffer, position(offset));
+        return string(buffer, pos + 4, buffer.getInt(pos));
+    }
+
+    String originalUrl(long offset) {
+        MappedByteBuffer buffer = segment(offset);
+        int pos = fingerprintLength(buffer, position(offset));
+        pos += 4 + buffer.getInt(pos);
+        return string(buffer, pos + 4, buffer.getInt(pos));
+    }
+
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private long append(ByteBuffer record) {
+        int size = record.capacity();
+        if (size > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Record of " + size + " bytes exceeds the log segment size");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), TYPE, size - TYPE - CRC_SIZE);
+        record.putInt((int) crc.getValue());
+
+        int pos = (int) (end & SEGMENT_MASK);
+        if (SEGMENT_SIZE - pos < size) {
+            if (SEGMENT_SIZE - pos >= CRC_SIZE) {
+                segment(end).putInt(pos, SKIP);
+            }
+            end = nextSegment(end);
+        }
+
+        int segment = (int) (end >>> SEGMENT_SHIFT);
+        if (segment >= segments.length) {
+            mapSegment(segment);
+        }
+        segments[segment].put(position(end), record.array());
+
+        long offset = end;
+        end += size;
+        return offset;
+    }
+
+    private boolean crcMatches(MappedByteBuffer buffer, int pos, int size) {
+        byte[] body = new byte[size - TYPE - CRC_SIZE];
+        buffer.get(pos + TYPE, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(pos + size - CRC_SIZE);
+    }
+
+    // Everything after a corrupt record is dropped, including later segments
+    private void zeroTail(int segment, int pos) {
+        byte[] zeros = new byte[8192];
+        for (int s = segment; s < segments.length; s++) {
+            MappedByteBuffer buffer = segments[s];
+            for (int at = s == segment ? pos : 0; at < SEGMENT_SIZE; at += zeros.length) {
+                buffer.put(at, zeros, 0, Math.min(zeros.length, SEGMENT_SIZE - at));
+            }
+        }
+    }
+
+    private void mapSegment(int segment) {
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, (long) segment << SEGMENT_SHIFT, SEGMENT_SIZE);
+            MappedByteBuffer[] grown = new MappedByteBuffer[segment + 1];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            grown[segment] = mapped;
+            segments = grown;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map mapping log segment " + segment, e);
+        }
+    }
+
+    private static int fingerprintLength(MappedByteBuffer buffer, int pos) {
+        return pos + (buffer.get(pos + TYPE) == PUT_V2 ? FINGERPRINT_LENGTH_V2 : FINGERPRINT_LENGTH);
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    private static int position(long offset) {
+        return (int) (offset & SEGMENT_MASK);
+    }
+
+    private static long nextSegment(long offset) {
+        return ((offset >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+    }
+
+    private static String string(MappedByteBuffer buffer, int pos, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
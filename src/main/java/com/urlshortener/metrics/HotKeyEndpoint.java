@@ -0,0 +1,28 @@
+package com.urlshortener.metrics;
+
+import com.urlshortener.service.HotKeyService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/hotkeys — the hottest links of the last window on this instance, with their
+ * estimated redirect rates and whether they're pinned in memory.
+ *
+ * Unauthenticated and it reveals which links are hottest, so it's not in the default web exposure.
+ */
+@Component
+@Profile("!embedded")
+@Endpoint(id = "hotkeys")
+@RequiredArgsConstructor
+public class HotKeyEndpoint {
+
+    private final HotKeyService hotKeyService;
+
+    @ReadOperation
+    public HotKeyService.HotKeyReport hotKeys() {
+        return hotKeyService.report();
+    }
+}
@@ -0,0 +1,36 @@
+package com.urlshortener.metrics;
+
+import com.urlshortener.service.LinkStateStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/linkstate[?sampleLinks=N] — bytes per link of the legacy and the compact Redis
+ * link state layouts, measured with MEMORY USAGE on a sample of live keys.
+ *
+ * Each call is a SCAN plus one MEMORY USAGE per sampled key on the production Redis, so it's not
+ * in the default web exposure and the sample is capped: add "linkstate" to
+ * management.endpoints.web.exposure.include only where the actuator isn't publicly reachable
+ * (e.g. a separate management.server.port).
+ */
+@Component
+@Profile("!embedded")
+@Endpoint(id = "linkstate")
+@RequiredArgsConstructor
+public class LinkStateMemoryEndpoint {
+
+    private final LinkStateStore linkStateStore;
+
+    private static final int DEFAULT_SAMPLE_LINKS = 1000;
+    private static final int MAX_SAMPLE_LINKS = 5_000;
+
+    @ReadOperation
+    public LinkStateStore.MemoryReport memory(@Nullable Integer sampleLinks) {
+        int sample = sampleLinks == null ? DEFAULT_SAMPLE_LINKS : Math.max(1, Math.min(sampleLinks, MAX_SAMPLE_LINKS));
+        return linkStateStore.memoryReport(sample);
+    }
+}
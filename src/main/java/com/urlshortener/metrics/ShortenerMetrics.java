@@ -0,0 +1,317 @@
+package com.urlshortener.metrics;
+
+import com.urlshortener.service.RateLimiterService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Application meters, registered once up front so recording on the hot paths is just a
+ * nanoTime() delta and a lock-free update — no registry lookups or tag allocation per request.
+ *
+ * Timers publish percentile histograms, so p50/p99 can be aggregated across instances in Prometheus.
+ */
+@Component
+public class ShortenerMetrics {
+
+    public enum RedirectStage {
+        /** Short code decode + negative-lookup filter */
+        FILTER,
+        /** @Cacheable mapping lookup (L1 → Redis → MongoDB) */
+        CACHE,
+        /** REDIRECT_SCRIPT EVAL */
+        SCRIPT,
+        /** Buffered-click mode: expiry check + in-memory increment */
+        BUFFER,
+        /** Pinned hot link: local mapping + in-memory increment, no cache lookup */
+        PINNED,
+        /** MongoDB fallback after a Redis failure */
+        FALLBACK,
+        /** Embedded profile: index lookup + expiry check + click increment, all in-process */
+        EMBEDDED
+    }
+
+    public enum CacheLoad {
+        /** Loaded from MongoDB by this call */
+        ORIGIN,
+        /** Waited for a load of the same key already running on this instance */
+        COALESCED,
+        /** Waited for another instance holding the key's load lock to cache it */
+        CLUSTER
+    }
+
+    private final MeterRegistry registry;
+
+    private final Map<RedirectStage, Timer> redirectStages = new EnumMap<>(RedirectStage.class);
+    private final Counter redirectFallbacks;
+    private final Counter statsFallbacks;
+    private final Counter redisShortCircuits;
+    private final Counter fallbackClicksFlushed;
+    private final Counter fallbackClicksReconciled;
+    private final Counter ingestedClicksAccepted;
+    private final Counter ingestedClicksUnknown;
+    private final Map<CacheLoad, Counter> cacheLoads = new EnumMap<>(CacheLoad.class);
+
+    private final Map<RateLimiterService.Endpoint, Timer> rateLimitAllowed = new EnumMap<>(RateLimiterService.Endpoint.class);
+    private final Map<RateLimiterService.Endpoint, Timer> rateLimitRejected = new EnumMap<>(RateLimiterService.Endpoint.class);
+    private final Counter leasesGranted;
+    private final Counter leasesDenied;
+    private final Counter leaseFailures;
+
+    private final Map<String, Timer> rangeAllocations = new ConcurrentHashMap<>();
+    private final DistributionSummary rangeSize;
+
+    private final DistributionSummary expiryBucketSize;
+    private final Counter expiredLinks;
+    private final Timer expiryRunDuration;
+
+    private final DistributionSummary syncChunkSize;
+    private final Timer syncRunDuration;
+    private final Counter syncEntries;
+    private final Counter syncShardsClaimed;
+    private final Counter syncShardsBusy;
+    private final Timer syncShardDuration;
+
+    private final DistributionSummary analyticsRollupSize;
+
+    public ShortenerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        for (RedirectStage stage : RedirectStage.values()) {
+            redirectStages.put(stage, Timer.builder("urlshortener.redirect.stage")
+                    .description("Time spent in each stage of the redirect path")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+
+        redirectFallbacks = redisFallbackCounter("redirect");
+        statsFallbacks = redisFallbackCounter("stats");
+        redisShortCircuits = Counter.builder("urlshortener.redis.circuit.shortcircuit")
+                .description("Redis calls skipped because the circuit was open")
+                .register(registry);
+        fallbackClicksFlushed = fallbackClickCounter("flushed");
+        fallbackClicksReconciled = fallbackClickCounter("reconciled");
+        ingestedClicksAccepted = ingestedClickCounter("accepted");
+        ingestedClicksUnknown = ingestedClickCounter("unknown");
+        for (CacheLoad load : CacheLoad.values()) {
+            cacheLoads.put(load, Counter.builder("urlshortener.cache.load")
+                    .description("Mapping cache misses, by how the value was obtained")
+                    .tag("result", load.name().toLowerCase())
+                    .register(registry));
+        }
+
+        for (RateLimiterService.Endpoint endpoint : RateLimiterService.Endpoint.values()) {
+            rateLimitAllowed.put(endpoint, rateLimitTimer(endpoint, "allowed"));
+            rateLimitRejected.put(endpoint, rateLimitTimer(endpoint, "rejected"));
+        }
+        leasesGranted = rateLimitLeaseCounter("granted");
+        leasesDenied = rateLimitLeaseCounter("denied");
+        leaseFailures = rateLimitLeaseCounter("failed");
+
+        rangeSize = DistributionSummary.builder("urlshortener.counter.range.size")
+                .description("Size of ID ranges reserved from MongoDB")
+                .register(registry);
+
+        expiryBucketSize = DistributionSummary.builder("urlshortener.expiry.bucket.size")
+                .description("Links deleted per expiry time bucket")
+                .register(registry);
+        expiredLinks = Counter.builder("urlshortener.expiry.links")
+                .description("Expired links deleted")
+                .register(registry);
+        expiryRunDuration = Timer.builder("urlshortener.expiry.run")
+                .description("Duration of an expiry run")
+                .register(registry);
+
+        syncChunkSize = DistributionSummary.builder("urlshortener.sync.chunk.size")
+                .description("Click counts written per Redis-to-MongoDB sync chunk")
+                .register(registry);
+        syncRunDuration = Timer.builder("urlshortener.sync.run")
+                .description("Duration of a Redis-to-MongoDB sync run")
+                .publishPercentileHistogram()
+                .register(registry);
+        syncEntries = Counter.builder("urlshortener.sync.entries")
+                .description("Click counts written to MongoDB by the sync job")
+                .register(registry);
+        syncShardsClaimed = syncShardCounter("claimed");
+        syncShardsBusy = syncShardCounter("busy");
+        syncShardDuration = Timer.builder("urlshortener.sync.shard.run")
+                .description("Time a sync worker spent draining one dirty-set shard")
+                .register(registry);
+
+        analyticsRollupSize = DistributionSummary.builder("urlshortener.analytics.rollup.size")
+                .description("click_stats documents upserted per sync chunk")
+                .register(registry);
+    }
+
+    public void recordRedirectStage(RedirectStage stage, long startNanos) {
+        redirectStages.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRedirectFallback() {
+        redirectFallbacks.increment();
+    }
+
+    public void recordStatsFallback() {
+        statsFallbacks.increment();
+    }
+
+    /**
+     * 1 while the Redis circuit is open (or half-open), 0 while it's closed.
+     */
+    public void registerRedisCircuit(BooleanSupplier open) {
+        Gauge.builder("urlshortener.redis.circuit.open", () -> open.getAsBoolean() ? 1 : 0)
+                .description("Whether the Redis circuit breaker is open")
+                .register(registry);
+    }
+
+    public void registerPinnedLinks(IntSupplier pinned) {
+        Gauge.builder("urlshortener.hotkeys.pinned", pinned::getAsInt)
+                .description("Hot links pinned in memory")
+                .register(registry);
+    }
+
+    public void recordRedisShortCircuit() {
+        redisShortCircuits.increment();
+    }
+
+    /**
+     * Degraded-mode clicks: $inc'ed into MongoDB while Redis was down, then added to Redis once it's back.
+     */
+    public void recordFallbackClicks(boolean reconciled, long clicks) {
+        (reconciled ? fallbackClicksReconciled : fallbackClicksFlushed).increment(clicks);
+    }
+
+    /**
+     * Clicks received by the ingest endpoint: added to a link, or dropped because the code matched no link.
+     */
+    public void recordIngestedClicks(boolean accepted, long clicks) {
+        (accepted ? ingestedClicksAccepted : ingestedClicksUnknown).increment(clicks);
+    }
+
+    public void recordCacheLoad(CacheLoad load) {
+        cacheLoads.get(load).increment();
+    }
+
+    public void recordCacheLoad(CacheLoad load, int keys) {
+        cacheLoads.get(load).increment(keys);
+    }
+
+    public void recordRateLimitDecision(RateLimiterService.Endpoint endpoint, boolean allowed, long startNanos) {
+        Timer timer = allowed ? rateLimitAllowed.get(endpoint) : rateLimitRejected.get(endpoint);
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One per Redis round-trip the rate limiter makes; compare with the decision count to see
+     * how many requests each lease covers.
+     */
+    public void recordRateLimitLease(boolean granted) {
+        (granted ? leasesGranted : leasesDenied).increment();
+    }
+
+    public void recordRateLimitLeaseFailure() {
+        leaseFailures.increment();
+    }
+
+    /**
+     * Range reservations are infrequent, so the per-sequence timer lookup here is off the hot path.
+     * The timer's count is the allocation frequency.
+     */
+    public void recordRangeAllocation(String sequence, int size, long startNanos) {
+        rangeAllocations.computeIfAbsent(sequence, name -> Timer.builder("urlshortener.counter.range.allocation")
+                        .description("findAndModify latency for reserving an ID range")
+                        .tag("sequence", name)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        rangeSize.record(size);
+    }
+
+    public void recordExpiryBucket(long count) {
+        expiryBucketSize.record(count);
+        expiredLinks.increment(count);
+    }
+
+    public void recordExpiryRun(long startNanos) {
+        expiryRunDuration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSyncChunk(int size) {
+        syncChunkSize.record(size);
+        syncEntries.increment(size);
+    }
+
+    public void recordSyncRun(long startNanos) {
+        syncRunDuration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param claimed false if another worker or instance held the shard's lease
+     */
+    public void recordSyncShard(boolean claimed) {
+        (claimed ? syncShardsClaimed : syncShardsBusy).increment();
+    }
+
+    public void recordSyncShardRun(long startNanos) {
+        syncShardDuration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAnalyticsRollup(int documents) {
+        analyticsRollupSize.record(documents);
+    }
+
+    private Counter syncShardCounter(String result) {
+        return Counter.builder("urlshortener.sync.shard")
+                .description("Dirty-set shard lease attempts by sync workers")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Counter redisFallbackCounter(String operation) {
+        return Counter.builder("urlshortener.redis.fallback")
+                .description("Requests served from MongoDB because Redis failed")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private Counter fallbackClickCounter(String stage) {
+        return Counter.builder("urlshortener.redis.fallback.clicks")
+                .description("Clicks counted in MongoDB while Redis was unavailable")
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    private Counter ingestedClickCounter(String result) {
+        return Counter.builder("urlshortener.clicks.ingested")
+                .description("Clicks counted outside the redirect path (e.g. CDN logs) and ingested")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Timer rateLimitTimer(RateLimiterService.Endpoint endpoint, String result) {
+        return Timer.builder("urlshortener.ratelimit.decision")
+                .description("Rate limiter decision latency")
+                .tag("endpoint", endpoint.name().toLowerCase())
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter rateLimitLeaseCounter(String result) {
+        return Counter.builder("urlshortener.ratelimit.lease")
+                .description("Rate limit quota leases requested from Redis")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,25 @@
+package com.urlshortener.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchShortenRequest {
+
+    public static final int MAX_URLS = 50_000;
+
+    @NotEmpty(message = "originalUrls cannot be empty")
+    @Size(max = MAX_URLS, message = "originalUrls cannot contain more than 50000 URLs")
+    private List<
+            @NotBlank(message = "originalUrl cannot be blank")
+            @Pattern(
+                    regexp = "^(http|https)://.*$",
+                    message = "originalUrl must be a valid URL starting with http or https"
+            )
+            String> originalUrls;
+}
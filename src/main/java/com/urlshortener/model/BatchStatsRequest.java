@@ -0,0 +1,18 @@
+package com.urlshortener.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchStatsRequest {
+
+    public static final int MAX_CODES = 50_000;
+
+    @NotEmpty(message = "shortCodes cannot be empty")
+    @Size(max = MAX_CODES, message = "shortCodes cannot contain more than 50000 short codes")
+    private List<@NotBlank(message = "shortCode cannot be blank") String> shortCodes;
+}
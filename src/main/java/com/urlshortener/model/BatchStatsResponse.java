@@ -0,0 +1,17 @@
+package com.urlshortener.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchStatsResponse {
+    // Lifetime stats (no click series) of the codes that matched a link, in request order
+    private List<UrlStatsResponse> stats;
+    // Codes that matched no link (never existed, or expired and deleted)
+    private List<String> notFound;
+}
@@ -0,0 +1,20 @@
+package com.urlshortener.model;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class ClickIngestRequest {
+
+    public static final int MAX_CODES = 10_000;
+
+    // Short code → clicks counted elsewhere since the last ingest, e.g. summed from CDN logs
+    @NotEmpty(message = "clicks cannot be empty")
+    @Size(max = MAX_CODES, message = "clicks cannot contain more than 10000 short codes")
+    private Map<String, @NotNull(message = "click counts cannot be null") @Positive(message = "click counts must be positive") Long> clicks;
+}
@@ -0,0 +1,16 @@
+package com.urlshortener.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickIngestResponse {
+    private int accepted;
+    // Codes that matched no link (never existed, or expired and deleted); their clicks were dropped
+    private List<String> unknown;
+}
@@ -0,0 +1,18 @@
+package com.urlshortener.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickSeriesPoint {
+    // Bucket start: yyyy-MM-dd for daily points, yyyy-MM-ddTHH:00 for hourly ones (UTC)
+    private String start;
+    private long clicks;
+    // Daily points only — distinct visitors can't be summed across buckets
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long uniques;
+}
@@ -0,0 +1,35 @@
+package com.urlshortener.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One link's clicks for one UTC day, rolled up from Redis by the sync job (ClickAnalyticsService).
+ * Indexed by IndexInitializer: (shortCode, day) for range queries, expireAt as a TTL.
+ */
+@Data
+@Document(collection = "click_stats")
+public class ClickStats {
+
+    // {shortCode}:{day}
+    @Id
+    private String id;
+
+    private String shortCode;
+
+    // ISO date (yyyy-MM-dd), so ranges compare lexicographically
+    private String day;
+
+    // Hour of day ("0".."23") → clicks in that hour
+    private Map<String, Long> hourly = new HashMap<>();
+
+    // HyperLogLog estimate of distinct visitors that day
+    private Long uniques;
+
+    private LocalDateTime expireAt;
+}
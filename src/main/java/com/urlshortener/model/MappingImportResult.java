@@ -0,0 +1,20 @@
+package com.urlshortener.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingImportResult {
+    private long imported;
+    // Lines whose shortCode or URL fingerprint is already taken here; the existing link is kept
+    private long duplicates;
+    // Lines for links that had already expired; not imported
+    private long expired;
+    // Lines that couldn't be parsed, lacked required fields, or whose shortCode doesn't decode here
+    private long rejected;
+    // Highest link ID imported; the url_sequence counter now starts above it
+    private long maxId;
+}
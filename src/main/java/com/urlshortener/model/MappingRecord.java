@@ -0,0 +1,34 @@
+package com.urlshortener.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One line of a mapping export: everything needed to recreate a link elsewhere. The Mongo _id
+ * isn't part of it — imported documents get new ones; links are identified by shortCode.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MappingRecord {
+    private String shortCode;
+    private String originalUrl;
+    private String urlFingerprint;
+    private Long clickCount;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiryDate;
+    private Integer redirectStatus;
+
+    public MappingRecord(UrlMapping mapping, long clickCount) {
+        this.shortCode = mapping.getShortCode();
+        this.originalUrl = mapping.getOriginalUrl();
+        this.urlFingerprint = mapping.getUrlFingerprint();
+        this.clickCount = clickCount;
+        this.createdAt = mapping.getCreatedAt();
+        this.expiryDate = mapping.getExpiryDate();
+        this.redirectStatus = mapping.getRedirectStatus();
+    }
+}
@@ -0,0 +1,38 @@
+package com.urlshortener.model;
+
+import com.urlshortener.exception.BadRequestException;
+
+/**
+ * HTTP status a link redirects with. Links store the code; links without one use redirect.defaultStatus.
+ *
+ * 301 is cached by browsers (and CDNs) with no expiry unless Cache-Control says otherwise, and may
+ * turn a POST into a GET; 307 keeps the method; 302 is the historical default.
+ */
+public enum RedirectStatus {
+    MOVED_PERMANENTLY(301), FOUND(302), TEMPORARY_REDIRECT(307);
+
+    private final int code;
+
+    RedirectStatus(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    /**
+     * @return the status for code, or null for null
+     */
+    public static RedirectStatus of(Integer code) {
+        if (code == null) {
+            return null;
+        }
+        for (RedirectStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new BadRequestException("redirectStatus must be 301, 302 or 307");
+    }
+}
@@ -13,4 +13,7 @@ public class ShortenUrlRequest {
             message = "originalUrl must be a valid URL starting with http or https"
     )
     private String originalUrl;
+
+    // Optional: 301, 302 or 307. Ignored if the URL is already shortened — the existing link is returned as is.
+    private Integer redirectStatus;
 }
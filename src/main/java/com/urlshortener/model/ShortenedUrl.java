@@ -0,0 +1,13 @@
+package com.urlshortener.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShortenedUrl {
+    private String originalUrl;
+    private String shortCode;
+}
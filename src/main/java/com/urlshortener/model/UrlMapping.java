@@ -16,9 +16,11 @@ public class UrlMapping implements Serializable {
     @Id
     private String id;
 
-    @Indexed
     private String originalUrl;
 
+    // UrlFingerprint of originalUrl — the dedupe key (unique, sparse index created by IndexInitializer)
+    private String urlFingerprint;
+
     @Indexed(unique = true)
     private String shortCode;
 
@@ -27,5 +29,9 @@ public class UrlMapping implements Serializable {
     @CreatedDate
     private LocalDateTime createdAt;
 
+    // Indexed (with a TTL backstop) by IndexInitializer
     private LocalDateTime expiryDate;
+
+    // 301, 302 or 307 (RedirectStatus); null redirects with redirect.defaultStatus
+    private Integer redirectStatus;
 }
@@ -1,7 +1,10 @@
 package com.urlshortener.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class UrlStatsResponse {
     private String originalUrl;
@@ -9,4 +12,23 @@ public class UrlStatsResponse {
     private long clickCount;
     private String createdAt;
     private String expiryDate;
+
+    // Only when a range was requested: "hour" or "day", and one point per bucket in the range
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String granularity;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ClickSeriesPoint> series;
+
+    /**
+     * Lifetime stats of a link, with clickCount from wherever the caller read it.
+     */
+    public static UrlStatsResponse of(UrlMapping mapping, long clickCount) {
+        UrlStatsResponse stats = new UrlStatsResponse();
+        stats.setOriginalUrl(mapping.getOriginalUrl());
+        stats.setShortCode(mapping.getShortCode());
+        stats.setClickCount(clickCount);
+        stats.setCreatedAt(mapping.getCreatedAt().toString());
+        stats.setExpiryDate(mapping.getExpiryDate().toString());
+        return stats;
+    }
 }
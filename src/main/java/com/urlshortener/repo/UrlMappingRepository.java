@@ -3,14 +3,15 @@ package com.urlshortener.repo;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import com.urlshortener.model.UrlMapping;
 
-import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UrlMappingRepository extends MongoRepository<UrlMapping, String> {
 
     Optional<UrlMapping> findByShortCode(String shortCode);
 
-    Optional<UrlMapping> findByOriginalUrl(String originalUrl);
+    Optional<UrlMapping> findByUrlFingerprint(String urlFingerprint);
 
-    long deleteByExpiryDateBefore(LocalDateTime dateTime);
+    List<UrlMapping> findByShortCodeIn(Collection<String> shortCodes);
 }
@@ -0,0 +1,165 @@
+package com.urlshortener.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.urlshortener.model.ShortenedUrl;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.ShortCodeCodec;
+import com.urlshortener.util.UrlFingerprint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bulk shortening for imports. Compared to one POST /shorten per URL, a batch costs:
+ *   - one $in query on urlFingerprint per chunk to find URLs that are already shortened
+ *   - one counter reservation for the whole batch (a contiguous ID block)
+ *   - one insertMany and one Redis pipeline (an HSET per link state bucket) per chunk
+ * Results are handed to the sink chunk by chunk so the caller can stream them back.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class BatchShortenService {
+
+    private final MongoTemplate mongoTemplate;
+    private final CounterService counterService;
+    private final LinkStateStore linkStateStore;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortCodeFilter shortCodeFilter;
+
+    private static final Duration LINK_TTL = Duration.ofDays(30);
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Value("${shorten.batch.chunkSize}")
+    private int chunkSize;
+
+    /**
+     * Shortens every URL (URLs with the same UrlFingerprint are shortened once) and emits one result
+     * per distinct URL, in first-seen order within each chunk.
+     */
+    public void shortenBatch(List<String> originalUrls, Consumer<ShortenedUrl> sink) {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (String originalUrl : originalUrls) {
+            fingerprints.computeIfAbsent(originalUrl, UrlFingerprint::of);
+        }
+        List<String> distinctUrls = new ArrayList<>(fingerprints.keySet());
+        List<String> distinctFingerprints = new ArrayList<>(new LinkedHashSet<>(fingerprints.values()));
+
+        // Existing mappings first, so the ID block is sized to exactly the URLs that need one
+        Map<String, String> shortCodes = findShortCodes(distinctFingerprints);
+        int existing = shortCodes.size();
+
+        int missing = distinctFingerprints.size() - existing;
+        long nextId = missing > 0 ? counterService.reserveBlock("url_sequence", missing) : 0;
+        if (missing > 0) {
+            shortCodeFilter.addRange(nextId, missing);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiryDate = now.plus(LINK_TTL);
+
+        for (int from = 0; from < distinctUrls.size(); from += chunkSize) {
+            List<String> chunk = distinctUrls.subList(from, Math.min(from + chunkSize, distinctUrls.size()));
+            List<UrlMapping> created = new ArrayList<>();
+
+            for (String originalUrl : chunk) {
+                String fingerprint = fingerprints.get(originalUrl);
+                if (!shortCodes.containsKey(fingerprint)) {
+                    String shortCode = shortCodeCodec.encode(nextId++);
+                    shortCodes.put(fingerprint, shortCode);
+
+                    UrlMapping mapping = new UrlMapping();
+                    mapping.setOriginalUrl(originalUrl);
+                    mapping.setUrlFingerprint(fingerprint);
+                    mapping.setShortCode(shortCode);
+                    mapping.setClickCount(0L);
+                    mapping.setCreatedAt(now);
+                    mapping.setExpiryDate(expiryDate);
+                    created.add(mapping);
+                }
+            }
+
+            if (!created.isEmpty()) {
+                insertIfAbsent(created, shortCodes);
+                initRedisKeys(created);
+            }
+
+            for (String originalUrl : chunk) {
+                sink.accept(new ShortenedUrl(originalUrl, shortCodes.get(fingerprints.get(originalUrl))));
+            }
+        }
+
+        log.info("Batch shortened {} URL(s): {} new, {} existing", distinctUrls.size(), missing, existing);
+    }
+
+    /**
+     * @return fingerprint → shortCode for the fingerprints that already have a mapping
+     */
+    private Map<String, String> findShortCodes(List<String> fingerprints) {
+        Map<String, String> shortCodes = new HashMap<>();
+        for (int from = 0; from < fingerprints.size(); from += chunkSize) {
+            List<String> chunk = fingerprints.subList(from, Math.min(from + chunkSize, fingerprints.size()));
+            Query query = Query.query(Criteria.where("urlFingerprint").in(chunk));
+            query.fields().include("urlFingerprint").include("shortCode");
+            for (UrlMapping mapping : mongoTemplate.find(query, UrlMapping.class)) {
+                shortCodes.put(mapping.getUrlFingerprint(), mapping.getShortCode());
+            }
+        }
+        return shortCodes;
+    }
+
+    /**
+     * Unordered insertMany. Mappings whose fingerprint was inserted concurrently by someone else
+     * fail on the unique index; they are dropped from created and resolved to the winner's code.
+     */
+    private void insertIfAbsent(List<UrlMapping> created, Map<String, String> shortCodes) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class)
+                    .insert(created)
+                    .execute();
+        } catch (BulkOperationException e) {
+            List<UrlMapping> lost = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                lost.add(created.get(error.getIndex()));
+            }
+
+            List<String> lostFingerprints = new ArrayList<>(lost.size());
+            for (UrlMapping mapping : lost) {
+                lostFingerprints.add(mapping.getUrlFingerprint());
+            }
+            shortCodes.putAll(findShortCodes(lostFingerprints));
+            created.removeAll(lost);
+            log.info("{} batch URL(s) were shortened concurrently elsewhere; using the existing codes", lost.size());
+        }
+    }
+
+    private void initRedisKeys(List<UrlMapping> created) {
+        try {
+            linkStateStore.init(created);
+        } catch (Exception e) {
+            // The redirect script repopulates missing state from the DB values, so this only costs a warm-up
+            log.warn("Failed to initialize Redis keys for {} batch-created URL(s): {}", created.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.urlshortener.service;
+
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.model.UrlStatsResponse;
+import com.urlshortener.util.ShortCodeCodec;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Lifetime stats for many links, e.g. a dashboard refresh. Compared to one GET /stats per link,
+ * each chunk of stats.batch.chunkSize codes costs:
+ *   - one multi-key cache lookup (local tier, then one Redis MGET for the rest)
+ *   - one $in query on shortCode for the codes neither cache tier has
+ *   - one Redis pipeline for the click counts (and one MGET for links still in the legacy layout)
+ * Expiry comes from the mapping, as for a single link. Results are handed to the sink chunk by
+ * chunk so the caller can stream them back.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class BatchStatsService {
+
+    private final UrlShortenerCacheService urlShortenerCacheService;
+    private final LinkStateStore linkStateStore;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortCodeFilter shortCodeFilter;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    @Value("${stats.batch.chunkSize}")
+    private int chunkSize;
+
+    @PostConstruct
+    public void validate() {
+        if (chunkSize < 1) {
+            throw new IllegalStateException("stats.batch.chunkSize must be at least 1, got " + chunkSize);
+        }
+    }
+
+    public void getStatsBatch(List<String> shortCodes, Consumer<UrlStatsResponse> sink, Consumer<String> notFound) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(shortCodes));
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<String> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+
+            // Malformed and unknown codes never reach the cache or the DB, as for a single link
+            List<String> decoded = new ArrayList<>(chunk.size());
+            long[] ids = new long[chunk.size()];
+            for (String shortCode : chunk) {
+                long id = shortCodeCodec.decode(shortCode);
+                if (id >= 0) {
+                    ids[decoded.size()] = id;
+                    decoded.add(shortCode);
+                }
+            }
+            boolean[] mightExist = shortCodeFilter.mightExistAll(Arrays.copyOf(ids, decoded.size()));
+            List<String> known = new ArrayList<>(decoded.size());
+            for (int i = 0; i < decoded.size(); i++) {
+                if (mightExist[i]) {
+                    known.add(decoded.get(i));
+                }
+            }
+
+            Map<String, UrlMapping> mappings = known.isEmpty() ? Map.of() : urlShortenerCacheService.getAllByShortCode(known);
+            List<String> found = new ArrayList<>(mappings.size());
+            for (String shortCode : known) {
+                if (mappings.containsKey(shortCode)) {
+                    found.add(shortCode);
+                }
+            }
+            List<Long> clicks = found.isEmpty() ? List.of() : readClicks(found);
+
+            for (int i = 0, f = 0; i < chunk.size(); i++) {
+                String shortCode = chunk.get(i);
+                UrlMapping mapping = mappings.get(shortCode);
+                if (mapping == null) {
+                    notFound.accept(shortCode);
+                    continue;
+                }
+                Long count = clicks != null ? clicks.get(f++) : null;
+                sink.accept(UrlStatsResponse.of(mapping, count != null ? count : mapping.getClickCount()));
+            }
+        }
+    }
+
+    /**
+     * @return click counts in shortCodes order (null where a link has no Redis state), or null if
+     *         Redis is unavailable and every count falls back to the mapping's
+     */
+    private List<Long> readClicks(List<String> shortCodes) {
+        if (circuitBreaker.allowRequest()) {
+            try {
+                List<Long> clicks = linkStateStore.getClicks(shortCodes);
+                circuitBreaker.recordSuccess();
+                return clicks;
+            } catch (Exception e) {
+                log.warn("Redis failed reading stats for {} links, falling back to DB: {}", shortCodes.size(), e.getMessage());
+                circuitBreaker.recordFailure();
+            }
+        }
+        metrics.recordStatsFallback();
+        return null;
+    }
+}
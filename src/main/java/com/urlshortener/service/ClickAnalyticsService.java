@@ -0,0 +1,328 @@
+package com.urlshortener.service;
+
+import com.urlshortener.exception.BadRequestException;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.ClickSeriesPoint;
+import com.urlshortener.model.ClickStats;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-link click series (hourly, daily) and approximate unique visitors.
+ *
+ * Recorded in Redis in the same round-trip as the click itself (REDIRECT_SCRIPT, or the click
+ * flush in buffered mode):
+ *
+ *   clicks:h:{epoch hour}            →  hash { shortCode: clicks in that hour }
+ *   uniques:{shortCode}:{epoch day}  →  HyperLogLog of visitor IPs for that UTC day
+ *
+ * Redis only holds what the sync job hasn't rolled up yet: the keys expire shortly after their
+ * bucket closes. For each chunk of dirty short codes RedisSyncService calls rollup(), which reads
+ * the last analytics.rollupLookbackHours hours and $sets them as absolute values on one click_stats
+ * document per link and UTC day — so re-running a rollup is idempotent and nothing has to track
+ * what was already applied. The sync interval (plus any outage) must stay under the lookback.
+ *
+ * Storage is bounded by bucket count, not traffic: 24 counters and one estimate per link per day,
+ * expired after analytics.retentionDays by a TTL index and deleted with the link by ExpiryService.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class ClickAnalyticsService {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    public enum Granularity {
+        HOUR, DAY;
+
+        public static Granularity parse(String value) {
+            for (Granularity granularity : values()) {
+                if (granularity.name().equalsIgnoreCase(value)) {
+                    return granularity;
+                }
+            }
+            throw new BadRequestException("granularity must be hour or day");
+        }
+    }
+
+    static final int MAX_HOURLY_RANGE_DAYS = 31;
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final int HOURS_PER_DAY = 24;
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    @Value("${analytics.rollupLookbackHours}")
+    private int lookbackHours;
+
+    @Value("${analytics.retentionDays}")
+    private int retentionDays;
+
+    @PostConstruct
+    public void init() {
+        // One hour of lookback would drop the tail of the previous hour whenever a sync crosses the boundary
+        if (lookbackHours < 2) {
+            throw new IllegalStateException("analytics.rollupLookbackHours must be at least 2");
+        }
+    }
+
+    public static long currentHour() {
+        return System.currentTimeMillis() / MILLIS_PER_HOUR;
+    }
+
+    public static String hourKey(long hour) {
+        return "clicks:h:" + hour;
+    }
+
+    public static long dayOf(long hour) {
+        return hour / HOURS_PER_DAY;
+    }
+
+    public static String uniquesKey(String shortCode, long day) {
+        return "uniques:" + shortCode + ":" + day;
+    }
+
+    /**
+     * TTL for an hour hash: long enough for every rollup in the lookback to still see it.
+     */
+    public long hourKeyTtlSeconds() {
+        return (lookbackHours + 1) * SECONDS_PER_HOUR;
+    }
+
+    /**
+     * TTL for a day's HyperLogLog, set when it's created: the whole day plus the lookback.
+     */
+    public long uniquesKeyTtlSeconds() {
+        return (HOURS_PER_DAY + lookbackHours) * SECONDS_PER_HOUR;
+    }
+
+    /**
+     * Buffered mode: adds the visitors accumulated since the last flush to today's HyperLogLogs.
+     * One pipeline; the TTL is (re)set on each key, which only matters the first time.
+     */
+    public void recordVisitors(Map<String, Collection<String>> visitorsByShortCode) {
+        long day = dayOf(currentHour());
+        long ttl = uniquesKeyTtlSeconds();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            visitorsByShortCode.forEach((shortCode, visitors) -> {
+                byte[] key = bytes(uniquesKey(shortCode, day));
+                byte[][] values = new byte[visitors.size()][];
+                int i = 0;
+                for (String visitor : visitors) {
+                    values[i++] = bytes(visitor);
+                }
+                connection.hyperLogLogCommands().pfAdd(key, values);
+                connection.keyCommands().expire(key, ttl);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Rolls the Redis buckets of the lookback window up into click_stats, for one sync chunk:
+     * one pipeline (an HMGET per hour, a PFCOUNT per link and day) and one unordered bulk upsert.
+     *
+     * @return number of click_stats documents written
+     */
+    public int rollup(List<String> shortCodes) {
+        long lastHour = currentHour();
+        long firstHour = lastHour - lookbackHours + 1;
+        long firstDay = dayOf(firstHour);
+        long lastDay = dayOf(lastHour);
+        byte[][] fields = new byte[shortCodes.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = bytes(shortCodes.get(i));
+        }
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long hour = firstHour; hour <= lastHour; hour++) {
+                connection.hashCommands().hMGet(bytes(hourKey(hour)), fields);
+            }
+            for (long day = firstDay; day <= lastDay; day++) {
+                for (String shortCode : shortCodes) {
+                    connection.hyperLogLogCommands().pfCount(bytes(uniquesKey(shortCode, day)));
+                }
+            }
+            return null;
+        });
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClickStats.class);
+        int documents = 0;
+
+        for (int i = 0; i < shortCodes.size(); i++) {
+            String shortCode = shortCodes.get(i);
+            for (long day = firstDay; day <= lastDay; day++) {
+                Update update = new Update();
+                boolean any = false;
+
+                long fromHour = Math.max(firstHour, day * HOURS_PER_DAY);
+                long toHour = Math.min(lastHour, (day + 1) * HOURS_PER_DAY - 1);
+                for (long hour = fromHour; hour <= toHour; hour++) {
+                    List<?> counts = (List<?>) results.get((int) (hour - firstHour));
+                    Object clicks = counts.get(i);
+                    if (clicks != null) {
+                        update.set("hourly." + hour % HOURS_PER_DAY, Long.parseLong(clicks.toString()));
+                        any = true;
+                    }
+                }
+
+                int uniquesIndex = lookbackHours + (int) (day - firstDay) * shortCodes.size() + i;
+                long uniques = ((Number) results.get(uniquesIndex)).longValue();
+                if (uniques > 0) {
+                    update.set("uniques", uniques);
+                    any = true;
+                }
+
+                if (any) {
+                    LocalDate date = LocalDate.ofEpochDay(day);
+                    update.setOnInsert("shortCode", shortCode)
+                            .setOnInsert("day", date.toString())
+                            .setOnInsert("expireAt", LocalDateTime.of(date.plusDays(retentionDays), LocalTime.MIDNIGHT));
+                    bulkOps.upsert(Query.query(Criteria.where("_id").is(documentId(shortCode, date))), update);
+                    documents++;
+                }
+            }
+        }
+
+        if (documents > 0) {
+            bulkOps.execute();
+        }
+        metrics.recordAnalyticsRollup(documents);
+        return documents;
+    }
+
+    /**
+     * Click series for one link over [from, to] (UTC days, inclusive), one point per bucket with
+     * zeros where nothing was recorded. Reads click_stats, then overlays the hours Redis still
+     * holds, so the current hour is included even before the next sync.
+     */
+    public List<ClickSeriesPoint> series(String shortCode, LocalDate from, LocalDate to, Granularity granularity) {
+        if (from.isAfter(to)) {
+            throw new BadRequestException("from must not be after to");
+        }
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        long maxDays = granularity == Granularity.HOUR ? MAX_HOURLY_RANGE_DAYS : retentionDays;
+        if (days > maxDays) {
+            throw new BadRequestException("Range too long: at most " + maxDays + " days at " + granularity.name().toLowerCase() + " granularity");
+        }
+
+        Map<String, ClickStats> byDay = new HashMap<>();
+        Query query = Query.query(Criteria.where("shortCode").is(shortCode)
+                .and("day").gte(from.toString()).lte(to.toString()));
+        for (ClickStats stats : mongoTemplate.find(query, ClickStats.class)) {
+            byDay.put(stats.getDay(), stats);
+        }
+
+        // Without Redis the series are still correct up to the last rollup
+        if (circuitBreaker.allowRequest()) {
+            try {
+                overlayRecent(shortCode, byDay);
+                circuitBreaker.recordSuccess();
+            } catch (Exception e) {
+                log.warn("Redis failed reading recent clicks for shortCode={}: {}", shortCode, e.getMessage());
+                circuitBreaker.recordFailure();
+            }
+        }
+
+        List<ClickSeriesPoint> series = new ArrayList<>((int) (granularity == Granularity.HOUR ? days * HOURS_PER_DAY : days));
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            ClickStats stats = byDay.get(date.toString());
+            if (granularity == Granularity.DAY) {
+                long clicks = 0;
+                if (stats != null) {
+                    for (Long hourly : stats.getHourly().values()) {
+                        clicks += hourly;
+                    }
+                }
+                Long uniques = stats != null && stats.getUniques() != null ? stats.getUniques() : 0L;
+                series.add(new ClickSeriesPoint(date.toString(), clicks, uniques));
+            } else {
+                for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+                    Long clicks = stats != null ? stats.getHourly().get(String.valueOf(hour)) : null;
+                    series.add(new ClickSeriesPoint(date.atTime(hour, 0).toString(), clicks != null ? clicks : 0, null));
+                }
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Deletes the rolled-up stats of deleted links. Their Redis buckets expire on their own.
+     */
+    public void remove(List<String> shortCodes) {
+        mongoTemplate.remove(Query.query(Criteria.where("shortCode").in(shortCodes)), ClickStats.class);
+    }
+
+    private void overlayRecent(String shortCode, Map<String, ClickStats> byDay) {
+        long lastHour = currentHour();
+        long firstHour = lastHour - lookbackHours + 1;
+        long firstDay = dayOf(firstHour);
+        long lastDay = dayOf(lastHour);
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long hour = firstHour; hour <= lastHour; hour++) {
+                connection.hashCommands().hGet(bytes(hourKey(hour)), bytes(shortCode));
+            }
+            for (long day = firstDay; day <= lastDay; day++) {
+                connection.hyperLogLogCommands().pfCount(bytes(uniquesKey(shortCode, day)));
+            }
+            return null;
+        });
+
+        for (long hour = firstHour; hour <= lastHour; hour++) {
+            Object clicks = results.get((int) (hour - firstHour));
+            if (clicks != null) {
+                dayStats(byDay, shortCode, dayOf(hour)).getHourly()
+                        .put(String.valueOf(hour % HOURS_PER_DAY), Long.parseLong(clicks.toString()));
+            }
+        }
+        for (long day = firstDay; day <= lastDay; day++) {
+            long uniques = ((Number) results.get(lookbackHours + (int) (day - firstDay))).longValue();
+            if (uniques > 0) {
+                dayStats(byDay, shortCode, day).setUniques(uniques);
+            }
+        }
+    }
+
+    private static ClickStats dayStats(Map<String, ClickStats> byDay, String shortCode, long day) {
+        return byDay.computeIfAbsent(LocalDate.ofEpochDay(day).toString(), date -> {
+            ClickStats stats = new ClickStats();
+            stats.setShortCode(shortCode);
+            stats.setDay(date);
+            return stats;
+        });
+    }
+
+    private static String documentId(String shortCode, LocalDate day) {
+        return shortCode + ":" + day;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,211 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.service.LinkStateStore.ClickDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional in-JVM click accumulation (clicks.buffer.enabled).
+ * Redirects only bump a striped LongAdder per shortCode; a scheduled flush pushes the
+ * accumulated deltas to Redis in batches, so Redis is off the redirect critical path.
+ *
+ * Trade-off: clicks recorded since the last flush are lost if the JVM dies — the loss
+ * window is bounded by clicks.buffer.flushInterval.
+ *
+ * Entries idle for a whole interval are removed so the map only holds active links. A click can
+ * race with that removal and land on the removed entry; see retireIfIdle and rescue for how it's
+ * carried over instead of lost.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class ClickBufferService {
+
+    private final LinkStateStore linkStateStore;
+    private final ClickAnalyticsService clickAnalytics;
+
+    @Value("${clicks.buffer.enabled}")
+    private boolean enabled;
+
+    @Value("${clicks.buffer.flushBatchSize}")
+    private int flushBatchSize;
+
+    private final ConcurrentHashMap<String, PendingClicks> pending = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records one click. Lock-free: after the first click for a code this is a single LongAdder increment.
+     *
+     * The mapping's click count and expiry are kept to seed the link's Redis state if it's missing at flush time.
+     * Visitors are deduplicated per flush interval before they're added to the link's unique count.
+     */
+    public void record(UrlMapping mapping, String visitor) {
+        PendingClicks clicks = pending.computeIfAbsent(mapping.getShortCode(), k -> new PendingClicks(mapping));
+        clicks.count.increment();
+        clicks.visitors.add(visitor);
+        if (clicks.retired) {
+            rescue(mapping.getShortCode(), clicks);
+        }
+    }
+
+    /**
+     * Adds clicks counted outside the redirect path (UrlShortener.ingestClicks). They're flushed
+     * with the buffered clicks even when clicks.buffer.enabled is off.
+     */
+    public void add(UrlMapping mapping, long count) {
+        PendingClicks clicks = pending.computeIfAbsent(mapping.getShortCode(), k -> new PendingClicks(mapping));
+        clicks.count.add(count);
+        if (clicks.retired) {
+            rescue(mapping.getShortCode(), clicks);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${clicks.buffer.flushInterval}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ClickDelta> batch = new ArrayList<>(flushBatchSize);
+        Map<String, Collection<String>> visitors = new HashMap<>();
+
+        for (Map.Entry<String, PendingClicks> entry : pending.entrySet()) {
+            PendingClicks clicks = entry.getValue();
+            long delta = clicks.count.sumThenReset();
+            if (delta == 0) {
+                retireIfIdle(entry.getKey(), clicks);
+                continue;
+            }
+
+            batch.add(new ClickDelta(entry.getKey(), delta, clicks.fallbackClicks, clicks.fallbackExpiry));
+            visitors.put(entry.getKey(), clicks.drainVisitors());
+
+            if (batch.size() >= flushBatchSize) {
+                flushBatch(batch);
+                batch = new ArrayList<>(flushBatchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+        }
+
+        if (!visitors.isEmpty()) {
+            try {
+                clickAnalytics.recordVisitors(visitors);
+            } catch (Exception e) {
+                // Unique counts are estimates anyway; not worth holding visitors in memory for a retry
+                log.warn("Recording visitors for {} shortCode(s) failed: {}", visitors.size(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void flushBatch(List<ClickDelta> batch) {
+        try {
+            linkStateStore.applyClickDeltas(batch);
+        } catch (Exception e) {
+            // Keep the deltas for the next flush rather than dropping them
+            log.warn("Click flush of {} shortCode(s) failed, retrying next interval: {}", batch.size(), e.getMessage());
+            for (ClickDelta delta : batch) {
+                PendingClicks clicks = pending.computeIfAbsent(delta.shortCode(),
+                        k -> new PendingClicks(delta.fallbackClicks(), delta.fallbackExpiry()));
+                clicks.count.add(delta.delta());
+                if (clicks.retired) {
+                    rescue(delta.shortCode(), clicks);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an entry that had no clicks this interval. It's marked retired first and then read
+     * once more: a click counted before the mark shows up in that read (and the entry is kept), one
+     * counted after it sees the mark and moves itself with rescue. Every click is taken out of the
+     * entry by exactly one sumThenReset, so none is lost or counted twice.
+     */
+    private void retireIfIdle(String shortCode, PendingClicks idle) {
+        pending.computeIfPresent(shortCode, (k, current) -> {
+            if (current != idle) {
+                return current;
+            }
+            idle.retired = true;
+            long late = idle.count.sumThenReset();
+            if (late == 0) {
+                return null;
+            }
+            idle.count.add(late);
+            idle.retired = false;
+            return idle;
+        });
+    }
+
+    /**
+     * Moves whatever a retired entry still holds into the live entry for shortCode.
+     */
+    private void rescue(String shortCode, PendingClicks retired) {
+        long moved = retired.count.sumThenReset();
+        List<String> visitors = retired.drainVisitors();
+        if (moved == 0 && visitors.isEmpty()) {
+            return;
+        }
+        PendingClicks target = pending.computeIfAbsent(shortCode,
+                k -> new PendingClicks(retired.fallbackClicks, retired.fallbackExpiry));
+        target.count.add(moved);
+        target.visitors.addAll(visitors);
+        if (target.retired) {
+            rescue(shortCode, target);
+        }
+    }
+
+    private static final class PendingClicks {
+        private final LongAdder count = new LongAdder();
+        private final long fallbackClicks;
+        private final long fallbackExpiry;
+        private final Set<String> visitors = ConcurrentHashMap.newKeySet();
+        // Set (under the map's lock for the key) when the entry is being removed
+        private volatile boolean retired;
+
+        private PendingClicks(UrlMapping mapping) {
+            this(mapping.getClickCount(), LinkStateStore.epochSeconds(mapping.getExpiryDate()));
+        }
+
+        private PendingClicks(long fallbackClicks, long fallbackExpiry) {
+            this.fallbackClicks = fallbackClicks;
+            this.fallbackExpiry = fallbackExpiry;
+        }
+
+        // Visitors added while draining stay in the set for the next flush
+        private List<String> drainVisitors() {
+            List<String> drained = new ArrayList<>(visitors.size());
+            for (String visitor : visitors) {
+                visitors.remove(visitor);
+                drained.add(visitor);
+            }
+            return drained;
+        }
+    }
+}
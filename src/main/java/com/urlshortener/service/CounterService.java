@@ -1,6 +1,9 @@
 package com.urlshortener.service;
 
+import com.urlshortener.metrics.ShortenerMetrics;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Update;
@@ -9,47 +12,194 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import org.bson.Document;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Generates unique IDs using a MongoDB atomic counter with range-based allocation.
- * Instead of hitting MongoDB for every single ID, a batch of IDs (RANGE_SIZE) is
+ * Instead of hitting MongoDB for every single ID, a batch of IDs is
  * allocated at once and served from memory. MongoDB is only contacted when the
- * current range is exhausted, reducing contention under high write load.
+ * current range runs low, reducing contention under high write load.
+ *
+ * Lock-free and double-buffered: IDs are handed out with a CAS on the current range's cursor.
+ * When a range is down to PREFETCH_THRESHOLD of its size, its successor is reserved on a
+ * background thread, so callers normally never wait on MongoDB. The range size adapts to the
+ * observed allocation rate, aiming for one reservation every TARGET_RANGE_LIFETIME_MILLIS.
+ * State is kept per sequence name.
  */
 @Slf4j
 @Service
+@Profile("!embedded")
 public class CounterService {
 
     private final MongoTemplate mongoTemplate;
+    private final ShortenerMetrics metrics;
 
-    private static final int RANGE_SIZE = 100;
+    private static final int MIN_RANGE_SIZE = 100;
+    private static final int MAX_RANGE_SIZE = 10_000;
+    private static final double PREFETCH_THRESHOLD = 0.2;
+    private static final long TARGET_RANGE_LIFETIME_MILLIS = 10_000;
 
-    private final AtomicLong currentId = new AtomicLong(0);
-    private final AtomicLong maxId = new AtomicLong(0);
+    private final ConcurrentMap<String, Sequence> sequences = new ConcurrentHashMap<>();
 
-    public CounterService(MongoTemplate mongoTemplate) {
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "counter-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CounterService(MongoTemplate mongoTemplate, ShortenerMetrics metrics) {
         this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
     }
 
-    public synchronized long getNextSequence(String name) {
-        if (currentId.get() >= maxId.get()) {
-            allocateRange(name);
-        }
-        return currentId.getAndIncrement();
+    public long getNextSequence(String name) {
+        return sequences.computeIfAbsent(name, Sequence::new).next();
+    }
+
+    /**
+     * Reserves a contiguous block of count IDs straight from MongoDB, bypassing the in-memory ranges.
+     * Used by batch shortening so a whole import costs one findAndModify.
+     *
+     * @return the first ID of the block [first, first + count)
+     */
+    public long reserveBlock(String name, int count) {
+        return allocateRange(name, count).start;
     }
 
-    private void allocateRange(String name) {
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private Range allocateRange(String name, int size) {
+        long start = System.nanoTime();
         Document counter = mongoTemplate.findAndModify(
                 Query.query(Criteria.where("_id").is(name)),
-                new Update().inc("seq", (long) RANGE_SIZE),
+                new Update().inc("seq", (long) size),
                 FindAndModifyOptions.options().returnNew(true).upsert(true),
                 Document.class,
                 "counters"
         );
+        metrics.recordRangeAllocation(name, size, start);
         long newMax = counter.getLong("seq");
-        maxId.set(newMax);
-        currentId.set(newMax - RANGE_SIZE);
-        log.info("Allocated ID range [{}, {}) from MongoDB", newMax - RANGE_SIZE, newMax);
+        log.info("Allocated ID range [{}, {}) for {} from MongoDB", newMax - size, newMax, name);
+        return new Range(newMax - size, newMax);
+    }
+
+    /**
+     * In-memory state for one sequence name: the range currently being handed out.
+     * Each range carries the future of its successor, so a range is swapped out exactly once.
+     */
+    private final class Sequence {
+
+        private final String name;
+        private final AtomicReference<Range> current = new AtomicReference<>(new Range(0, 0));
+
+        private Sequence(String name) {
+            this.name = name;
+        }
+
+        long next() {
+            while (true) {
+                Range range = current.get();
+                long id = range.cursor.getAndIncrement();
+
+                if (id < range.end) {
+                    // Exactly one caller observes the threshold crossing and kicks off the prefetch
+                    if (range.end - id == range.prefetchMark) {
+                        successorOf(range);
+                    }
+                    return id;
+                }
+
+                // Range exhausted: wait for the successor (normally already reserved) and swap it in.
+                // Losers of the CAS simply retry against whatever range won.
+                Range successor = join(successorOf(range));
+                if (current.compareAndSet(range, successor)) {
+                    successor.activatedNanos = System.nanoTime();
+                }
+            }
+        }
+
+        private CompletableFuture<Range> successorOf(Range range) {
+            CompletableFuture<Range> existing = range.successor.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            CompletableFuture<Range> created = new CompletableFuture<>();
+            if (!range.successor.compareAndSet(null, created)) {
+                return range.successor.get();
+            }
+
+            int size = nextRangeSize(range);
+            prefetchExecutor.execute(() -> {
+                try {
+                    created.complete(allocateRange(name, size));
+                } catch (Exception e) {
+                    // Clear the failed future so the next caller retries the reservation
+                    range.successor.compareAndSet(created, null);
+                    created.completeExceptionally(e);
+                }
+            });
+            return created;
+        }
+
+        /**
+         * Sizes the next range from how fast the current one was consumed since it became current,
+         * clamped to [MIN_RANGE_SIZE, MAX_RANGE_SIZE]. A prefetched range can sit unused for a long
+         * time after its reservation, so that time isn't counted.
+         */
+        private int nextRangeSize(Range range) {
+            long size = range.end - range.start;
+            if (size == 0) {
+                return MIN_RANGE_SIZE;
+            }
+
+            long consumed = Math.min(range.cursor.get(), range.end) - range.start;
+            long elapsedMillis = Math.max(1, (System.nanoTime() - range.activatedNanos) / 1_000_000);
+            long desired = consumed * TARGET_RANGE_LIFETIME_MILLIS / elapsedMillis;
+            return (int) Math.max(MIN_RANGE_SIZE, Math.min(MAX_RANGE_SIZE, desired));
+        }
+
+        private Range join(CompletableFuture<Range> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A reserved block of IDs [start, end). The cursor may run past end once exhausted;
+     * those values are never handed out.
+     */
+    private static final class Range {
+
+        private final long start;
+        private final long end;
+        private final long prefetchMark;
+        // When the range was swapped in as current; the reservation time until then
+        private volatile long activatedNanos = System.nanoTime();
+        private final AtomicLong cursor;
+        private final AtomicReference<CompletableFuture<Range>> successor = new AtomicReference<>();
+
+        private Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.prefetchMark = Math.max(1, (long) ((end - start) * PREFETCH_THRESHOLD));
+            this.cursor = new AtomicLong(start);
+        }
     }
 }
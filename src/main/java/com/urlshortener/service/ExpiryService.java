@@ -0,0 +1,248 @@
+package com.urlshortener.service;
+
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.RedisLuaScripts;
+import com.urlshortener.util.ShortCodeCodec;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Deletes expired links by walking the expiryDate index in time buckets, instead of the full
+ * collection scan the sync job used to run.
+ *
+ * Each run starts at the oldest expiryDate (the first entry of the index), so no watermark has
+ * to be stored: everything before it was deleted by earlier runs. Buckets of expiry.bucketMinutes
+ * are drained in chunks of expiry.chunkSize — one indexed range query and one delete per chunk —
+ * and every deleted link is evicted from the caches, its Redis link state and the short code filter.
+ *
+ * A Redis lease (owned by this instance's ID, renewed after every chunk, released with
+ * LEASE_RELEASE_SCRIPT) keeps instances from walking the same buckets at once. A run that loses
+ * it stops; one that overruns can't delete a lease another instance has taken since.
+ *
+ * Evicting happens after the MongoDB delete, so a Redis failure there can't be retried by the
+ * next walk. Such chunks are kept in memory and evicted again at the start of the next run;
+ * the rest of the run goes on.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class ExpiryService {
+
+    private final MongoTemplate mongoTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final LinkStateStore linkStateStore;
+    private final ClickAnalyticsService clickAnalytics;
+    private final UrlShortenerCacheService urlShortenerCacheService;
+    private final ShortCodeFilter shortCodeFilter;
+    private final HotKeyService hotKeyService;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortenerMetrics metrics;
+
+    private static final String LOCK_KEY = "expiry:lock";
+
+    private static final DefaultRedisScript<Long> LEASE_RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> LEASE_RELEASE_SCRIPT;
+
+    static {
+        LEASE_RENEW_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RENEW_SCRIPT.setScriptText(RedisLuaScripts.LEASE_RENEW_SCRIPT);
+        LEASE_RENEW_SCRIPT.setResultType(Long.class);
+
+        LEASE_RELEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RELEASE_SCRIPT.setScriptText(RedisLuaScripts.LEASE_RELEASE_SCRIPT);
+        LEASE_RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    // Lock owner ID, so a run only ever renews or releases its own lock
+    private final String instanceId = UUID.randomUUID().toString();
+    // Chunks deleted from MongoDB whose eviction failed; retried at the start of the next run
+    private final Queue<List<UrlMapping>> failedEvictions = new ConcurrentLinkedQueue<>();
+
+    @Value("${expiry.interval}")
+    private long interval;
+
+    @Value("${expiry.bucketMinutes}")
+    private long bucketMinutes;
+
+    @Value("${expiry.chunkSize}")
+    private int chunkSize;
+
+    @Scheduled(fixedDelayString = "${expiry.interval}", initialDelayString = "${expiry.interval}")
+    public void expireLinks() {
+        Boolean locked;
+        try {
+            locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, instanceId, Duration.ofMillis(interval));
+        } catch (Exception e) {
+            log.warn("Expiry lock unavailable, skipping run: {}", e.getMessage());
+            return;
+        }
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        long expired = 0;
+
+        try {
+            retryFailedEvictions();
+
+            LocalDateTime oldest;
+            while ((oldest = oldestExpiry(now)) != null) {
+                LocalDateTime bucketStart = bucketStart(oldest);
+                LocalDateTime bucketEnd = bucketStart.plusMinutes(bucketMinutes);
+                if (bucketEnd.isAfter(now)) {
+                    bucketEnd = now;
+                }
+
+                BucketResult result = expireBucket(bucketStart, bucketEnd);
+                metrics.recordExpiryBucket(result.expired());
+                log.info("Expired {} link(s) in bucket [{}, {})", result.expired(), bucketStart, bucketEnd);
+                expired += result.expired();
+                if (result.lockLost()) {
+                    log.warn("Lost the expiry lock, leaving the rest to the new holder");
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Expiry run failed after {} link(s), resuming next run: {}", expired, e.getMessage());
+        } finally {
+            metrics.recordExpiryRun(startNanos);
+            release();
+        }
+
+        if (expired > 0) {
+            log.info("Expired {} link(s) in {}ms", expired, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    /**
+     * @return the earliest expiryDate before now, or null if nothing has expired
+     */
+    private LocalDateTime oldestExpiry(LocalDateTime now) {
+        Query query = Query.query(Criteria.where("expiryDate").lt(now))
+                .with(Sort.by(Sort.Direction.ASC, "expiryDate"))
+                .limit(1);
+        query.fields().include("expiryDate");
+        UrlMapping oldest = mongoTemplate.findOne(query, UrlMapping.class);
+        return oldest == null ? null : oldest.getExpiryDate();
+    }
+
+    private LocalDateTime bucketStart(LocalDateTime expiry) {
+        long epochMinutes = expiry.toEpochSecond(ZoneOffset.UTC) / 60;
+        return LocalDateTime.ofEpochSecond((epochMinutes - epochMinutes % bucketMinutes) * 60, 0, ZoneOffset.UTC);
+    }
+
+    private BucketResult expireBucket(LocalDateTime from, LocalDateTime to) {
+        long count = 0;
+        while (true) {
+            Query query = Query.query(Criteria.where("expiryDate").gte(from).lt(to)).limit(chunkSize);
+            query.fields().include("shortCode").include("originalUrl");
+            List<UrlMapping> chunk = mongoTemplate.find(query, UrlMapping.class);
+            if (chunk.isEmpty()) {
+                return new BucketResult(count, false);
+            }
+
+            List<String> ids = new ArrayList<>(chunk.size());
+            for (UrlMapping mapping : chunk) {
+                ids.add(mapping.getId());
+            }
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), UrlMapping.class);
+            if (!evict(chunk)) {
+                failedEvictions.add(chunk);
+            }
+            count += chunk.size();
+
+            if (!renew()) {
+                return new BucketResult(count, true);
+            }
+        }
+    }
+
+    private void retryFailedEvictions() {
+        for (int i = failedEvictions.size(); i > 0; i--) {
+            List<UrlMapping> chunk = failedEvictions.poll();
+            if (chunk == null) {
+                break;
+            }
+            if (!evict(chunk)) {
+                failedEvictions.add(chunk);
+            }
+        }
+    }
+
+    private boolean renew() {
+        try {
+            Long renewed = redisTemplate.execute(LEASE_RENEW_SCRIPT, List.of(LOCK_KEY), instanceId, String.valueOf(interval));
+            return renewed != null && renewed == 1;
+        } catch (Exception e) {
+            log.warn("Expiry lock renewal failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void release() {
+        try {
+            redisTemplate.execute(LEASE_RELEASE_SCRIPT, List.of(LOCK_KEY), instanceId);
+        } catch (Exception e) {
+            // It expires on its own after interval
+            log.warn("Expiry lock release failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drops deleted links everywhere a redirect could still find them, and their click series.
+     * Click counts still pending in Redis are discarded with the link; a dirty-set entry left
+     * behind syncs nothing. Every step is idempotent, so a failed chunk is simply evicted again.
+     *
+     * @return false if any step failed
+     */
+    private boolean evict(List<UrlMapping> mappings) {
+        List<String> shortCodes = new ArrayList<>(mappings.size());
+        for (UrlMapping mapping : mappings) {
+            shortCodes.add(mapping.getShortCode());
+            hotKeyService.unpin(mapping.getShortCode());
+            long id = shortCodeCodec.decode(mapping.getShortCode());
+            if (id >= 0) {
+                // Queues its own retry if Redis fails
+                shortCodeFilter.remove(id);
+            }
+        }
+
+        try {
+            linkStateStore.remove(mappings);
+            clickAnalytics.remove(shortCodes);
+            for (UrlMapping mapping : mappings) {
+                urlShortenerCacheService.evict(mapping);
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Eviction of {} expired link(s) failed, retrying next run: {} ({})",
+                    mappings.size(), e.getMessage(), shortCodes);
+            return false;
+        }
+    }
+
+    private record BucketResult(long expired, boolean lockLost) {}
+}
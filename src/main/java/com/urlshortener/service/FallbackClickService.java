@@ -0,0 +1,251 @@
+package com.urlshortener.service;
+
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.service.LinkStateStore.ClickDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Click counting while Redis is unavailable (RedisCircuitBreaker open, or a redirect script failed).
+ *
+ * Redirects only bump a LongAdder per shortCode. Every redis.fallback.flushInterval the deltas are
+ * written to MongoDB as one unordered bulk of atomic $inc clickCount updates — instead of a
+ * full-document save with a read-modify-write per click.
+ *
+ * The counts in Redis are still authoritative for the sync job, which $sets clickCount from them,
+ * so flushed deltas are also kept until Redis is back and then added there (CLICK_FLUSH_SCRIPT,
+ * which also marks the links dirty). Until that reconcile the next sync can briefly set a lower
+ * count in MongoDB; the sync after it restores it. Unique visitors aren't recorded in degraded mode.
+ *
+ * A shortCode with no clicks over an interval is dropped from the pending map. Its entry is marked
+ * retired under the map's lock before the final read, so a click that lands on it afterwards is moved
+ * to a fresh entry (rescue) instead of being lost.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class FallbackClickService {
+
+    private final MongoTemplate mongoTemplate;
+    private final LinkStateStore linkStateStore;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    @Value("${redis.fallback.flushBatchSize}")
+    private int flushBatchSize;
+
+    // Not yet in MongoDB
+    private final ConcurrentHashMap<String, PendingClicks> pending = new ConcurrentHashMap<>();
+
+    // In MongoDB, not yet in Redis
+    private final ConcurrentHashMap<String, ClickDelta> unreconciled = new ConcurrentHashMap<>();
+
+    public void record(UrlMapping mapping) {
+        PendingClicks clicks = pending.computeIfAbsent(mapping.getShortCode(), k -> new PendingClicks(mapping));
+        clicks.count.increment();
+        if (clicks.retired) {
+            rescue(mapping.getShortCode(), clicks);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${redis.fallback.flushInterval}")
+    public void flush() {
+        flushToMongo();
+        reconcile();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void flushToMongo() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ClickDelta> batch = new ArrayList<>(flushBatchSize);
+        for (Map.Entry<String, PendingClicks> entry : pending.entrySet()) {
+            PendingClicks clicks = entry.getValue();
+            long delta = clicks.count.sumThenReset();
+            if (delta == 0) {
+                retireIfIdle(entry.getKey(), clicks);
+                continue;
+            }
+
+            batch.add(new ClickDelta(entry.getKey(), delta, clicks.fallbackClicks, clicks.fallbackExpiry));
+            if (batch.size() >= flushBatchSize) {
+                writeBatch(batch);
+                batch = new ArrayList<>(flushBatchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<ClickDelta> batch) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class);
+        long clicks = 0;
+        for (ClickDelta delta : batch) {
+            bulkOps.updateOne(
+                    Query.query(Criteria.where("shortCode").is(delta.shortCode())),
+                    new Update().inc("clickCount", delta.delta())
+            );
+            clicks += delta.delta();
+        }
+
+        try {
+            bulkOps.execute();
+        } catch (Exception e) {
+            // Keep the deltas for the next flush rather than dropping them
+            log.warn("Fallback click flush of {} shortCode(s) to MongoDB failed, retrying next interval: {}",
+                    batch.size(), e.getMessage());
+            for (ClickDelta delta : batch) {
+                PendingClicks pendingClicks = pending.computeIfAbsent(delta.shortCode(),
+                        k -> new PendingClicks(delta.fallbackClicks(), delta.fallbackExpiry()));
+                pendingClicks.count.add(delta.delta());
+                if (pendingClicks.retired) {
+                    rescue(delta.shortCode(), pendingClicks);
+                }
+            }
+            return;
+        }
+
+        metrics.recordFallbackClicks(false, clicks);
+        for (ClickDelta delta : batch) {
+            unreconciled.merge(delta.shortCode(), delta, FallbackClickService::sum);
+        }
+    }
+
+    /**
+     * Drops an entry with no clicks this interval. The retired mark goes up before the last
+     * sumThenReset: a click counted earlier shows up in that read and keeps the entry, a later one
+     * sees the mark and is moved by its recorder. Each click leaves the adder through exactly one
+     * sumThenReset, so it is neither lost nor counted twice.
+     */
+    private void retireIfIdle(String shortCode, PendingClicks idle) {
+        pending.computeIfPresent(shortCode, (k, current) -> {
+            if (current != idle) {
+                return current;
+            }
+            idle.retired = true;
+            long late = idle.count.sumThenReset();
+            if (late == 0) {
+                return null;
+            }
+            idle.count.add(late);
+            idle.retired = false;
+            return idle;
+        });
+    }
+
+    /**
+     * Moves the clicks left on a retired entry to the live entry for shortCode.
+     */
+    private void rescue(String shortCode, PendingClicks retired) {
+        long moved = retired.count.sumThenReset();
+        if (moved == 0) {
+            return;
+        }
+        PendingClicks target = pending.computeIfAbsent(shortCode,
+                k -> new PendingClicks(retired.fallbackClicks, retired.fallbackExpiry));
+        target.count.add(moved);
+        if (target.retired) {
+            rescue(shortCode, target);
+        }
+    }
+
+    /**
+     * Adds the deltas already in MongoDB to Redis, once the circuit lets a call through.
+     */
+    private void reconcile() {
+        if (unreconciled.isEmpty() || !circuitBreaker.allowRequest()) {
+            return;
+        }
+
+        List<ClickDelta> batch = new ArrayList<>(flushBatchSize);
+        int links = 0;
+        for (String shortCode : unreconciled.keySet()) {
+            ClickDelta delta = unreconciled.remove(shortCode);
+            if (delta != null) {
+                batch.add(delta);
+            }
+            if (batch.size() >= flushBatchSize) {
+                if (!reconcileBatch(batch)) {
+                    return;
+                }
+                links += batch.size();
+                batch = new ArrayList<>(flushBatchSize);
+            }
+        }
+
+        if (!batch.isEmpty() && reconcileBatch(batch)) {
+            links += batch.size();
+        }
+        if (links > 0) {
+            log.info("Reconciled fallback clicks of {} link(s) with Redis", links);
+        }
+    }
+
+    private boolean reconcileBatch(List<ClickDelta> batch) {
+        try {
+            linkStateStore.applyClickDeltas(batch);
+            circuitBreaker.recordSuccess();
+        } catch (Exception e) {
+            circuitBreaker.recordFailure();
+            log.warn("Reconciling {} link(s) with Redis failed, retrying next interval: {}", batch.size(), e.getMessage());
+            for (ClickDelta delta : batch) {
+                unreconciled.merge(delta.shortCode(), delta, FallbackClickService::sum);
+            }
+            return false;
+        }
+
+        long clicks = 0;
+        for (ClickDelta delta : batch) {
+            clicks += delta.delta();
+        }
+        metrics.recordFallbackClicks(true, clicks);
+        return true;
+    }
+
+    private static ClickDelta sum(ClickDelta a, ClickDelta b) {
+        return new ClickDelta(a.shortCode(), a.delta() + b.delta(), a.fallbackClicks(), a.fallbackExpiry());
+    }
+
+    private static final class PendingClicks {
+        private final LongAdder count = new LongAdder();
+        private final long fallbackClicks;
+        private final long fallbackExpiry;
+        // Set under the map's lock for the key while the entry is being dropped
+        private volatile boolean retired;
+
+        private PendingClicks(UrlMapping mapping) {
+            this(mapping.getClickCount(), LinkStateStore.epochSeconds(mapping.getExpiryDate()));
+        }
+
+        private PendingClicks(long fallbackClicks, long fallbackExpiry) {
+            this.fallbackClicks = fallbackClicks;
+            this.fallbackExpiry = fallbackExpiry;
+        }
+    }
+}
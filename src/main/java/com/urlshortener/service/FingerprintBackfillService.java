@@ -0,0 +1,134 @@
+package com.urlshortener.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.UrlFingerprint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One-off migration: sets urlFingerprint on mappings created before it existed.
+ *
+ * Streams the documents still missing the field (cursor, only _id and originalUrl fetched) and
+ * writes the fingerprints back in unordered bulk updates of fingerprint.backfill.chunkSize, on a
+ * background thread so startup isn't held up.
+ *
+ * The query can't use the sparse urlFingerprint index, so it's a collection scan. A completed run
+ * writes a marker document ("fingerprint_backfill" in counters) and later starts skip the scan.
+ * Delete the marker to run it again, e.g. after instances without fingerprints wrote links during
+ * a rolling deploy.
+ *
+ * Duplicates the old check-then-insert race minted (two documents for one URL) can't both get the
+ * fingerprint under the unique index: the first keeps it, the rest are left without one. They still
+ * redirect by shortCode; they just aren't returned by dedupe lookups.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class FingerprintBackfillService {
+
+    private final MongoTemplate mongoTemplate;
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String MARKER_COLLECTION = "counters";
+    private static final String MARKER_ID = "fingerprint_backfill";
+
+    @Value("${fingerprint.backfill.chunkSize}")
+    private int chunkSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        Thread thread = new Thread(this::backfill, "fingerprint-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void backfill() {
+        Query marker = Query.query(Criteria.where("_id").is(MARKER_ID));
+        try {
+            if (mongoTemplate.exists(marker, MARKER_COLLECTION)) {
+                return;
+            }
+        } catch (Exception e) {
+            log.error("Fingerprint backfill skipped, marker check failed; it runs on the next start", e);
+            return;
+        }
+
+        Query query = Query.query(Criteria.where("urlFingerprint").exists(false));
+        query.fields().include("originalUrl");
+
+        long updated = 0;
+        long duplicates = 0;
+        List<UrlMapping> chunk = new ArrayList<>(chunkSize);
+
+        try (Stream<UrlMapping> mappings = mongoTemplate.stream(query, UrlMapping.class)) {
+            for (UrlMapping mapping : (Iterable<UrlMapping>) mappings::iterator) {
+                chunk.add(mapping);
+                if (chunk.size() == chunkSize) {
+                    int skipped = writeChunk(chunk);
+                    duplicates += skipped;
+                    updated += chunk.size() - skipped;
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                int skipped = writeChunk(chunk);
+                duplicates += skipped;
+                updated += chunk.size() - skipped;
+            }
+        } catch (Exception e) {
+            log.error("Fingerprint backfill stopped after {} document(s); it resumes on the next start", updated, e);
+            return;
+        }
+
+        try {
+            mongoTemplate.upsert(marker, new Update().set("completedAt", new Date()), MARKER_COLLECTION);
+        } catch (Exception e) {
+            log.warn("Fingerprint backfill marker not written; the next start scans again: {}", e.getMessage());
+        }
+        log.info("Fingerprint backfill complete: {} document(s) updated, {} duplicate URL(s) left without one",
+                updated, duplicates);
+    }
+
+    /**
+     * @return number of documents skipped because another document already holds their fingerprint
+     */
+    private int writeChunk(List<UrlMapping> chunk) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class);
+        for (UrlMapping mapping : chunk) {
+            bulkOps.updateOne(
+                    Query.query(Criteria.where("_id").is(mapping.getId())),
+                    new Update().set("urlFingerprint", UrlFingerprint.of(mapping.getOriginalUrl()))
+            );
+        }
+
+        try {
+            bulkOps.execute();
+            return 0;
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            return e.getErrors().size();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.urlshortener.service;
+
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.CountMinSketch;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the links getting the most redirects and pins the hottest ones in memory.
+ *
+ * Every redirect of an unpinned link is counted in a count-min sketch (lock-free, fixed size)
+ * keyed by its decoded ID. A link whose estimate reaches hotkeys.pinRatePerSecond over the
+ * current window is pinned: its mapping is held here, and its redirects are answered from
+ * that copy with the click aggregated locally by ClickBufferService — no cache lookup and no
+ * Redis round-trip per hit, so one viral link no longer concentrates load on one Redis key.
+ *
+ * Every hotkeys.windowMillis the window rolls: the sketch starts over, pinned links are kept
+ * while they stay above half the pin rate (so a link near the threshold doesn't flap), and the
+ * hottest links of the window are published for the hotkeys actuator endpoint.
+ *
+ * Off by default (hotkeys.enabled): pinned clicks sit in ClickBufferService's in-memory buffer
+ * even when clicks.buffer.enabled is off, so turning this on trades up to one flush interval of
+ * the most-clicked links' clicks on a crash for taking them off Redis.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class HotKeyService {
+
+    private final ClickBufferService clickBufferService;
+    private final ShortenerMetrics metrics;
+
+    private static final int SKETCH_WIDTH = 4096;
+    // Links are listed once their estimate reaches this fraction of the pin threshold
+    private static final int CANDIDATE_DIVISOR = 4;
+
+    @Value("${hotkeys.enabled}")
+    private boolean enabled;
+
+    @Value("${hotkeys.windowMillis}")
+    private long windowMillis;
+
+    @Value("${hotkeys.pinRatePerSecond}")
+    private long pinRatePerSecond;
+
+    @Value("${hotkeys.maxPinned}")
+    private int maxPinned;
+
+    @Value("${hotkeys.topK}")
+    private int topK;
+
+    private long pinHits;
+    private long candidateHits;
+
+    private volatile CountMinSketch sketch = new CountMinSketch(SKETCH_WIDTH);
+    // Unpinned links that crossed candidateHits in the current window, by shortCode → ID
+    private final ConcurrentHashMap<String, Long> candidates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PinnedLink> pinned = new ConcurrentHashMap<>();
+    private volatile List<HotKey> hottest = List.of();
+
+    @PostConstruct
+    public void init() {
+        pinHits = Math.max(1, pinRatePerSecond * windowMillis / 1000);
+        candidateHits = Math.max(1, pinHits / CANDIDATE_DIVISOR);
+        metrics.registerPinnedLinks(pinned::size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the pinned mapping for shortCode, or null if it isn't pinned
+     */
+    public UrlMapping getPinned(String shortCode) {
+        PinnedLink link = pinned.get(shortCode);
+        return link != null ? link.mapping : null;
+    }
+
+    /**
+     * Redirect of a pinned link: the click goes to the local buffer (flushed to Redis in batches).
+     */
+    public void recordPinnedClick(UrlMapping mapping, String visitor) {
+        PinnedLink link = pinned.get(mapping.getShortCode());
+        if (link != null) {
+            link.hits.increment();
+        }
+        clickBufferService.record(mapping, visitor);
+    }
+
+    /**
+     * Counts a redirect of an unpinned link, and pins it once it's hot.
+     */
+    public void record(long id, UrlMapping mapping) {
+        long estimate = sketch.add(id);
+        if (estimate < candidateHits) {
+            return;
+        }
+
+        String shortCode = mapping.getShortCode();
+        if (estimate >= pinHits && pinned.size() < maxPinned) {
+            if (pinned.putIfAbsent(shortCode, new PinnedLink(id, mapping)) == null) {
+                candidates.remove(shortCode);
+                log.info("Pinned hot link {} (~{} redirects in the current window)", shortCode, estimate);
+            }
+        } else if (candidates.size() < topK * CANDIDATE_DIVISOR) {
+            candidates.putIfAbsent(shortCode, id);
+        }
+    }
+
+    /**
+     * Drops a deleted link, so its pinned copy isn't served anymore.
+     */
+    public void unpin(String shortCode) {
+        pinned.remove(shortCode);
+    }
+
+    @Scheduled(fixedDelayString = "${hotkeys.windowMillis}", initialDelayString = "${hotkeys.windowMillis}")
+    public void rollWindow() {
+        if (!enabled) {
+            return;
+        }
+
+        CountMinSketch previous = sketch;
+        sketch = new CountMinSketch(SKETCH_WIDTH);
+        double seconds = windowMillis / 1000.0;
+
+        List<HotKey> window = new ArrayList<>(pinned.size() + candidates.size());
+        for (Map.Entry<String, PinnedLink> entry : pinned.entrySet()) {
+            PinnedLink link = entry.getValue();
+            // The hits before pinning were counted by the sketch
+            long hits = link.hits.sumThenReset() + previous.estimate(link.id);
+            window.add(new HotKey(entry.getKey(), hits / seconds, true));
+            if (hits < pinHits / 2) {
+                pinned.remove(entry.getKey(), link);
+                log.info("Unpinned link {} (~{} redirects in the last window)", entry.getKey(), hits);
+            }
+        }
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            window.add(new HotKey(entry.getKey(), previous.estimate(entry.getValue()) / seconds, false));
+        }
+        candidates.clear();
+
+        window.sort(Comparator.comparingDouble(HotKey::ratePerSecond).reversed());
+        hottest = List.copyOf(window.subList(0, Math.min(topK, window.size())));
+    }
+
+    /**
+     * Hottest links of the last completed window, by estimated redirects per second.
+     */
+    public HotKeyReport report() {
+        return new HotKeyReport(windowMillis, pinRatePerSecond, pinned.size(), hottest);
+    }
+
+    public record HotKey(String shortCode, double ratePerSecond, boolean pinned) {}
+
+    public record HotKeyReport(long windowMillis, long pinRatePerSecond, int pinnedLinks, List<HotKey> hottest) {}
+
+    private static final class PinnedLink {
+        private final long id;
+        private final UrlMapping mapping;
+        private final LongAdder hits = new LongAdder();
+
+        private PinnedLink(long id, UrlMapping mapping) {
+            this.id = id;
+            this.mapping = mapping;
+        }
+    }
+}
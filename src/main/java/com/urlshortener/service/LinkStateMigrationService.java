@@ -0,0 +1,89 @@
+package com.urlshortener.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-off migration of link state from the legacy url:{code}:clicks / url:{code}:expiry keys into
+ * the bucketed hashes of LinkStateStore.
+ *
+ * SCANs url:*:expiry on a background thread and migrates linkstate.migration.batchSize links per
+ * script call, sleeping linkstate.migration.pauseMillis between batches so the migration never
+ * holds Redis for long. Off by default: links migrate themselves on first redirect or click flush
+ * anyway, and legacy keys of links nobody visits expire with their 30-day TTL. Enable it once to
+ * reclaim the memory up front; re-running is harmless, already migrated links have no legacy keys.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class LinkStateMigrationService {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final LinkStateStore linkStateStore;
+
+    private static final String LEGACY_PREFIX = "url:";
+    private static final String LEGACY_EXPIRY_SUFFIX = ":expiry";
+
+    @Value("${linkstate.migration.enabled}")
+    private boolean enabled;
+
+    @Value("${linkstate.migration.batchSize}")
+    private int batchSize;
+
+    @Value("${linkstate.migration.pauseMillis}")
+    private long pauseMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMigration() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "linkstate-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void migrate() {
+        long scanned = 0;
+        long migrated = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+
+        ScanOptions options = ScanOptions.scanOptions().match(LEGACY_PREFIX + "*" + LEGACY_EXPIRY_SUFFIX).count(batchSize).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                batch.add(key.substring(LEGACY_PREFIX.length(), key.length() - LEGACY_EXPIRY_SUFFIX.length()));
+                if (batch.size() == batchSize) {
+                    scanned += batch.size();
+                    migrated += linkStateStore.migrateLegacy(batch);
+                    batch.clear();
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            if (!batch.isEmpty()) {
+                scanned += batch.size();
+                migrated += linkStateStore.migrateLegacy(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            log.error("Link state migration stopped after {} link(s); re-run it to continue", migrated, e);
+            return;
+        }
+
+        log.info("Link state migration complete: {} of {} legacy link(s) migrated", migrated, scanned);
+    }
+}
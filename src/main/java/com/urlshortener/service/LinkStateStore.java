@@ -0,0 +1,393 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.RedisLuaScripts;
+import com.urlshortener.util.ShortCodeCodec;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutable per-link state in Redis (click count and expiry), in a compact layout:
+ *
+ *   link:{id / 64}  →  hash { c{id % 64}: clicks, e{id % 64}: expiry as epoch seconds }
+ *
+ * id is the decoded counter ID, so consecutive links share a bucket. Small hashes are stored as a
+ * listpack, which costs a few bytes per field instead of a full key (dict entry, robj, SDS name and
+ * value) per link. 64 links × 2 fields = 128 entries — the default hash-max-listpack-entries; a
+ * bucket with more fields would be converted to a regular hash table and lose the saving.
+ *
+ * This replaces two string keys per link (url:{code}:clicks, url:{code}:expiry with an ISO
+ * LocalDateTime compared lexically). The scripts migrate a link's legacy keys on first access,
+ * LinkStateMigrationService moves the rest in the background, and reads fall back to the legacy
+ * keys until then.
+ *
+ * Hash fields can't carry their own TTL (before Redis 7.4), so state is removed explicitly by
+ * ExpiryService when a link expires rather than by a 30-day key TTL.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class LinkStateStore {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ClickAnalyticsService clickAnalytics;
+
+    // Unsharded dirty set written before scheduler.sync.shards existed; RedisSyncService still drains it
+    static final String LEGACY_DIRTY_SET_KEY = "dirty_urls";
+    static final int LINKS_PER_BUCKET_SHIFT = 6;
+    private static final int BUCKET_MASK = (1 << LINKS_PER_BUCKET_SHIFT) - 1;
+
+    @Value("${scheduler.sync.shards}")
+    private int dirtyShards;
+
+    // Also run by ReactiveRedirectService, with the same keys and arguments
+    static final DefaultRedisScript<Long> REDIRECT_SCRIPT;
+    private static final DefaultRedisScript<Long> CLICK_FLUSH_SCRIPT;
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT;
+
+    static {
+        REDIRECT_SCRIPT = new DefaultRedisScript<>();
+        REDIRECT_SCRIPT.setScriptText(RedisLuaScripts.REDIRECT_SCRIPT);
+        REDIRECT_SCRIPT.setResultType(Long.class);
+
+        CLICK_FLUSH_SCRIPT = new DefaultRedisScript<>();
+        CLICK_FLUSH_SCRIPT.setScriptText(RedisLuaScripts.CLICK_FLUSH_SCRIPT);
+        CLICK_FLUSH_SCRIPT.setResultType(Long.class);
+
+        MIGRATE_SCRIPT = new DefaultRedisScript<>();
+        MIGRATE_SCRIPT.setScriptText(RedisLuaScripts.LINK_STATE_MIGRATE_SCRIPT);
+        MIGRATE_SCRIPT.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    public void validateShards() {
+        if (dirtyShards < 1) {
+            throw new IllegalStateException("scheduler.sync.shards must be at least 1, got " + dirtyShards);
+        }
+    }
+
+    /**
+     * A click delta accumulated by ClickBufferService, with the DB values to seed from if the link
+     * has no Redis state.
+     */
+    public record ClickDelta(String shortCode, long delta, long fallbackClicks, long fallbackExpiry) {}
+
+    /**
+     * Initializes state for new (or imported) links with their clickCount: one HSET per bucket, pipelined.
+     */
+    public void init(List<UrlMapping> mappings) {
+        Map<String, Map<byte[], byte[]>> buckets = new LinkedHashMap<>();
+        for (UrlMapping mapping : mappings) {
+            long id = shortCodeCodec.decode(mapping.getShortCode());
+            Map<byte[], byte[]> fields = buckets.computeIfAbsent(bucketKey(id), k -> new HashMap<>());
+            long clicks = mapping.getClickCount() != null ? mapping.getClickCount() : 0;
+            fields.put(bytes(clicksField(id)), bytes(String.valueOf(clicks)));
+            fields.put(bytes(expiryField(id)), bytes(String.valueOf(epochSeconds(mapping.getExpiryDate()))));
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            buckets.forEach((key, fields) -> connection.hashCommands().hMSet(bytes(key), fields));
+            return null;
+        });
+    }
+
+    /**
+     * Runs REDIRECT_SCRIPT for one click, which also records it in the link's hourly series and
+     * the visitor in its daily unique count.
+     *
+     * @return the new click count, or -1 if the link has expired
+     */
+    public Long recordClick(long id, UrlMapping mapping, String visitor) {
+        long hour = ClickAnalyticsService.currentHour();
+        return redisTemplate.execute(REDIRECT_SCRIPT, redirectKeys(id, mapping.getShortCode(), hour),
+                (Object[]) redirectArgs(id, mapping, visitor));
+    }
+
+    List<String> redirectKeys(long id, String shortCode, long hour) {
+        return Arrays.asList(bucketKey(id), legacyClicksKey(shortCode), legacyExpiryKey(shortCode), dirtySetKey(shortCode),
+                ClickAnalyticsService.hourKey(hour),
+                ClickAnalyticsService.uniquesKey(shortCode, ClickAnalyticsService.dayOf(hour)));
+    }
+
+    String[] redirectArgs(long id, UrlMapping mapping, String visitor) {
+        return new String[]{
+                clicksField(id),
+                expiryField(id),
+                String.valueOf(mapping.getClickCount()),              // fallback clicks from DB
+                String.valueOf(epochSeconds(mapping.getExpiryDate())), // fallback expiry from DB
+                String.valueOf(System.currentTimeMillis() / 1000),    // current time
+                mapping.getShortCode(),                               // shortCode for dirty set
+                visitor,
+                String.valueOf(clickAnalytics.hourKeyTtlSeconds()),
+                String.valueOf(clickAnalytics.uniquesKeyTtlSeconds())
+        };
+    }
+
+    /**
+     * Applies buffered click deltas with one CLICK_FLUSH_SCRIPT call. The clicks are counted in the
+     * hour of the flush.
+     */
+    public void applyClickDeltas(List<ClickDelta> deltas) {
+        List<String> keys = new ArrayList<>(deltas.size() * 4 + 1);
+        keys.add(ClickAnalyticsService.hourKey(ClickAnalyticsService.currentHour()));
+        Object[] args = new Object[deltas.size() * 6 + 1];
+        args[0] = String.valueOf(clickAnalytics.hourKeyTtlSeconds());
+
+        for (int i = 0; i < deltas.size(); i++) {
+            ClickDelta delta = deltas.get(i);
+            long id = shortCodeCodec.decode(delta.shortCode());
+            keys.add(bucketKey(id));
+            keys.add(legacyClicksKey(delta.shortCode()));
+            keys.add(legacyExpiryKey(delta.shortCode()));
+            keys.add(dirtySetKey(delta.shortCode()));
+
+            int a = 1 + i * 6;
+            args[a] = delta.shortCode();
+            args[a + 1] = String.valueOf(delta.delta());
+            args[a + 2] = clicksField(id);
+            args[a + 3] = expiryField(id);
+            args[a + 4] = String.valueOf(delta.fallbackClicks());
+            args[a + 5] = String.valueOf(delta.fallbackExpiry());
+        }
+
+        redisTemplate.execute(CLICK_FLUSH_SCRIPT, keys, args);
+    }
+
+    /**
+     * @return the click count in Redis, or null if the link has no Redis state
+     */
+    public Long getClicks(String shortCode) {
+        List<Long> clicks = getClicks(List.of(shortCode));
+        return clicks.get(0);
+    }
+
+    /**
+     * Click counts for many links: one pipelined HGET per link, then one MGET of the legacy keys
+     * for links not migrated yet.
+     *
+     * @return counts in shortCodes order, null where the link has no Redis state
+     */
+    public List<Long> getClicks(List<String> shortCodes) {
+        List<Object> compact = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String shortCode : shortCodes) {
+                long id = shortCodeCodec.decode(shortCode);
+                connection.hashCommands().hGet(bytes(bucketKey(id)), bytes(clicksField(id)));
+            }
+            return null;
+        });
+
+        List<Long> clicks = new ArrayList<>(shortCodes.size());
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < shortCodes.size(); i++) {
+            Object value = compact.get(i);
+            clicks.add(value != null ? Long.parseLong(value.toString()) : null);
+            if (value == null) {
+                missing.add(i);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<String> legacyKeys = new ArrayList<>(missing.size());
+            for (int i : missing) {
+                legacyKeys.add(legacyClicksKey(shortCodes.get(i)));
+            }
+            List<String> legacy = redisTemplate.opsForValue().multiGet(legacyKeys);
+            if (legacy != null) {
+                for (int m = 0; m < missing.size(); m++) {
+                    if (legacy.get(m) != null) {
+                        clicks.set(missing.get(m), Long.parseLong(legacy.get(m)));
+                    }
+                }
+            }
+        }
+        return clicks;
+    }
+
+    /**
+     * Deletes the state of deleted links, in both layouts. One pipeline.
+     */
+    public void remove(List<UrlMapping> mappings) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (UrlMapping mapping : mappings) {
+                long id = shortCodeCodec.decode(mapping.getShortCode());
+                if (id >= 0) {
+                    connection.hashCommands().hDel(bytes(bucketKey(id)), bytes(clicksField(id)), bytes(expiryField(id)));
+                }
+                connection.keyCommands().unlink(bytes(legacyClicksKey(mapping.getShortCode())),
+                        bytes(legacyExpiryKey(mapping.getShortCode())));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Moves links from the legacy string keys into their buckets (LINK_STATE_MIGRATE_SCRIPT).
+     * Links whose legacy expiry key is gone are skipped; their first redirect migrates them from DB values.
+     *
+     * @return number of links migrated
+     */
+    public int migrateLegacy(List<String> shortCodes) {
+        List<String> expiryKeys = new ArrayList<>(shortCodes.size());
+        for (String shortCode : shortCodes) {
+            expiryKeys.add(legacyExpiryKey(shortCode));
+        }
+        List<String> expiries = redisTemplate.opsForValue().multiGet(expiryKeys);
+        if (expiries == null) {
+            return 0;
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        for (int i = 0; i < shortCodes.size(); i++) {
+            String shortCode = shortCodes.get(i);
+            long id = shortCodeCodec.decode(shortCode);
+            if (id < 0 || expiries.get(i) == null) {
+                continue;
+            }
+            keys.add(bucketKey(id));
+            keys.add(legacyClicksKey(shortCode));
+            keys.add(legacyExpiryKey(shortCode));
+            args.add(clicksField(id));
+            args.add(expiryField(id));
+            args.add(String.valueOf(epochSeconds(LocalDateTime.parse(expiries.get(i)))));
+        }
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long migrated = redisTemplate.execute(MIGRATE_SCRIPT, keys, args.toArray());
+        return migrated != null ? migrated.intValue() : 0;
+    }
+
+    /**
+     * Compares the two layouts on live data: MEMORY USAGE of up to sampleLinks legacy links
+     * (both keys) and of compact buckets covering about as many links, as bytes per link.
+     * Uses SCAN, so it is safe to run against production, but it is not free — it's an admin tool.
+     */
+    public MemoryReport memoryReport(int sampleLinks) {
+        List<String> legacyKeys = new ArrayList<>();
+        for (String clicksKey : scan("url:*:clicks", sampleLinks)) {
+            legacyKeys.add(clicksKey);
+            legacyKeys.add(clicksKey.substring(0, clicksKey.length() - ":clicks".length()) + ":expiry");
+        }
+        List<String> buckets = scan("link:*", Math.max(1, sampleLinks >> LINKS_PER_BUCKET_SHIFT));
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : legacyKeys) {
+                connection.execute("MEMORY", bytes("USAGE"), bytes(key), bytes("SAMPLES"), bytes("0"));
+            }
+            for (String key : buckets) {
+                connection.execute("MEMORY", bytes("USAGE"), bytes(key), bytes("SAMPLES"), bytes("0"));
+                connection.hashCommands().hLen(bytes(key));
+            }
+            return null;
+        });
+
+        long legacyBytes = 0;
+        for (int i = 0; i < legacyKeys.size(); i++) {
+            legacyBytes += asLong(results.get(i));
+        }
+
+        long compactBytes = 0;
+        long compactLinks = 0;
+        for (int i = legacyKeys.size(); i < results.size(); i += 2) {
+            compactBytes += asLong(results.get(i));
+            compactLinks += asLong(results.get(i + 1)) / 2;
+        }
+
+        return new MemoryReport(
+                new LayoutMemory(legacyKeys.size() / 2, legacyBytes),
+                new LayoutMemory(compactLinks, compactBytes));
+    }
+
+    public record LayoutMemory(long sampledLinks, long sampledBytes) {
+
+        public double bytesPerLink() {
+            return sampledLinks == 0 ? 0 : (double) sampledBytes / sampledLinks;
+        }
+    }
+
+    public record MemoryReport(LayoutMemory legacy, LayoutMemory compact) {}
+
+    private List<String> scan(String pattern, int limit) {
+        List<String> keys = new ArrayList<>(limit);
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(1000).build())) {
+            while (cursor.hasNext() && keys.size() < limit) {
+                keys.add(cursor.next());
+            }
+        }
+        return keys;
+    }
+
+    private static long asLong(Object value) {
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return value != null ? Long.parseLong(value.toString()) : 0;
+    }
+
+    public static long epochSeconds(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    /**
+     * Number of dirty_urls:{shard} sets clicks are marked in. Only ever raise it: links marked in a
+     * shard above a lowered count are never synced.
+     */
+    public int dirtyShards() {
+        return dirtyShards;
+    }
+
+    String dirtySetKey(String shortCode) {
+        return dirtySetKey(Math.floorMod(shortCode.hashCode(), dirtyShards));
+    }
+
+    static String dirtySetKey(int shard) {
+        return LEGACY_DIRTY_SET_KEY + ":" + shard;
+    }
+
+    static String bucketKey(long id) {
+        return "link:" + (id >>> LINKS_PER_BUCKET_SHIFT);
+    }
+
+    static String clicksField(long id) {
+        return "c" + (id & BUCKET_MASK);
+    }
+
+    private static String expiryField(long id) {
+        return "e" + (id & BUCKET_MASK);
+    }
+
+    static String legacyClicksKey(String shortCode) {
+        return "url:" + shortCode + ":clicks";
+    }
+
+    private static String legacyExpiryKey(String shortCode) {
+        return "url:" + shortCode + ":expiry";
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.MappingImportResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command-line form of the admin export/import, for running against MongoDB and Redis without
+ * serving traffic:
+ *
+ *   java -jar urlshortener.jar --spring.main.web-application-type=none --mappings.export=backup.ndjson.gz
+ *   java -jar urlshortener.jar --spring.main.web-application-type=none --mappings.import=backup.ndjson.gz
+ *
+ * The application exits once the transfer is done (status 1 if it failed). Without either
+ * option this does nothing.
+ */
+@Slf4j
+@Component
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class MappingTransferRunner implements ApplicationRunner {
+
+    private static final String EXPORT = "mappings.export";
+    private static final String IMPORT = "mappings.import";
+
+    private final MappingTransferService mappingTransferService;
+    private final ApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String exportFile = option(args, EXPORT);
+        String importFile = option(args, IMPORT);
+        if (exportFile == null && importFile == null) {
+            return;
+        }
+
+        int status = 0;
+        try {
+            if (exportFile != null) {
+                try (OutputStream out = Files.newOutputStream(Path.of(exportFile))) {
+                    long exported = mappingTransferService.export(out);
+                    log.info("Wrote {} mapping(s) to {}", exported, exportFile);
+                }
+            }
+            if (importFile != null) {
+                try (InputStream in = Files.newInputStream(Path.of(importFile))) {
+                    MappingImportResult result = mappingTransferService.importFrom(in);
+                    log.info("Import of {} done: {}", importFile, result);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Mapping transfer failed", e);
+            status = 1;
+        }
+
+        int exitStatus = status;
+        System.exit(SpringApplication.exit(context, () -> exitStatus));
+    }
+
+    private static String option(ApplicationArguments args, String name) {
+        return args.containsOption(name) && !args.getOptionValues(name).isEmpty()
+                ? args.getOptionValues(name).get(0) : null;
+    }
+}
@@ -0,0 +1,277 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.urlshortener.model.MappingImportResult;
+import com.urlshortener.model.MappingRecord;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.ShortCodeCodec;
+import com.urlshortener.util.UrlFingerprint;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backup and migration of the mapping set as gzipped NDJSON, one MappingRecord per line.
+ *
+ * Export streams url_mapping through a cursor (mappings.transfer.batchSize documents per fetch)
+ * straight into the gzip stream, so memory is one batch whatever the collection size. Writes
+ * block while the receiver is slow, and the cursor isn't advanced meanwhile. Each batch's click
+ * counts are read from Redis in one pipeline, since MongoDB lags by up to a sync interval.
+ *
+ * Import reads the same format a batch at a time. Per batch it:
+ *   - raises the url_sequence counter to the batch's highest ID ($max) before inserting, so no
+ *     range reserved from then on can mint an imported ID again
+ *   - inserts with one unordered insertMany; lines whose shortCode or fingerprint already exist
+ *     are counted as duplicates and the existing link is kept
+ *   - writes the inserted links' click/expiry state to Redis (one pipeline) and their IDs to the
+ *     negative-lookup filter
+ * Links that have already expired are skipped. Documents are written as converted BSON rather
+ * than through the repository, so auditing doesn't overwrite the exported createdAt.
+ *
+ * Short codes are decoded with this deployment's ShortCodeCodec: an export only imports into a
+ * deployment with the same shortcode.width and scramble settings. Importing into a deployment
+ * that already minted IDs is only safe for exports of that same deployment (e.g. restoring
+ * deleted links) — an unrelated export's IDs below the counter could collide with reserved ranges.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class MappingTransferService {
+
+    private final MongoTemplate mongoTemplate;
+    private final LinkStateStore linkStateStore;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortCodeFilter shortCodeFilter;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ObjectMapper objectMapper;
+
+    private static final String COLLECTION = "url_mapping";
+    private static final String SEQUENCE = "url_sequence";
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${mappings.transfer.batchSize}")
+    private int batchSize;
+
+    @PostConstruct
+    public void validate() {
+        if (batchSize < 1) {
+            throw new IllegalStateException("mappings.transfer.batchSize must be at least 1, got " + batchSize);
+        }
+    }
+
+    /**
+     * Writes every mapping to out as gzipped NDJSON. out is finished but not closed.
+     *
+     * @return the number of mappings written
+     */
+    public long export(OutputStream out) throws IOException {
+        Query query = new Query().with(Sort.by("_id")).cursorBatchSize(batchSize);
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+
+        long exported = 0;
+        List<UrlMapping> batch = new ArrayList<>(batchSize);
+        try (Stream<UrlMapping> mappings = mongoTemplate.stream(query, UrlMapping.class)) {
+            for (UrlMapping mapping : (Iterable<UrlMapping>) mappings::iterator) {
+                batch.add(mapping);
+                if (batch.size() == batchSize) {
+                    exported += writeBatch(gzip, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                exported += writeBatch(gzip, batch);
+            }
+        }
+        gzip.finish();
+        gzip.flush();
+
+        log.info("Exported {} mapping(s)", exported);
+        return exported;
+    }
+
+    /**
+     * Imports gzipped NDJSON written by export. Safe to re-run: lines already imported come back
+     * as duplicates.
+     */
+    public MappingImportResult importFrom(InputStream in) throws IOException {
+        MappingImportResult result = new MappingImportResult();
+        LocalDateTime now = LocalDateTime.now();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(in, BUFFER_SIZE), StandardCharsets.UTF_8));
+
+        List<UrlMapping> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            UrlMapping mapping = parse(line, lineNumber);
+            if (mapping == null) {
+                result.setRejected(result.getRejected() + 1);
+            } else if (mapping.getExpiryDate().isBefore(now)) {
+                result.setExpired(result.getExpired() + 1);
+            } else {
+                batch.add(mapping);
+                if (batch.size() == batchSize) {
+                    importBatch(batch, result);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, result);
+        }
+
+        log.info("Imported {} mapping(s): {} duplicate, {} expired, {} rejected; highest ID {}",
+                result.getImported(), result.getDuplicates(), result.getExpired(), result.getRejected(), result.getMaxId());
+        return result;
+    }
+
+    private int writeBatch(OutputStream out, List<UrlMapping> batch) throws IOException {
+        List<Long> clicks = readClicks(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            UrlMapping mapping = batch.get(i);
+            Long redisClicks = clicks != null ? clicks.get(i) : null;
+            long clickCount = redisClicks != null ? redisClicks
+                    : mapping.getClickCount() != null ? mapping.getClickCount() : 0;
+            out.write(objectMapper.writeValueAsBytes(new MappingRecord(mapping, clickCount)));
+            out.write('\n');
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return Redis click counts in batch order, or null to export MongoDB's if Redis is unavailable
+     */
+    private List<Long> readClicks(List<UrlMapping> batch) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        List<String> shortCodes = new ArrayList<>(batch.size());
+        for (UrlMapping mapping : batch) {
+            shortCodes.add(mapping.getShortCode());
+        }
+        try {
+            List<Long> clicks = linkStateStore.getClicks(shortCodes);
+            circuitBreaker.recordSuccess();
+            return clicks;
+        } catch (Exception e) {
+            circuitBreaker.recordFailure();
+            log.warn("Redis failed during export, using MongoDB click counts for {} link(s): {}", batch.size(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the mapping to insert, or null if the line isn't a usable record
+     */
+    private UrlMapping parse(String line, long lineNumber) {
+        MappingRecord record;
+        try {
+            record = objectMapper.readValue(line, MappingRecord.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Import line {}: not a mapping record ({})", lineNumber, e.getOriginalMessage());
+            return null;
+        }
+        if (record.getShortCode() == null || record.getOriginalUrl() == null || record.getOriginalUrl().isBlank()
+                || record.getExpiryDate() == null || shortCodeCodec.decode(record.getShortCode()) < 0) {
+            log.warn("Import line {}: missing fields or a short code this deployment can't decode", lineNumber);
+            return null;
+        }
+
+        UrlMapping mapping = new UrlMapping();
+        mapping.setShortCode(record.getShortCode());
+        mapping.setOriginalUrl(record.getOriginalUrl());
+        mapping.setUrlFingerprint(record.getUrlFingerprint() != null
+                ? record.getUrlFingerprint() : UrlFingerprint.of(record.getOriginalUrl()));
+        mapping.setClickCount(record.getClickCount() != null ? record.getClickCount() : 0L);
+        mapping.setCreatedAt(record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now());
+        mapping.setExpiryDate(record.getExpiryDate());
+        mapping.setRedirectStatus(record.getRedirectStatus());
+        return mapping;
+    }
+
+    private void importBatch(List<UrlMapping> batch, MappingImportResult result) {
+        long maxId = 0;
+        for (UrlMapping mapping : batch) {
+            maxId = Math.max(maxId, shortCodeCodec.decode(mapping.getShortCode()));
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(SEQUENCE)),
+                new Update().max("seq", maxId), "counters");
+        result.setMaxId(Math.max(result.getMaxId(), maxId));
+
+        List<Document> documents = new ArrayList<>(batch.size());
+        for (UrlMapping mapping : batch) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(mapping, document);
+            documents.add(document);
+        }
+
+        boolean[] duplicate = new boolean[batch.size()];
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION)
+                    .insert(documents)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                duplicate[error.getIndex()] = true;
+            }
+        }
+
+        List<UrlMapping> inserted = new ArrayList<>(batch.size());
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (!duplicate[i]) {
+                inserted.add(batch.get(i));
+                ids.add(shortCodeCodec.decode(batch.get(i).getShortCode()));
+            }
+        }
+        result.setImported(result.getImported() + inserted.size());
+        result.setDuplicates(result.getDuplicates() + batch.size() - inserted.size());
+        if (inserted.isEmpty()) {
+            return;
+        }
+
+        shortCodeFilter.addAll(ids);
+        try {
+            linkStateStore.init(inserted);
+        } catch (Exception e) {
+            // The redirect script seeds missing state from the DB values on the first click
+            log.warn("Failed to initialize Redis keys for {} imported link(s): {}", inserted.size(), e.getMessage());
+        }
+    }
+}
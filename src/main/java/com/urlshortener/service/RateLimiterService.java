@@ -1,56 +1,341 @@
 package com.urlshortener.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.exception.BadRequestException;
+import com.urlshortener.metrics.ShortenerMetrics;
 import com.urlshortener.util.RedisLuaScripts;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Per-client rate limiting, shared across instances through Redis but decided locally.
+ *
+ * Instead of one Redis call per request, an instance leases a chunk of a client's quota for the
+ * current window (RATE_LIMIT_LEASE_SCRIPT / RATE_LIMIT_SLIDING_LEASE_SCRIPT) and spends it from an
+ * in-memory bucket with a CAS. Redis is only contacted when a lease runs out, so a busy client costs
+ * one round-trip per lease. The sum of all leases never exceeds the limit, so the limit still holds
+ * across instances; a lease an instance doesn't use up is simply lost for that window.
+ *
+ * Rejections are cached for roughly one token's worth of time, so a client hammering the API past
+ * its limit doesn't turn into one Redis call per request either.
+ *
+ * If Redis fails, the instance enforces the full limit on its own for one window instead of failing
+ * open: the client gets one local lease of the whole quota, is refused once it's spent, and only
+ * goes back to Redis when that window ends.
+ *
+ * Per-client state lives in a bounded Caffeine cache (rate.limit.maxTrackedClients); evicting a
+ * client only drops its unused lease, which errs on the strict side.
+ *
+ * Without Redis (the embedded profile) every limit is enforced per instance, in fixed windows:
+ * a client gets the whole quota as one local lease per window.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RateLimiterService {
 
-    private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * BATCH_SHORTEN is counted in URLs rather than requests, so a batch isn't held to the
+     * single-link shorten limit.
+     */
+    public enum Endpoint {
+        SHORTEN, BATCH_SHORTEN, REDIRECT, STATS;
 
-    @Value("${rate.limit.maxRequests}")
-    private int maxRequests;
+        private final String keyPrefix = "rate_limit:" + name().toLowerCase() + ":";
+    }
+
+    private enum Algorithm { FIXED, SLIDING }
+
+    private final ObjectProvider<RedisTemplate<String, String>> redisTemplateProvider;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    // Leases are maxRequests / LEASE_DIVISOR, so roughly ten round-trips per client per window
+    private static final int LEASE_DIVISOR = 10;
+
+    @Value("${rate.limit.algorithm}")
+    private String algorithmName;
+
+    @Value("${rate.limit.maxLeaseSize}")
+    private int maxLeaseSize;
+
+    @Value("${rate.limit.maxTrackedClients}")
+    private long maxTrackedClients;
+
+    @Value("${rate.limit.shorten.maxRequests}")
+    private int shortenMaxRequests;
+
+    @Value("${rate.limit.shorten.windowSeconds}")
+    private int shortenWindowSeconds;
 
-    @Value("${rate.limit.windowSeconds}")
-    private int timeWindowInSeconds;
+    @Value("${rate.limit.batchShorten.maxRequests}")
+    private int batchShortenMaxRequests;
 
-    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+    @Value("${rate.limit.batchShorten.windowSeconds}")
+    private int batchShortenWindowSeconds;
+
+    @Value("${rate.limit.redirect.maxRequests}")
+    private int redirectMaxRequests;
+
+    @Value("${rate.limit.redirect.windowSeconds}")
+    private int redirectWindowSeconds;
+
+    @Value("${rate.limit.stats.maxRequests}")
+    private int statsMaxRequests;
+
+    @Value("${rate.limit.stats.windowSeconds}")
+    private int statsWindowSeconds;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LEASE_SCRIPT;
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SLIDING_LEASE_SCRIPT;
 
     static {
-        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
-        RATE_LIMIT_SCRIPT.setScriptText(RedisLuaScripts.RATE_LIMIT_SCRIPT);
-        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setScriptText(RedisLuaScripts.RATE_LIMIT_LEASE_SCRIPT);
+        LEASE_SCRIPT.setResultType(List.class);
+
+        SLIDING_LEASE_SCRIPT = new DefaultRedisScript<>();
+        SLIDING_LEASE_SCRIPT.setScriptText(RedisLuaScripts.RATE_LIMIT_SLIDING_LEASE_SCRIPT);
+        SLIDING_LEASE_SCRIPT.setResultType(List.class);
+    }
+
+    private Algorithm algorithm;
+    // Null when there's no Redis to share quota through
+    private RedisTemplate<String, String> redisTemplate;
+    private final Map<Endpoint, Limit> limits = new EnumMap<>(Endpoint.class);
+    private Cache<String, AtomicReference<Lease>> buckets;
+
+    @PostConstruct
+    public void init() {
+        algorithm = Algorithm.valueOf(algorithmName.trim().toUpperCase());
+        redisTemplate = redisTemplateProvider.getIfAvailable();
+        limits.put(Endpoint.SHORTEN, Limit.of(shortenMaxRequests, shortenWindowSeconds, maxLeaseSize));
+        limits.put(Endpoint.BATCH_SHORTEN, Limit.of(batchShortenMaxRequests, batchShortenWindowSeconds, maxLeaseSize));
+        limits.put(Endpoint.REDIRECT, Limit.of(redirectMaxRequests, redirectWindowSeconds, maxLeaseSize));
+        limits.put(Endpoint.STATS, Limit.of(statsMaxRequests, statsWindowSeconds, maxLeaseSize));
+
+        long longestWindowMillis = limits.values().stream().mapToLong(Limit::windowMillis).max().orElse(0);
+        buckets = Caffeine.newBuilder()
+                .maximumSize(maxTrackedClients)
+                .expireAfterAccess(Duration.ofMillis(Math.max(1000, longestWindowMillis)))
+                .build();
+
+        if (redisTemplate == null) {
+            log.info("Rate limiter: local fixed window (no Redis), limits {}", limits);
+        } else {
+            log.info("Rate limiter: {} window, limits {}", algorithm.name().toLowerCase(), limits);
+        }
+    }
+
+    public boolean isAllowed(Endpoint endpoint, String clientKey) {
+        return isAllowed(endpoint, clientKey, 1);
+    }
+
+    /**
+     * Takes several permits at once, e.g. one per URL in a batch shorten request.
+     * An endpoint with maxRequests <= 0 is not limited.
+     *
+     * @throws BadRequestException if permits is more than a whole window allows: retrying after a
+     *                             429 would never succeed, so the client has to split the batch
+     */
+    public boolean isAllowed(Endpoint endpoint, String clientKey, int permits) {
+        Limit limit = limits.get(endpoint);
+        if (limit.maxRequests <= 0) {
+            return true;
+        }
+        if (permits > limit.maxRequests) {
+            throw new BadRequestException("Batch of " + permits + " exceeds the rate limit of "
+                    + limit.maxRequests + " per " + limit.windowMillis / 1000 + "s; split it into smaller batches");
+        }
+
+        long start = System.nanoTime();
+        String key = endpoint.keyPrefix + clientKey;
+        AtomicReference<Lease> bucket = buckets.get(key, k -> new AtomicReference<>(Lease.EMPTY));
+
+        Lease lease = bucket.get();
+        boolean allowed;
+        if (lease.isLive(start)) {
+            // Spend from the current lease; a live lease that can't cover the request falls through
+            // to Redis, unless Redis already said no for this stretch of the window
+            allowed = lease.tryTake(permits) || (!lease.denied && leaseFromRedis(key, limit, bucket, lease, permits, start));
+        } else {
+            allowed = leaseFromRedis(key, limit, bucket, lease, permits, start);
+        }
+
+        metrics.recordRateLimitDecision(endpoint, allowed, start);
+        return allowed;
     }
 
-    public boolean isAllowed(String ipAddress) {
-        String redisKey = "rate_limit:" + ipAddress;
+    /**
+     * Leases more quota from Redis and takes this request's permits out of it.
+     * Concurrent callers may each lease; the loser of the bucket CAS drops its surplus,
+     * which only ever makes the limit stricter.
+     */
+    private boolean leaseFromRedis(String key, Limit limit, AtomicReference<Lease> bucket, Lease expected,
+                                   int permits, long nowNanos) {
+        if (redisTemplate == null) {
+            return leaseLocally(limit, bucket, expected, permits, nowNanos);
+        }
+
+        if (expected.local && expected.isLive(nowNanos)) {
+            // A fallback window's quota is spent: no more until it ends, Redis or not
+            return false;
+        }
+
+        int wanted = Math.max(permits, limit.leaseSize);
+        Lease next;
+        boolean allowed;
+
+        if (!circuitBreaker.allowRequest()) {
+            // Redis is known to be down: limit locally without waiting for the script to fail
+            metrics.recordRateLimitLeaseFailure();
+            return leaseLocally(limit, bucket, expected, permits, nowNanos);
+        }
 
         try {
-            // Atomic increment + expire in a single Lua script — no race condition
-            Long currentCount = redisTemplate.execute(
-                    RATE_LIMIT_SCRIPT,
-                    Collections.singletonList(redisKey),
-                    String.valueOf(timeWindowInSeconds)
-            );
+            List<?> result = executeLeaseScript(key, limit, wanted, permits);
+            circuitBreaker.recordSuccess();
+            long granted = ((Number) result.get(0)).longValue();
+            long ttlMillis = ((Number) result.get(1)).longValue();
+            if (ttlMillis <= 0) {
+                ttlMillis = limit.windowMillis;
+            }
 
-            if (currentCount == null) {
-                return true;
+            allowed = granted >= permits;
+            metrics.recordRateLimitLease(allowed);
+            if (allowed) {
+                next = Lease.granted(granted - permits, nowNanos, ttlMillis);
+            } else {
+                // Re-ask Redis after about one token's worth of the window has passed
+                next = Lease.denied(nowNanos, Math.min(ttlMillis, limit.windowMillis / limit.maxRequests));
             }
+        } catch (Exception e) {
+            // Enforce the limit locally for one window instead of failing open
+            log.warn("Redis rate limit lease failed for key={}, limiting locally: {}", key, e.getMessage());
+            circuitBreaker.recordFailure();
+            metrics.recordRateLimitLeaseFailure();
+            return leaseLocally(limit, bucket, expected, permits, nowNanos);
+        }
 
-            return currentCount <= maxRequests;
+        bucket.compareAndSet(expected, next);
+        return allowed;
+    }
 
-        } catch (Exception e) {
-            // In case Redis is down or error occurs, allow the request (fail-open)
-            log.error("Redis rate limit failed for IP={}", ipAddress, e);
+    /**
+     * Local-only limiting (no Redis, or Redis failing): the whole window's quota as one local lease;
+     * once it's spent, nothing more until the window ends.
+     */
+    private boolean leaseLocally(Limit limit, AtomicReference<Lease> bucket, Lease expected, int permits, long nowNanos) {
+        if (expected.local && expected.isLive(nowNanos)) {
+            return false;
+        }
+        bucket.compareAndSet(expected, Lease.local(limit.maxRequests - permits, nowNanos, limit.windowMillis));
+        return true;
+    }
+
+    private List<?> executeLeaseScript(String key, Limit limit, int wanted, int permits) {
+        if (algorithm == Algorithm.FIXED) {
+            return redisTemplate.execute(
+                    LEASE_SCRIPT,
+                    Collections.singletonList(key),
+                    String.valueOf(limit.maxRequests),
+                    String.valueOf(limit.windowMillis),
+                    String.valueOf(wanted),
+                    String.valueOf(permits)
+            );
+        }
+
+        long now = System.currentTimeMillis();
+        long window = now / limit.windowMillis;
+        return redisTemplate.execute(
+                SLIDING_LEASE_SCRIPT,
+                List.of(key + ":" + window, key + ":" + (window - 1)),
+                String.valueOf(limit.maxRequests),
+                String.valueOf(limit.windowMillis),
+                String.valueOf(now % limit.windowMillis),
+                String.valueOf(wanted),
+                String.valueOf(permits)
+        );
+    }
+
+    private record Limit(int maxRequests, long windowMillis, int leaseSize) {
+
+        static Limit of(int maxRequests, int windowSeconds, int maxLeaseSize) {
+            return new Limit(maxRequests, windowSeconds * 1000L,
+                    Math.max(1, Math.min(maxLeaseSize, maxRequests / LEASE_DIVISOR)));
+        }
+
+        @Override
+        public String toString() {
+            return maxRequests + "/" + windowMillis / 1000 + "s (lease " + leaseSize + ")";
+        }
+    }
+
+    /**
+     * Quota leased from Redis, valid until the window it was leased from ends.
+     * A denied lease holds no permits and marks Redis as having refused until it expires.
+     * A local lease is a whole window's quota granted without Redis; once it's spent the client
+     * is refused until it expires.
+     */
+    private static final class Lease {
+
+        static final Lease EMPTY = new Lease(0, 0, 0, false, false);
+
+        private final AtomicLong remaining;
+        private final long createdNanos;
+        private final long lifetimeNanos;
+        private final boolean denied;
+        private final boolean local;
+
+        private Lease(long remaining, long createdNanos, long lifetimeNanos, boolean denied, boolean local) {
+            this.remaining = new AtomicLong(remaining);
+            this.createdNanos = createdNanos;
+            this.lifetimeNanos = lifetimeNanos;
+            this.denied = denied;
+            this.local = local;
+        }
+
+        static Lease granted(long remaining, long nowNanos, long ttlMillis) {
+            return new Lease(remaining, nowNanos, ttlMillis * 1_000_000, false, false);
+        }
+
+        static Lease denied(long nowNanos, long ttlMillis) {
+            return new Lease(0, nowNanos, ttlMillis * 1_000_000, true, false);
+        }
+
+        static Lease local(long remaining, long nowNanos, long ttlMillis) {
+            return new Lease(remaining, nowNanos, ttlMillis * 1_000_000, false, true);
+        }
+
+        boolean isLive(long nowNanos) {
+            return nowNanos - createdNanos < lifetimeNanos;
+        }
+
+        boolean tryTake(int permits) {
+            long current;
+            do {
+                current = remaining.get();
+                if (current < permits) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - permits));
             return true;
         }
     }
@@ -0,0 +1,196 @@
+package com.urlshortener.service;
+
+import com.urlshortener.cache.TwoLevelCache;
+import com.urlshortener.exception.ExpiredException;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.metrics.ShortenerMetrics.RedirectStage;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.model.UrlStatsResponse;
+import com.urlshortener.util.ShortCodeCodec;
+import com.urlshortener.util.SingleFlight;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking form of the redirect and lifetime-stats lookups, for redirect.reactive.enabled.
+ *
+ * A redirect runs the same steps as UrlShortenerService.getUrlMappingByShortCode — filter, pinned
+ * copy, cache, buffered count or REDIRECT_SCRIPT, fallback — through its shared step methods, so
+ * the two modes can't drift apart. Only the I/O differs: the Redis tier of the cache is read with
+ * the reactive connection, a miss loads from MongoDB through ReactiveMongoTemplate, and the script
+ * runs through ReactiveStringRedisTemplate. No thread waits on a round-trip, so a latency spike
+ * in Redis or MongoDB queues callbacks instead of parking the servlet container's threads.
+ *
+ * Misses are coalesced per instance like the blocking path's (SingleFlight.loadAsync);
+ * cache.singleFlight.clusterLockMillis only applies to the blocking path, since its wait is a poll.
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class ReactiveRedirectService {
+
+    private static final String SHORT_CODE_CACHE = "urlMappingsByShortCode";
+
+    private final UrlShortenerService urlShortenerService;
+    private final LinkStateStore linkStateStore;
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final CacheManager cacheManager;
+    private final ShortCodeCodec shortCodeCodec;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    @Value("${redirect.reactive.enabled}")
+    private boolean enabled;
+
+    private TwoLevelCache byShortCode;
+    private SingleFlight<String, UrlMapping> loads;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(SHORT_CODE_CACHE);
+        if (!(cache instanceof TwoLevelCache twoLevel)) {
+            throw new IllegalStateException("redirect.reactive.enabled needs the two-level " + SHORT_CODE_CACHE + " cache");
+        }
+        byShortCode = twoLevel;
+        loads = new SingleFlight<>(() -> metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.COALESCED));
+        log.info("Reactive redirects: redirect and lifetime stats lookups run on the reactive Redis and MongoDB drivers");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the mapping to redirect to, with the click counted; errors with NotFoundException or
+     *         ExpiredException like the blocking path throws them
+     */
+    public Mono<UrlMapping> getUrlMappingByShortCode(String shortCode, String visitor) {
+        long id;
+        UrlMapping pinned;
+        try {
+            id = urlShortenerService.knownId(shortCode);
+            pinned = urlShortenerService.servePinned(shortCode, visitor);
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        }
+        if (pinned != null) {
+            return Mono.just(pinned);
+        }
+
+        long start = System.nanoTime();
+        return getByShortCode(shortCode)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Short code not found")))
+                .flatMap(mapping -> {
+                    metrics.recordRedirectStage(RedirectStage.CACHE, start);
+                    return urlShortenerService.countLocally(id, mapping, visitor)
+                            ? Mono.just(mapping) : recordClick(id, mapping, visitor);
+                });
+    }
+
+    /**
+     * Lifetime stats (no series) of one link; clicks from Redis, or the mapping's DB count when
+     * Redis has no state for it or is unavailable, as in UrlShortenerService.getStats.
+     */
+    public Mono<UrlStatsResponse> getStats(String shortCode) {
+        if (!urlShortenerService.mightExist(shortCode)) {
+            return Mono.error(new NotFoundException("Short code not found"));
+        }
+        return getByShortCode(shortCode)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Short code not found")))
+                .flatMap(mapping -> clicks(mapping).map(clicks -> UrlStatsResponse.of(mapping, clicks)));
+    }
+
+    private Mono<UrlMapping> getByShortCode(String shortCode) {
+        return byShortCode.getAsync(shortCode)
+                .cast(UrlMapping.class)
+                .switchIfEmpty(Mono.defer(() -> Mono.fromFuture(loads.loadAsync(shortCode, () -> load(shortCode)), true)));
+    }
+
+    // Leader of this instance's flight for shortCode. toFuture subscribes right away and callers
+    // don't cancel the shared future, so a caller going away doesn't abort the load for the rest
+    private CompletableFuture<UrlMapping> load(String shortCode) {
+        metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.ORIGIN);
+        return reactiveMongoTemplate.findOne(Query.query(Criteria.where("shortCode").is(shortCode)), UrlMapping.class)
+                .flatMap(mapping -> byShortCode.putAsync(shortCode, mapping).thenReturn(mapping))
+                .toFuture();
+    }
+
+    private Mono<UrlMapping> recordClick(long id, UrlMapping mapping, String visitor) {
+        long start = System.nanoTime();
+        if (!circuitBreaker.allowRequest()) {
+            // Redis is known to be down: don't wait for the EVAL to fail
+            return countClickWithoutRedis(mapping, start);
+        }
+
+        long hour = ClickAnalyticsService.currentHour();
+        return reactiveRedisTemplate.execute(LinkStateStore.REDIRECT_SCRIPT,
+                        linkStateStore.redirectKeys(id, mapping.getShortCode(), hour),
+                        Arrays.asList(linkStateStore.redirectArgs(id, mapping, visitor)))
+                .next()
+                .defaultIfEmpty(0L)
+                .map(result -> {
+                    urlShortenerService.scriptSucceeded(result, start);
+                    return mapping;
+                })
+                .onErrorResume(e -> !(e instanceof ExpiredException || e instanceof NotFoundException), e -> {
+                    urlShortenerService.scriptFailed(mapping, e, start);
+                    return Mono.just(mapping);
+                });
+    }
+
+    // The fallback only touches memory, but an expired link surfaces as an error signal
+    private Mono<UrlMapping> countClickWithoutRedis(UrlMapping mapping, long start) {
+        return Mono.fromCallable(() -> {
+            urlShortenerService.countClickWithoutRedis(mapping, start);
+            return mapping;
+        });
+    }
+
+    private Mono<Long> clicks(UrlMapping mapping) {
+        if (!circuitBreaker.allowRequest()) {
+            return Mono.fromSupplier(() -> statsFallback(mapping));
+        }
+
+        String shortCode = mapping.getShortCode();
+        long id = shortCodeCodec.decode(shortCode);
+        return reactiveRedisTemplate.<String, String>opsForHash()
+                .get(LinkStateStore.bucketKey(id), LinkStateStore.clicksField(id))
+                // Not migrated to the compact layout yet
+                .switchIfEmpty(Mono.defer(() -> reactiveRedisTemplate.opsForValue()
+                        .get(LinkStateStore.legacyClicksKey(shortCode))))
+                .map(Long::parseLong)
+                .doOnSuccess(clicks -> circuitBreaker.recordSuccess())
+                .switchIfEmpty(Mono.justOrEmpty(mapping.getClickCount()))
+                .onErrorResume(e -> {
+                    log.warn("Redis failed reading stats for shortCode={}, falling back to DB: {}", shortCode, e.getMessage());
+                    circuitBreaker.recordFailure();
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> statsFallback(mapping)));
+    }
+
+    private long statsFallback(UrlMapping mapping) {
+        metrics.recordStatsFallback();
+        return mapping.getClickCount() != null ? mapping.getClickCount() : 0;
+    }
+}
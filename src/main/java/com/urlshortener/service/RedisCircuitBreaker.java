@@ -0,0 +1,92 @@
+package com.urlshortener.service;
+
+import com.urlshortener.metrics.ShortenerMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker shared by the Redis calls on the request paths (redirect script, two-level
+ * cache, rate limiter leases, stats reads, short code filter), so that once Redis is known to be
+ * down requests go straight to their fallback instead of each waiting for its own timeout.
+ *
+ *   closed     every call goes to Redis; redis.circuit.failureThreshold consecutive failures open it
+ *   open       allowRequest() is false for redis.circuit.openMillis
+ *   half-open  after that, one caller per openMillis is let through as a probe: success closes
+ *              the circuit, failure keeps it open for another openMillis
+ *
+ * Lock-free: the state is one AtomicLong (the time the circuit stays open until) plus the failure count.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisCircuitBreaker {
+
+    private final ShortenerMetrics metrics;
+
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    @Value("${redis.circuit.failureThreshold}")
+    private int failureThreshold;
+
+    @Value("${redis.circuit.openMillis}")
+    private long openMillis;
+
+    private long openNanos;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openUntil = new AtomicLong(CLOSED);
+
+    @PostConstruct
+    public void init() {
+        openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        metrics.registerRedisCircuit(this::isOpen);
+    }
+
+    /**
+     * @return false if the caller should skip Redis and use its fallback right away
+     */
+    public boolean allowRequest() {
+        long until = openUntil.get();
+        if (until == CLOSED) {
+            return true;
+        }
+        long now = System.nanoTime();
+        // Past the open window: the caller that moves it forward is the probe, the rest keep short-circuiting
+        if (now - until >= 0 && openUntil.compareAndSet(until, now + openNanos)) {
+            return true;
+        }
+        metrics.recordRedisShortCircuit();
+        return false;
+    }
+
+    // Called after every successful Redis call on the hot paths: read first, so the common case
+    // (closed, no failures) doesn't write to the shared cache lines
+    public void recordSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (openUntil.get() != CLOSED && openUntil.getAndSet(CLOSED) != CLOSED) {
+            log.info("Redis circuit closed");
+        }
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() < failureThreshold) {
+            return;
+        }
+        if (openUntil.getAndSet(System.nanoTime() + openNanos) == CLOSED) {
+            log.warn("Redis circuit opened after {} consecutive failures; retrying in {}ms", failureThreshold, openMillis);
+        }
+    }
+
+    public boolean isOpen() {
+        return openUntil.get() != CLOSED;
+    }
+}
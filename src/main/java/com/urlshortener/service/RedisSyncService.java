@@ -1,100 +1,318 @@
 package com.urlshortener.service;
 
-import com.urlshortener.repo.UrlMappingRepository;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.RedisLuaScripts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import jakarta.annotation.PostConstruct;
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Persists click counts from Redis to MongoDB for the links clicked since the last run.
+ *
+ * Clicks mark their link in one of scheduler.sync.shards dirty sets, dirty_urls:{shard}, chosen by
+ * the short code's hash (LinkStateStore.dirtySetKey). Every scheduler.sync.interval each instance
+ * runs scheduler.sync.workers workers that walk the shards from a random starting point and drain
+ * every shard they can lease:
+ *
+ *   SET sync:lease:{shard} {instance} NX PX leaseMillis    skip the shard if someone else holds it
+ *   RENAME dirty_urls:{shard} → dirty_urls:{shard}:processing
+ *   SRANDMEMBER batchSize → counts → bulkWrite → SREM, renewing the lease after each chunk
+ *   release the lease
+ *
+ * So the shards are spread over the workers of all instances instead of one instance winning a
+ * single RENAME and syncing alone. A chunk leaves the processing set only once it's in MongoDB:
+ * if a worker dies mid-shard its lease runs out, and whoever tries the shard next resumes the
+ * processing set, including the chunk that was in flight. The legacy unsharded dirty_urls set (and its
+ * processing set) is drained the same way, as one more shard.
+ */
 @Slf4j
 @Service
+@Profile("!embedded")
 @RequiredArgsConstructor
 public class RedisSyncService {
 
     private final RedisTemplate<String, String> redisTemplate;
-    private final UrlMappingRepository urlMappingRepository;
+    private final MongoTemplate mongoTemplate;
+    private final LinkStateStore linkStateStore;
+    private final ClickAnalyticsService clickAnalytics;
+    private final ShortenerMetrics metrics;
+
+    private static final String LEASE_KEY_PREFIX = "sync:lease:";
 
-    private static final String DIRTY_SET_KEY = "dirty_urls";
+    private static final DefaultRedisScript<Long> LEASE_RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> LEASE_RELEASE_SCRIPT;
+
+    static {
+        LEASE_RENEW_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RENEW_SCRIPT.setScriptText(RedisLuaScripts.LEASE_RENEW_SCRIPT);
+        LEASE_RENEW_SCRIPT.setResultType(Long.class);
+
+        LEASE_RELEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RELEASE_SCRIPT.setScriptText(RedisLuaScripts.LEASE_RELEASE_SCRIPT);
+        LEASE_RELEASE_SCRIPT.setResultType(Long.class);
+    }
 
     @Value("${scheduler.sync.interval}")
     private long syncInterval;
 
+    @Value("${scheduler.sync.batchSize}")
+    private int batchSize;
+
+    @Value("${scheduler.sync.workers}")
+    private int workers;
+
+    @Value("${scheduler.sync.leaseMillis}")
+    private long leaseMillis;
+
+    // Lease owner ID, so a worker only ever renews or releases its own leases
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private List<Shard> shards;
+    private ExecutorService workerPool;
+
     @PostConstruct
-    public void logInterval() {
-        log.info("Redis Sync Interval Configured: {}ms", syncInterval);
+    public void init() {
+        if (workers < 1) {
+            throw new IllegalStateException("scheduler.sync.workers must be at least 1, got " + workers);
+        }
+        if (leaseMillis <= 0) {
+            throw new IllegalStateException("scheduler.sync.leaseMillis must be positive, got " + leaseMillis);
+        }
+
+        List<Shard> all = new ArrayList<>(linkStateStore.dirtyShards() + 1);
+        for (int shard = 0; shard < linkStateStore.dirtyShards(); shard++) {
+            all.add(new Shard(String.valueOf(shard), LinkStateStore.dirtySetKey(shard)));
+        }
+        all.add(new Shard("legacy", LinkStateStore.LEGACY_DIRTY_SET_KEY));
+        shards = List.copyOf(all);
+
+        AtomicInteger threads = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "sync-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Redis Sync Interval Configured: {}ms, batch size: {}, {} shard(s), {} worker(s), lease {}ms",
+                syncInterval, batchSize, linkStateStore.dirtyShards(), workers, leaseMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdownNow();
     }
 
     /**
-     * Syncs only recently-modified URLs from Redis to MongoDB.
-     * The redirect Lua script adds shortCodes to the "dirty_urls" Redis Set on each click.
-     * This job atomically swaps the dirty set (RENAME), then syncs only those entries — O(K active) not O(N total).
+     * Syncs only recently-modified URLs from Redis to MongoDB — O(K active) not O(N total).
+     * Returns once every shard has been drained by this instance or found leased by another.
      */
     @Scheduled(fixedDelayString = "${scheduler.sync.interval}")
     public void syncClicksToDatabase() {
-        log.info("Starting Redis-to-MongoDB sync...");
+        long startNanos = System.nanoTime();
+        int first = ThreadLocalRandom.current().nextInt(shards.size());
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        AtomicLong synced = new AtomicLong();
+
+        Callable<Void> worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < shards.size()) {
+                long written = syncShard(shards.get((first + i) % shards.size()));
+                if (written >= 0) {
+                    drained.incrementAndGet();
+                    synced.addAndGet(written);
+                }
+            }
+            return null;
+        };
 
-        // Atomically swap dirty set to a processing set to avoid losing entries added during sync
-        String processingKey = DIRTY_SET_KEY + ":processing";
         try {
-            redisTemplate.rename(DIRTY_SET_KEY, processingKey);
-        } catch (Exception e) {
-            // RENAME fails if the key doesn't exist (no dirty URLs since last sync)
-            log.info("No dirty URLs to sync.");
+            workerPool.invokeAll(Collections.nCopies(workers, worker));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
 
-        Set<String> dirtyShortCodes;
+        metrics.recordSyncRun(startNanos);
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        log.info("Synced {} click count(s) from {} of {} shard(s) in {}ms ({} entries/s)",
+                synced.get(), drained.get(), shards.size(), elapsedMillis, synced.get() * 1000 / elapsedMillis);
+    }
+
+    /**
+     * Leases one shard and drains it.
+     *
+     * @return click counts written, or -1 if the shard wasn't leased
+     */
+    private long syncShard(Shard shard) {
+        Boolean leased;
         try {
-            dirtyShortCodes = redisTemplate.opsForSet().members(processingKey);
+            leased = redisTemplate.opsForValue().setIfAbsent(shard.leaseKey(), instanceId, Duration.ofMillis(leaseMillis));
         } catch (Exception e) {
-            log.error("Failed to read processing set from Redis", e);
-            return;
+            log.warn("Sync lease for shard {} unavailable, skipping it: {}", shard.name(), e.getMessage());
+            return -1;
+        }
+        metrics.recordSyncShard(Boolean.TRUE.equals(leased));
+        if (!Boolean.TRUE.equals(leased)) {
+            return -1;
         }
 
-        if (dirtyShortCodes == null || dirtyShortCodes.isEmpty()) {
-            redisTemplate.delete(processingKey);
-            log.info("No dirty URLs to sync.");
-            return;
+        long startNanos = System.nanoTime();
+        try {
+            return drain(shard);
+        } finally {
+            release(shard);
+            metrics.recordSyncShardRun(startNanos);
         }
+    }
 
-        log.info("Syncing {} dirty URL(s) to MongoDB", dirtyShortCodes.size());
+    /**
+     * The processing set is drained in chunks of batchSize (SRANDMEMBER with count), so memory stays
+     * bounded. Each chunk costs one pipelined read of the click counts, one unordered Mongo bulkWrite
+     * of $set clickCount updates and one SREM — a few round-trips per chunk instead of three per entry.
+     *
+     * The chunk is only removed after the write, so a crash or a failed write leaves it in the
+     * processing set for the next run. Writing a chunk twice is harmless: the updates are absolute.
+     */
+    private long drain(Shard shard) {
+        // A processing set left behind by a crashed worker is drained first; renaming over it would drop it
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(shard.processingKey()))) {
+                // Atomically swap the dirty set to a processing set to avoid losing entries added during sync
+                redisTemplate.rename(shard.dirtyKey(), shard.processingKey());
+            }
+        } catch (Exception e) {
+            // RENAME fails if the key doesn't exist (no dirty URLs in this shard since the last sync)
+            return 0;
+        }
 
-        for (String shortCode : dirtyShortCodes) {
-            String clickKey = "url:" + shortCode + ":clicks";
+        long synced = 0;
+        while (true) {
+            List<String> shortCodes;
+            try {
+                Set<String> members = redisTemplate.opsForSet().distinctRandomMembers(shard.processingKey(), batchSize);
+                shortCodes = members == null ? null : new ArrayList<>(members);
+            } catch (Exception e) {
+                log.error("Failed to read processing set of shard {} from Redis", shard.name(), e);
+                break;
+            }
+
+            if (shortCodes == null || shortCodes.isEmpty()) {
+                break;
+            }
 
             try {
-                String clickStr = redisTemplate.opsForValue().get(clickKey);
+                int written = syncChunk(shortCodes);
+                metrics.recordSyncChunk(written);
+                synced += written;
+            } catch (Exception e) {
+                // The chunk is still in the processing set, so the next run retries it
+                log.warn("Sync failed for chunk of {} shortCode(s) in shard {}: {}", shortCodes.size(), shard.name(), e.getMessage());
+                break;
+            }
 
-                if (clickStr != null) {
-                    urlMappingRepository.findByShortCode(shortCode).ifPresent(mapping -> {
-                        mapping.setClickCount(Long.parseLong(clickStr));
-                        urlMappingRepository.save(mapping);
-                    });
-                }
+            try {
+                redisTemplate.opsForSet().remove(shard.processingKey(), shortCodes.toArray());
             } catch (Exception e) {
-                log.warn("Sync failed for {}: {}", shortCode, e.getMessage());
+                // Already written; the next run writes the chunk again, which is harmless
+                log.warn("Failed to remove synced chunk from processing set of shard {}: {}", shard.name(), e.getMessage());
+                break;
+            }
+
+            if (!renew(shard)) {
+                // Someone else took over the shard and resumes what's left of the processing set
+                log.warn("Lost the sync lease of shard {}, leaving the rest of it to the new holder", shard.name());
+                break;
+            }
+        }
+        return synced;
+    }
+
+    /**
+     * Writes one chunk: the click counts in one pipelined read (LinkStateStore.getClicks), then one
+     * unordered bulkWrite, then the chunk's click series rollup (ClickAnalyticsService.rollup).
+     * Both writes set absolute values, so a chunk left in the processing set can simply be written again.
+     *
+     * @return number of documents the bulk write was issued for
+     */
+    private int syncChunk(List<String> shortCodes) {
+        List<Long> clickCounts = linkStateStore.getClicks(shortCodes);
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlMapping.class);
+        int updates = 0;
+        for (int i = 0; i < shortCodes.size(); i++) {
+            Long clicks = clickCounts.get(i);
+            if (clicks == null) {
+                continue;
             }
+            bulkOps.updateOne(
+                    Query.query(Criteria.where("shortCode").is(shortCodes.get(i))),
+                    new Update().set("clickCount", clicks)
+            );
+            updates++;
         }
 
-        // Clean up the processing set
-        redisTemplate.delete(processingKey);
+        if (updates > 0) {
+            bulkOps.execute();
+        }
+        clickAnalytics.rollup(shortCodes);
+        return updates;
+    }
 
-        // Clean up expired URLs from MongoDB (fixed expiry — set once at creation, never extended)
+    private boolean renew(Shard shard) {
         try {
-            long deleted = urlMappingRepository.deleteByExpiryDateBefore(LocalDateTime.now());
-            if (deleted > 0) {
-                log.info("Cleaned up {} expired URL(s) from MongoDB", deleted);
-            }
+            Long renewed = redisTemplate.execute(LEASE_RENEW_SCRIPT, List.of(shard.leaseKey()),
+                    instanceId, String.valueOf(leaseMillis));
+            return renewed != null && renewed == 1;
         } catch (Exception e) {
-            log.warn("Expired URL cleanup failed: {}", e.getMessage());
+            log.warn("Sync lease renewal for shard {} failed: {}", shard.name(), e.getMessage());
+            return false;
         }
+    }
 
-        log.info("Sync complete.");
+    private void release(Shard shard) {
+        try {
+            redisTemplate.execute(LEASE_RELEASE_SCRIPT, List.of(shard.leaseKey()), instanceId);
+        } catch (Exception e) {
+            // It expires on its own after leaseMillis
+            log.warn("Sync lease release for shard {} failed: {}", shard.name(), e.getMessage());
+        }
+    }
+
+    private record Shard(String name, String dirtyKey) {
+
+        String processingKey() {
+            return dirtyKey + ":processing";
+        }
+
+        String leaseKey() {
+            return LEASE_KEY_PREFIX + name;
+        }
     }
 }
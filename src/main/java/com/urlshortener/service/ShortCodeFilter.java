@@ -0,0 +1,400 @@
+package com.urlshortener.service;
+
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.util.ConcurrentBitSet;
+import com.urlshortener.util.ShortCodeCodec;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisStringCommands.BitOperation;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+/**
+ * Negative-lookup filter: an exact ID bitmap of every existing link, consulted before any cache
+ * or DB lookup so scans for nonexistent codes are rejected in memory instead of reaching MongoDB.
+ *
+ * Codes come from CounterService sequences, so after decoding they are dense non-negative IDs
+ * and one bit per ID is exact — no false positives, and deletes (expiry) are supported.
+ *
+ * Sharing across instances:
+ *   - The shared copy is the Redis bitmap "shortcode_ids" (SETBIT on create/expire).
+ *   - Changes are also published on "shortcode_filter" so other instances apply them immediately.
+ *   - Each instance periodically ORs the Redis bitmap into its local copy to catch missed messages.
+ *   - Every local miss is confirmed with GETBIT before it's trusted. Instances mint IDs from their
+ *     own prefetched ranges, so a link created elsewhere can have any ID, above or below the ones
+ *     this instance has seen; a delayed or lost message must not turn it into a 404.
+ *   - Once per filter.reconcileInterval (cluster-wide) one instance rebuilds the bitmap from MongoDB
+ *     and ORs it into the shared copy, repairing SETBITs lost to a crash between insert and SETBIT.
+ *
+ * The filter fails open until the startup load completes, and when a GETBIT fails.
+ *
+ * While the Redis circuit is open it fails closed instead: a local miss is trusted without a
+ * GETBIT, so a scan during an outage neither waits on Redis timeouts nor falls through to MongoDB.
+ * The price is that a link created on another instance during the outage 404s here until Redis
+ * is back and that instance's queued SETBIT and message go out (retried every
+ * redis.fallback.flushInterval).
+ */
+@Slf4j
+@Service
+@Profile("!embedded")
+@RequiredArgsConstructor
+public class ShortCodeFilter implements MessageListener {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ShortCodeCodec shortCodeCodec;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisCircuitBreaker circuitBreaker;
+
+    static final String BITMAP_KEY = "shortcode_ids";
+    static final String CHANNEL = "shortcode_filter";
+    // Held for reconcileInterval by whichever instance ran the last reconcile; never released
+    private static final String RECONCILE_KEY = "shortcode_ids:reconcile";
+
+    private final ConcurrentBitSet ids = new ConcurrentBitSet();
+    // Shared-bitmap updates that failed; retried on refresh so other instances eventually see them
+    private final Queue<PendingUpdate> failedUpdates = new ConcurrentLinkedQueue<>();
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile boolean ready;
+
+    @Value("${filter.reconcileInterval}")
+    private long reconcileInterval;
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            byte[] bitmap = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(bitmapKey()));
+
+            if (bitmap != null && bitmap.length > 0) {
+                ids.orRedisBitmap(bitmap);
+                log.info("Short code filter loaded from Redis ({} bytes)", bitmap.length);
+            } else {
+                rebuildFromDatabase();
+            }
+            ready = true;
+        } catch (Exception e) {
+            log.error("Short code filter load failed; lookups fail open until the next refresh", e);
+        }
+    }
+
+    /**
+     * @return false only if the ID definitely has no link
+     */
+    public boolean mightExist(long id) {
+        if (!ready || ids.get(id)) {
+            return true;
+        }
+
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+
+        // Possibly created on another instance whose message hasn't arrived — confirm against the shared bitmap
+        try {
+            Boolean exists = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.stringCommands().getBit(bitmapKey(), id));
+            circuitBreaker.recordSuccess();
+            if (Boolean.TRUE.equals(exists)) {
+                ids.set(id);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            log.warn("Short code filter GETBIT failed for id={}: {}", id, e.getMessage());
+            circuitBreaker.recordFailure();
+            return true;
+        }
+    }
+
+    /**
+     * mightExist for many IDs (batch stats): local misses are confirmed with one pipelined GETBIT round-trip.
+     */
+    public boolean[] mightExistAll(long[] idsToCheck) {
+        boolean[] result = new boolean[idsToCheck.length];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < idsToCheck.length; i++) {
+            result[i] = !ready || ids.get(idsToCheck[i]);
+            if (!result[i]) {
+                misses.add(i);
+            }
+        }
+        if (misses.isEmpty() || !circuitBreaker.allowRequest()) {
+            return result;
+        }
+
+        try {
+            List<Object> bits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i : misses) {
+                    connection.stringCommands().getBit(bitmapKey(), idsToCheck[i]);
+                }
+                return null;
+            });
+            circuitBreaker.recordSuccess();
+            for (int m = 0; m < misses.size(); m++) {
+                if (Boolean.TRUE.equals(bits.get(m))) {
+                    int i = misses.get(m);
+                    ids.set(idsToCheck[i]);
+                    result[i] = true;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Short code filter GETBIT failed for {} id(s): {}", misses.size(), e.getMessage());
+            circuitBreaker.recordFailure();
+            for (int i : misses) {
+                result[i] = true;
+            }
+        }
+        return result;
+    }
+
+    public void add(long id) {
+        ids.set(id);
+        update(id, true);
+    }
+
+    /**
+     * Adds a contiguous block of IDs (batch shortening): one pipelined SETBIT round-trip
+     * and a single broadcast message.
+     */
+    public void addRange(long firstId, int count) {
+        for (long id = firstId; id < firstId + count; id++) {
+            ids.set(id);
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long id = firstId; id < firstId + count; id++) {
+                    connection.stringCommands().setBit(bitmapKey(), id, true);
+                }
+                return null;
+            });
+            redisTemplate.convertAndSend(CHANNEL, "addRange:" + firstId + ":" + count);
+        } catch (Exception e) {
+            log.warn("Short code filter update failed for range [{}, {}), retrying: {}",
+                    firstId, firstId + count, e.getMessage());
+            for (long id = firstId; id < firstId + count; id++) {
+                failedUpdates.add(new PendingUpdate(id, true));
+            }
+        }
+    }
+
+    /**
+     * Adds arbitrary IDs (imported links): one pipelined SETBIT round-trip, then a "refresh"
+     * broadcast so the other instances merge the shared bitmap instead of receiving every ID.
+     */
+    public void addAll(List<Long> idsToAdd) {
+        if (idsToAdd.isEmpty()) {
+            return;
+        }
+        idsToAdd.forEach(ids::set);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long id : idsToAdd) {
+                    connection.stringCommands().setBit(bitmapKey(), id, true);
+                }
+                return null;
+            });
+            redisTemplate.convertAndSend(CHANNEL, "refresh");
+        } catch (Exception e) {
+            log.warn("Short code filter update failed for {} imported ID(s), retrying: {}",
+                    idsToAdd.size(), e.getMessage());
+            idsToAdd.forEach(id -> failedUpdates.add(new PendingUpdate(id, true)));
+        }
+    }
+
+    public void remove(long id) {
+        ids.clear(id);
+        update(id, false);
+    }
+
+    @Scheduled(fixedDelayString = "${filter.refreshInterval}", initialDelayString = "${filter.refreshInterval}")
+    public void refresh() {
+        if (!ready) {
+            load();
+            return;
+        }
+
+        retryFailedUpdates();
+
+        try {
+            byte[] bitmap = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(bitmapKey()));
+            if (bitmap != null) {
+                ids.orRedisBitmap(bitmap);
+            }
+        } catch (Exception e) {
+            log.warn("Short code filter refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the SETBITs (and messages) that failed or were skipped while the circuit was open, so
+     * other instances stop 404ing links created here soon after Redis is back. Stops at the first
+     * failure; the rest wait for the next run.
+     */
+    @Scheduled(fixedDelayString = "${redis.fallback.flushInterval}")
+    public void retryFailedUpdates() {
+        for (int i = failedUpdates.size(); i > 0; i--) {
+            PendingUpdate update = failedUpdates.poll();
+            if (update == null || !update(update.id(), update.present())) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * ORs a bitmap rebuilt from MongoDB into the shared one. Only bits are added: an ID inserted
+     * after the scan passed it is already set, and a stale bit left by a lost remove only costs
+     * one lookup that misses.
+     *
+     * Attempted every filter.refreshInterval; RECONCILE_KEY lets one instance run it per
+     * filter.reconcileInterval across the cluster.
+     */
+    @Scheduled(fixedDelayString = "${filter.refreshInterval}", initialDelayString = "${filter.refreshInterval}")
+    public void reconcile() {
+        Boolean claimed;
+        try {
+            claimed = redisTemplate.opsForValue().setIfAbsent(RECONCILE_KEY, instanceId, Duration.ofMillis(reconcileInterval));
+        } catch (Exception e) {
+            log.warn("Short code filter reconcile skipped: {}", e.getMessage());
+            return;
+        }
+        if (!Boolean.TRUE.equals(claimed)) {
+            return;
+        }
+
+        try {
+            ConcurrentBitSet fromDatabase = new ConcurrentBitSet();
+            long count = scanDatabase(fromDatabase);
+            byte[] bitmap = fromDatabase.toRedisBitmap();
+            ids.orRedisBitmap(bitmap);
+
+            byte[] scratchKey = (BITMAP_KEY + ":reconcile:" + instanceId).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.stringCommands().set(scratchKey, bitmap);
+                connection.stringCommands().bitOp(BitOperation.OR, bitmapKey(), bitmapKey(), scratchKey);
+                connection.keyCommands().del(scratchKey);
+                return null;
+            });
+            redisTemplate.convertAndSend(CHANNEL, "refresh");
+            log.info("Short code filter reconciled with {} ID(s) from MongoDB", count);
+        } catch (Exception e) {
+            log.warn("Short code filter reconcile failed, retrying after {}ms: {}", reconcileInterval, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith("add:")) {
+                ids.set(Long.parseLong(body.substring(4)));
+            } else if (body.startsWith("addRange:")) {
+                String[] parts = body.split(":");
+                long firstId = Long.parseLong(parts[1]);
+                long count = Long.parseLong(parts[2]);
+                for (long id = firstId; id < firstId + count; id++) {
+                    ids.set(id);
+                }
+            } else if (body.startsWith("remove:")) {
+                ids.clear(Long.parseLong(body.substring(7)));
+            } else if (body.equals("refresh")) {
+                refresh();
+            } else {
+                log.warn("Ignoring malformed short code filter message: {}", body);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.warn("Ignoring malformed short code filter message: {}", body);
+        }
+    }
+
+    private void rebuildFromDatabase() {
+        log.info("Rebuilding short code filter from MongoDB...");
+        long count = scanDatabase(ids);
+
+        // Publish the rebuilt bitmap; NX so a concurrent rebuild on another instance isn't clobbered
+        byte[] bitmap = ids.toRedisBitmap();
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(bitmapKey(), bitmap, Expiration.persistent(), RedisStringCommands.SetOption.SET_IF_ABSENT));
+        log.info("Short code filter rebuilt with {} ID(s)", count);
+    }
+
+    /**
+     * @return false if the update was queued for a retry instead
+     */
+    private boolean update(long id, boolean present) {
+        if (!circuitBreaker.allowRequest()) {
+            failedUpdates.add(new PendingUpdate(id, present));
+            return false;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.stringCommands().setBit(bitmapKey(), id, present));
+            redisTemplate.convertAndSend(CHANNEL, (present ? "add:" : "remove:") + id);
+            circuitBreaker.recordSuccess();
+            return true;
+        } catch (Exception e) {
+            log.warn("Short code filter update failed for id={}, retrying: {}", id, e.getMessage());
+            circuitBreaker.recordFailure();
+            failedUpdates.add(new PendingUpdate(id, present));
+            return false;
+        }
+    }
+
+    /**
+     * Sets the ID of every link in MongoDB in target.
+     *
+     * @return the number of links
+     */
+    private long scanDatabase(ConcurrentBitSet target) {
+        Query query = new Query();
+        query.fields().include("shortCode");
+
+        long count = 0;
+        try (Stream<UrlMapping> mappings = mongoTemplate.stream(query, UrlMapping.class)) {
+            for (UrlMapping mapping : (Iterable<UrlMapping>) mappings::iterator) {
+                long id = shortCodeCodec.decode(mapping.getShortCode());
+                if (id >= 0) {
+                    target.set(id);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static byte[] bitmapKey() {
+        return BITMAP_KEY.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record PendingUpdate(long id, boolean present) {}
+}
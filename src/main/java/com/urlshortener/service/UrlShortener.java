@@ -0,0 +1,56 @@
+package com.urlshortener.service;
+
+import com.urlshortener.exception.ExpiredException;
+import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.model.RedirectStatus;
+import com.urlshortener.model.ShortenedUrl;
+import com.urlshortener.model.UrlMapping;
+import com.urlshortener.model.UrlStatsResponse;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * What the API controller needs from the storage side. UrlShortenerService implements it on
+ * MongoDB and Redis; EmbeddedUrlShortener (the embedded profile) on local files.
+ */
+public interface UrlShortener {
+
+    /**
+     * @param redirectStatus status of the new link's redirects, null for redirect.defaultStatus;
+     *                       a URL that's already shortened keeps its link and status
+     */
+    String shortenUrl(String originalUrl, RedirectStatus redirectStatus);
+
+    /**
+     * Emits one result per distinct URL.
+     */
+    void shortenBatch(List<String> originalUrls, Consumer<ShortenedUrl> sink);
+
+    /**
+     * Resolves a code for a redirect and counts the click.
+     *
+     * @param visitor identifies the client for the link's unique-visitor count (the client IP)
+     */
+    UrlMapping getUrlMappingByShortCode(String shortCode, String visitor) throws ExpiredException, NotFoundException;
+
+    UrlStatsResponse getStats(String shortCode, LocalDate from, LocalDate to, ClickAnalyticsService.Granularity granularity);
+
+    /**
+     * Lifetime stats (no click series) of many links. Duplicate codes are looked up once; each
+     * distinct code goes to exactly one of sink and notFound, in request order within a chunk.
+     */
+    void getStatsBatch(List<String> shortCodes, Consumer<UrlStatsResponse> sink, Consumer<String> notFound);
+
+    /**
+     * Adds clicks counted elsewhere (e.g. redirects a CDN answered from its cache, from its logs)
+     * to the links' click counts, asynchronously. They count toward the current hour and add no
+     * unique visitors.
+     *
+     * @param clicks click count per short code
+     * @return the short codes that matched no link; their clicks are dropped
+     */
+    List<String> ingestClicks(Map<String, Long> clicks);
+}
@@ -1,38 +1,249 @@
 package com.urlshortener.service;
 
+import com.urlshortener.cache.TwoLevelCache;
+import com.urlshortener.metrics.ShortenerMetrics;
 import com.urlshortener.model.UrlMapping;
 import com.urlshortener.repo.UrlMappingRepository;
+import com.urlshortener.util.RedisLuaScripts;
+import com.urlshortener.util.SingleFlight;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Caching layer for URL mapping lookups.
  * Caches immutable fields (originalUrl, shortCode, createdAt) to avoid MongoDB hits on every redirect.
  * Mutable state (clickCount, expiryDate) should always be read from manual Redis keys,
  * not from the cached UrlMapping object.
+ *
+ * The shortCode lookup is programmatic rather than @Cacheable so a miss can be coalesced: when a
+ * popular link drops out of the cache, the concurrent redirects for it on this instance wait for
+ * one MongoDB load instead of each running their own. With cache.singleFlight.clusterLockMillis
+ * set, the instances coalesce too: the one holding a short Redis lock for the code loads it, the
+ * others poll the cache until it's there (or the lock is gone) and only then load themselves.
  */
+@Slf4j
 @Service
+@Profile("!embedded")
 @RequiredArgsConstructor
 public class UrlShortenerCacheService {
 
+    private static final String SHORT_CODE_CACHE = "urlMappingsByShortCode";
+    private static final String LOCK_KEY_PREFIX = "lock:urlMapping:";
+    private static final long LOCK_POLL_NANOS = Duration.ofMillis(5).toNanos();
+
+    private static final DefaultRedisScript<Long> LOCK_RELEASE_SCRIPT;
+
+    static {
+        LOCK_RELEASE_SCRIPT = new DefaultRedisScript<>();
+        LOCK_RELEASE_SCRIPT.setScriptText(RedisLuaScripts.LEASE_RELEASE_SCRIPT);
+        LOCK_RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
     private final UrlMappingRepository urlMappingRepository;
+    private final CacheManager cacheManager;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final ShortenerMetrics metrics;
+
+    @Value("${cache.singleFlight.clusterLockMillis}")
+    private long clusterLockMillis;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private Cache byShortCode;
+    private SingleFlight<String, UrlMapping> loads;
+
+    @PostConstruct
+    public void init() {
+        if (clusterLockMillis < 0) {
+            throw new IllegalStateException("cache.singleFlight.clusterLockMillis must not be negative, got " + clusterLockMillis);
+        }
+        byShortCode = cacheManager.getCache(SHORT_CODE_CACHE);
+        if (byShortCode == null) {
+            throw new IllegalStateException("No cache named " + SHORT_CODE_CACHE);
+        }
+        if (byShortCode instanceof TwoLevelCache twoLevel) {
+            twoLevel.setOrigin(key -> urlMappingRepository.findByShortCode((String) key).orElse(null));
+        }
+        loads = new SingleFlight<>(() -> metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.COALESCED));
+    }
 
-    @Cacheable(
-            value = "urlMappingsByShortCode",
-            key = "#shortCode",
-            unless = "#result == null"
-    )
     public UrlMapping getByShortCode(String shortCode) {
-        return urlMappingRepository.findByShortCode(shortCode).orElse(null);
+        Cache.ValueWrapper cached = byShortCode.get(shortCode);
+        if (cached != null && cached.get() != null) {
+            return (UrlMapping) cached.get();
+        }
+        return loads.load(shortCode, () -> load(shortCode));
+    }
+
+    /**
+     * Batch form of getByShortCode: one multi-key cache lookup (local tier, then one Redis MGET)
+     * and one $in query for the codes neither tier has, which are then cached in one pipeline.
+     * Not coalesced with concurrent loads.
+     *
+     * @return the mappings by short code; codes with no mapping are left out
+     */
+    public Map<String, UrlMapping> getAllByShortCode(List<String> shortCodes) {
+        Map<String, UrlMapping> mappings = new LinkedHashMap<>();
+        if (byShortCode instanceof TwoLevelCache twoLevel) {
+            twoLevel.getAll(shortCodes).forEach((key, value) -> mappings.put((String) key, (UrlMapping) value));
+        } else {
+            for (String shortCode : shortCodes) {
+                Cache.ValueWrapper cached = byShortCode.get(shortCode);
+                if (cached != null && cached.get() != null) {
+                    mappings.put(shortCode, (UrlMapping) cached.get());
+                }
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String shortCode : shortCodes) {
+            if (!mappings.containsKey(shortCode)) {
+                missing.add(shortCode);
+            }
+        }
+        if (missing.isEmpty()) {
+            return mappings;
+        }
+
+        metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.ORIGIN, missing.size());
+        Map<String, UrlMapping> loaded = new LinkedHashMap<>();
+        for (UrlMapping mapping : urlMappingRepository.findByShortCodeIn(missing)) {
+            loaded.put(mapping.getShortCode(), mapping);
+        }
+        if (byShortCode instanceof TwoLevelCache twoLevel) {
+            twoLevel.putAll(loaded);
+        } else {
+            loaded.forEach(byShortCode::put);
+        }
+        mappings.putAll(loaded);
+        return mappings;
     }
 
+    /**
+     * Dedupe lookup by UrlFingerprint — a fixed 22-char key for both the cache and the Mongo index,
+     * however long the URL is.
+     */
     @Cacheable(
-            value = "urlMappingsByOriginalUrl",
-            key = "#originalUrl",
+            value = "urlMappingsByFingerprint",
+            key = "#urlFingerprint",
             unless = "#result == null"
     )
-    public UrlMapping getShortCodeByOriginalURL(String originalUrl) {
-        return urlMappingRepository.findByOriginalUrl(originalUrl).orElse(null);
+    public UrlMapping getByFingerprint(String urlFingerprint) {
+        return urlMappingRepository.findByUrlFingerprint(urlFingerprint).orElse(null);
+    }
+
+    /**
+     * Evicts a mapping from both caches (local and Redis tiers, on every instance).
+     * Must be called whenever a mapping is deleted so stale redirects aren't served.
+     */
+    @Caching(evict = {
+            @CacheEvict(value = SHORT_CODE_CACHE, key = "#mapping.shortCode"),
+            // Derived from originalUrl so mappings created before the fingerprint backfill are evicted too
+            @CacheEvict(value = "urlMappingsByFingerprint",
+                    key = "T(com.urlshortener.util.UrlFingerprint).of(#mapping.originalUrl)")
+    })
+    public void evict(UrlMapping mapping) {
+        // Eviction handled by the annotations
+    }
+
+    // Leader of this instance's single flight for shortCode
+    private UrlMapping load(String shortCode) {
+        if (clusterLockMillis == 0) {
+            return loadAndCache(shortCode);
+        }
+
+        String lockKey = LOCK_KEY_PREFIX + shortCode;
+        Boolean locked = tryLock(lockKey);
+        if (locked == null) {
+            // Redis is unavailable: no one to coalesce with
+            return loadAndCache(shortCode);
+        }
+        if (locked) {
+            try {
+                return loadAndCache(shortCode);
+            } finally {
+                unlock(lockKey);
+            }
+        }
+
+        // Another instance is loading it: wait for its put, at most for the lock's lifetime
+        long deadline = System.nanoTime() + Duration.ofMillis(clusterLockMillis).toNanos();
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(LOCK_POLL_NANOS);
+            Cache.ValueWrapper cached = byShortCode.get(shortCode);
+            if (cached != null && cached.get() != null) {
+                metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.CLUSTER);
+                return (UrlMapping) cached.get();
+            }
+            if (!isLocked(lockKey)) {
+                // Released without a put (no such link) or expired: load it ourselves
+                break;
+            }
+        }
+        return loadAndCache(shortCode);
+    }
+
+    private UrlMapping loadAndCache(String shortCode) {
+        metrics.recordCacheLoad(ShortenerMetrics.CacheLoad.ORIGIN);
+        UrlMapping mapping = urlMappingRepository.findByShortCode(shortCode).orElse(null);
+        if (mapping != null) {
+            byShortCode.put(shortCode, mapping);
+        }
+        return mapping;
+    }
+
+    /**
+     * @return whether the lock was taken, or null if Redis couldn't be asked
+     */
+    private Boolean tryLock(String lockKey) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        try {
+            Boolean locked = redisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, instanceId, Duration.ofMillis(clusterLockMillis));
+            circuitBreaker.recordSuccess();
+            return Boolean.TRUE.equals(locked);
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure();
+            log.debug("Cache load lock for {} unavailable: {}", lockKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isLocked(String lockKey) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(lockKey));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void unlock(String lockKey) {
+        try {
+            redisTemplate.execute(LOCK_RELEASE_SCRIPT, List.of(lockKey), instanceId);
+        } catch (RuntimeException e) {
+            // Expires on its own after clusterLockMillis
+            log.debug("Cache load lock {} not released: {}", lockKey, e.getMessage());
+        }
     }
 }
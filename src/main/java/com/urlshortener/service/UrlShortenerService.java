@@ -2,140 +2,327 @@ package com.urlshortener.service;
 
 import com.urlshortener.exception.ExpiredException;
 import com.urlshortener.exception.NotFoundException;
+import com.urlshortener.metrics.ShortenerMetrics;
+import com.urlshortener.metrics.ShortenerMetrics.RedirectStage;
+import com.urlshortener.model.RedirectStatus;
+import com.urlshortener.model.ShortenedUrl;
 import com.urlshortener.model.UrlMapping;
 import com.urlshortener.model.UrlStatsResponse;
 import com.urlshortener.repo.UrlMappingRepository;
-import com.urlshortener.util.Base62Encoder;
-import com.urlshortener.util.RedisLuaScripts;
+import com.urlshortener.util.ShortCodeCodec;
+import com.urlshortener.util.UrlFingerprint;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
+@Profile("!embedded")
 @RequiredArgsConstructor
-public class UrlShortenerService {
+public class UrlShortenerService implements UrlShortener {
 
     private final UrlMappingRepository urlMappingRepository;
     private final CounterService counterService;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final BatchShortenService batchShortenService;
+    private final BatchStatsService batchStatsService;
+    private final LinkStateStore linkStateStore;
     private final UrlShortenerCacheService urlShortenerCacheService;
+    private final ClickBufferService clickBufferService;
+    private final ClickAnalyticsService clickAnalytics;
+    private final ShortCodeCodec shortCodeCodec;
+    private final ShortCodeFilter shortCodeFilter;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final FallbackClickService fallbackClickService;
+    private final HotKeyService hotKeyService;
+    private final ShortenerMetrics metrics;
 
-    private static final String DIRTY_SET_KEY = "dirty_urls";
-
-    private static final DefaultRedisScript<Long> REDIRECT_SCRIPT;
-
-    static {
-        REDIRECT_SCRIPT = new DefaultRedisScript<>();
-        REDIRECT_SCRIPT.setScriptText(RedisLuaScripts.REDIRECT_SCRIPT);
-        REDIRECT_SCRIPT.setResultType(Long.class);
-    }
-
-    public String shortenUrl(String originalUrl) {
-        UrlMapping existing = urlShortenerCacheService.getShortCodeByOriginalURL(originalUrl);
+    /**
+     * Returns the existing code for the URL (compared by UrlFingerprint) or mints a new one.
+     * The insert is guarded by the unique fingerprint index, so concurrent shortens of the same URL
+     * converge on one code: the loser's insert fails and it returns the winner's code instead.
+     */
+    @Override
+    public String shortenUrl(String originalUrl, RedirectStatus redirectStatus) {
+        String fingerprint = UrlFingerprint.of(originalUrl);
+        UrlMapping existing = urlShortenerCacheService.getByFingerprint(fingerprint);
         if (existing != null) {
             return existing.getShortCode();
         }
 
         long id = counterService.getNextSequence("url_sequence");
-        String shortCode = Base62Encoder.encode(id);
+        String shortCode = shortCodeCodec.encode(id);
 
         LocalDateTime expiryDate = LocalDateTime.now().plusDays(30);
 
         UrlMapping urlMapping = new UrlMapping();
         urlMapping.setOriginalUrl(originalUrl);
+        urlMapping.setUrlFingerprint(fingerprint);
         urlMapping.setShortCode(shortCode);
         urlMapping.setClickCount(0L);
         urlMapping.setExpiryDate(expiryDate);
-        urlMappingRepository.save(urlMapping);
-
-        redisTemplate.opsForValue().set("url:" + shortCode + ":clicks", "0", Duration.ofDays(30));
-        redisTemplate.opsForValue().set("url:" + shortCode + ":expiry", expiryDate.toString(), Duration.ofDays(30));
+        urlMapping.setRedirectStatus(redirectStatus != null ? redirectStatus.code() : null);
+        try {
+            urlMappingRepository.insert(urlMapping);
+        } catch (DuplicateKeyException e) {
+            // Lost the race to a concurrent shorten of the same URL; the ID is simply skipped
+            UrlMapping winner = urlMappingRepository.findByUrlFingerprint(fingerprint)
+                    .orElseThrow(() -> e);
+            return winner.getShortCode();
+        }
+        shortCodeFilter.add(id);
+        initLinkState(urlMapping);
 
         return shortCode;
     }
 
-    public UrlMapping getUrlMappingByShortCode(String shortCode) throws ExpiredException, NotFoundException {
+    @Override
+    public void shortenBatch(List<String> originalUrls, Consumer<ShortenedUrl> sink) {
+        batchShortenService.shortenBatch(originalUrls, sink);
+    }
+
+    @Override
+    public UrlMapping getUrlMappingByShortCode(String shortCode, String visitor) throws ExpiredException, NotFoundException {
+        long id = knownId(shortCode);
+
+        UrlMapping pinned = servePinned(shortCode, visitor);
+        if (pinned != null) {
+            return pinned;
+        }
 
         // @Cacheable layer: caches immutable fields (originalUrl, shortCode, createdAt) to avoid MongoDB hits
+        long start = System.nanoTime();
         UrlMapping mapping = urlShortenerCacheService.getByShortCode(shortCode);
+        metrics.recordRedirectStage(RedirectStage.CACHE, start);
 
         if (mapping == null) {
             throw new NotFoundException("Short code not found");
         }
 
-        String clickKey = "url:" + shortCode + ":clicks";
-        String expiryKey = "url:" + shortCode + ":expiry";
+        if (countLocally(id, mapping, visitor)) {
+            return mapping;
+        }
+
+        start = System.nanoTime();
+        if (!circuitBreaker.allowRequest()) {
+            // Redis is known to be down: don't wait for the EVAL to fail
+            countClickWithoutRedis(mapping, start);
+            return mapping;
+        }
 
         try {
-            // Single Lua script: check expiry + increment clicks + mark dirty — one round-trip
-            Long result = redisTemplate.execute(
-                    REDIRECT_SCRIPT,
-                    Arrays.asList(clickKey, expiryKey, DIRTY_SET_KEY),
-                    String.valueOf(mapping.getClickCount()),       // fallback clicks from DB
-                    mapping.getExpiryDate().toString(),            // fallback expiry from DB
-                    LocalDateTime.now().toString(),                // current time
-                    shortCode                                     // shortCode for dirty set
-            );
-
-            if (result != null && result == -1) {
-                throw new ExpiredException("Short code expired");
-            }
+            // Single Lua script: check expiry + increment clicks + analytics + mark dirty — one round-trip
+            Long result = linkStateStore.recordClick(id, mapping, visitor);
+            scriptSucceeded(result, start);
 
         } catch (ExpiredException | NotFoundException e) {
             throw e;
         } catch (Exception e) {
-            log.warn("Redis failed, falling back to DB for shortCode={}", shortCode, e);
+            scriptFailed(mapping, e, start);
+        }
+
+        return mapping;
+    }
+
+    /*
+     * The steps of a redirect, shared with ReactiveRedirectService, which runs the same sequence
+     * with the cache lookup and the script call on the reactive drivers.
+     */
+
+    /**
+     * Rejects malformed and unknown codes in memory, before touching any cache or DB.
+     *
+     * @return the decoded ID
+     */
+    long knownId(String shortCode) {
+        long start = System.nanoTime();
+        long id = shortCodeCodec.decode(shortCode);
+        boolean known = id >= 0 && shortCodeFilter.mightExist(id);
+        metrics.recordRedirectStage(RedirectStage.FILTER, start);
+        if (!known) {
+            throw new NotFoundException("Short code not found");
+        }
+        return id;
+    }
+
+    /**
+     * Hot link: served from the pinned copy, click aggregated locally like buffered mode.
+     *
+     * @return the pinned mapping, or null if the link isn't pinned
+     */
+    UrlMapping servePinned(String shortCode, String visitor) {
+        if (!hotKeyService.isEnabled()) {
+            return null;
+        }
+        UrlMapping pinned = hotKeyService.getPinned(shortCode);
+        if (pinned == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        if (pinned.getExpiryDate().isBefore(LocalDateTime.now())) {
+            throw new ExpiredException("Short code expired");
+        }
+        hotKeyService.recordPinnedClick(pinned, visitor);
+        metrics.recordRedirectStage(RedirectStage.PINNED, start);
+        return pinned;
+    }
+
+    /**
+     * Counts the redirect towards pinning, and in buffered mode counts the click too.
+     *
+     * @return whether the click was counted, so there's no script to run
+     */
+    boolean countLocally(long id, UrlMapping mapping, String visitor) {
+        if (hotKeyService.isEnabled()) {
+            hotKeyService.record(id, mapping);
+        }
+
+        if (!clickBufferService.isEnabled()) {
+            return false;
+        }
+        // Buffered mode: expiry is fixed at creation, so the cached mapping is enough to check it,
+        // and the click is accumulated in memory and flushed to Redis in batches
+        long start = System.nanoTime();
+        if (mapping.getExpiryDate().isBefore(LocalDateTime.now())) {
+            throw new ExpiredException("Short code expired");
+        }
+        clickBufferService.record(mapping, visitor);
+        metrics.recordRedirectStage(RedirectStage.BUFFER, start);
+        return true;
+    }
+
+    void scriptSucceeded(Long result, long start) {
+        circuitBreaker.recordSuccess();
+        metrics.recordRedirectStage(RedirectStage.SCRIPT, start);
+
+        if (result != null && result == -1) {
+            throw new ExpiredException("Short code expired");
+        }
+    }
 
+    void scriptFailed(UrlMapping mapping, Throwable e, long start) {
+        log.warn("Redis failed, falling back to DB for shortCode={}: {}", mapping.getShortCode(), e.getMessage());
+        circuitBreaker.recordFailure();
+        // Includes the time the failed EVAL took, since the caller waited for it too
+        countClickWithoutRedis(mapping, start);
+    }
+
+    /**
+     * Degraded mode: expiry from the mapping, click buffered for a batched $inc into MongoDB.
+     */
+    void countClickWithoutRedis(UrlMapping mapping, long start) {
+        metrics.recordRedirectFallback();
+        try {
             if (mapping.getExpiryDate().isBefore(LocalDateTime.now())) {
                 throw new ExpiredException("Short code expired");
             }
-
-            mapping.setClickCount(mapping.getClickCount() + 1);
-            urlMappingRepository.save(mapping);  // fallback DB update
+            fallbackClickService.record(mapping);
+        } finally {
+            metrics.recordRedirectStage(RedirectStage.FALLBACK, start);
         }
-
-        return mapping;
     }
 
-    // Mutable state (clicks, expiry) is always read from Redis manual keys, not from the @Cacheable object.
-    public UrlStatsResponse getStats(String shortCode) {
+    /**
+     * Click counts are read from Redis (LinkStateStore), not from the @Cacheable object.
+     * When either bound is given a click series over [from, to] (UTC days) is added; the missing
+     * bound defaults to the other, or to today.
+     */
+    @Override
+    public UrlStatsResponse getStats(String shortCode, LocalDate from, LocalDate to,
+                                     ClickAnalyticsService.Granularity granularity) {
+        if (!mightExist(shortCode)) {
+            throw new NotFoundException("Short code not found");
+        }
+
         UrlMapping mapping = urlShortenerCacheService.getByShortCode(shortCode);
 
         if (mapping == null) {
             throw new NotFoundException("Short code not found");
         }
 
-        String clickKey = "url:" + shortCode + ":clicks";
-        String expiryKey = "url:" + shortCode + ":expiry";
+        Long clicks = null;
+        if (circuitBreaker.allowRequest()) {
+            try {
+                clicks = linkStateStore.getClicks(shortCode);
+                circuitBreaker.recordSuccess();
+                if (clicks == null) {
+                    clicks = mapping.getClickCount();
+                }
+            } catch (Exception e) {
+                log.warn("Redis failed reading stats for shortCode={}, falling back to DB: {}", shortCode, e.getMessage());
+                circuitBreaker.recordFailure();
+            }
+        }
+        if (clicks == null) {
+            metrics.recordStatsFallback();
+            clicks = mapping.getClickCount();
+        }
 
-        Long clicks = 0L;
-        String expiryStr = null;
+        // Expiry is fixed at creation, so the DB value is authoritative
+        UrlStatsResponse stats = UrlStatsResponse.of(mapping, clicks);
 
-        try {
-            String clickStr = redisTemplate.opsForValue().get(clickKey);
-            clicks = (clickStr != null) ? Long.parseLong(clickStr) : mapping.getClickCount();
+        if (from != null || to != null) {
+            LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+            LocalDate start = from != null ? from : end;
+            stats.setGranularity(granularity.name().toLowerCase());
+            stats.setSeries(clickAnalytics.series(shortCode, start, end, granularity));
+        }
 
-            expiryStr = redisTemplate.opsForValue().get(expiryKey);
-        } catch (Exception e) {
-            log.warn("Redis failed reading stats for shortCode={}, falling back to DB", shortCode, e);
-            clicks = mapping.getClickCount();
-            expiryStr = mapping.getExpiryDate().toString();
+        return stats;
+    }
+
+    @Override
+    public void getStatsBatch(List<String> shortCodes, Consumer<UrlStatsResponse> sink, Consumer<String> notFound) {
+        batchStatsService.getStatsBatch(shortCodes, sink, notFound);
+    }
+
+    /**
+     * Ingested clicks go through ClickBufferService, so they reach Redis with the next flush and
+     * MongoDB with the sync after that, like buffered redirects.
+     */
+    @Override
+    public List<String> ingestClicks(Map<String, Long> clicks) {
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : clicks.entrySet()) {
+            String shortCode = entry.getKey();
+            UrlMapping mapping = mightExist(shortCode) ? urlShortenerCacheService.getByShortCode(shortCode) : null;
+            if (mapping == null) {
+                unknown.add(shortCode);
+                metrics.recordIngestedClicks(false, entry.getValue());
+                continue;
+            }
+            clickBufferService.add(mapping, entry.getValue());
+            metrics.recordIngestedClicks(true, entry.getValue());
         }
+        return unknown;
+    }
 
-        UrlStatsResponse stats = new UrlStatsResponse();
-        stats.setOriginalUrl(mapping.getOriginalUrl());
-        stats.setShortCode(mapping.getShortCode());
-        stats.setClickCount(clicks);
-        stats.setCreatedAt(mapping.getCreatedAt().toString());
-        stats.setExpiryDate(expiryStr);
+    boolean mightExist(String shortCode) {
+        long id = shortCodeCodec.decode(shortCode);
+        return id >= 0 && shortCodeFilter.mightExist(id);
+    }
 
-        return stats;
+    // The link is already committed, so a Redis failure here must not fail the shorten: the
+    // redirect script seeds missing state from the DB values on the first click
+    private void initLinkState(UrlMapping urlMapping) {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            linkStateStore.init(List.of(urlMapping));
+            circuitBreaker.recordSuccess();
+        } catch (Exception e) {
+            log.warn("Failed to initialize Redis keys for shortCode={}: {}", urlMapping.getShortCode(), e.getMessage());
+            circuitBreaker.recordFailure();
+        }
     }
 }
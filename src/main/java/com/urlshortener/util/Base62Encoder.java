@@ -1,14 +1,87 @@
 package com.urlshortener.util;
 
+import java.util.Arrays;
+
+/**
+ * Base62 codec over [a-zA-Z0-9] — 'a' is the zero digit.
+ * Encoding writes into a pre-sized char array in one pass; decoding is allocation-free.
+ */
 public class Base62Encoder {
     private static final String BASE62 = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
 
+    private static final char[] DIGITS = BASE62.toCharArray();
+
+    // ASCII → digit value, -1 for characters outside the alphabet
+    private static final byte[] VALUES = new byte[128];
+
+    // Longest code that can hold Long.MAX_VALUE
+    public static final int MAX_LENGTH = 11;
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+        }
+    }
+
     public static String encode(long num) {
-        StringBuilder sb = new StringBuilder();
-        while (num > 0) {
-            sb.append(BASE62.charAt((int)(num % 62)));
+        return encode(num, 0);
+    }
+
+    /**
+     * Encodes num, left-padded with the zero digit ('a') to at least width characters.
+     * Numbers that need more than width digits are never truncated.
+     */
+    public static String encode(long num, int width) {
+        if (num < 0) {
+            throw new IllegalArgumentException("Cannot encode negative number: " + num);
+        }
+
+        int length = Math.max(width, digitCount(num));
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (num % 62)];
+            num /= 62;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes a Base62 code back to its number.
+     *
+     * @return the number, or -1 if the code is empty, contains a character outside
+     *         the alphabet, or overflows a long
+     */
+    public static long decode(CharSequence code) {
+        int length = code.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return -1;
+        }
+
+        long num = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            if (num > (Long.MAX_VALUE - value) / 62) {
+                return -1;
+            }
+            num = num * 62 + value;
+        }
+        return num;
+    }
+
+    /**
+     * Number of Base62 digits needed for num (1 for zero).
+     */
+    public static int digitCount(long num) {
+        int count = 1;
+        while (num >= 62) {
             num /= 62;
+            count++;
         }
-        return sb.reverse().toString();
+        return count;
     }
 }
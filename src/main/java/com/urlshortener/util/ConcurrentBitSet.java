@@ -0,0 +1,139 @@
+package com.urlshortener.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Growable, thread-safe bit set indexed by non-negative long.
+ * Bits live in fixed-size segments that are allocated on first write, so sparse high indexes
+ * don't cost memory for the gaps below them. Reads are lock-free; writes are a CAS on one word.
+ *
+ * Can be converted to and from the Redis bitmap byte layout (bit 0 is the most significant
+ * bit of byte 0), so it can be shared through a Redis string.
+ */
+public final class ConcurrentBitSet {
+
+    private static final int WORDS_PER_SEGMENT_SHIFT = 14;                      // 16K words
+    private static final int WORDS_PER_SEGMENT = 1 << WORDS_PER_SEGMENT_SHIFT;
+    private static final int BITS_PER_SEGMENT_SHIFT = WORDS_PER_SEGMENT_SHIFT + 6; // 1M bits = 128KB
+    private static final int MAX_SEGMENTS = 1 << 14;                             // 16G bits
+
+    public static final long MAX_BITS = (long) MAX_SEGMENTS << BITS_PER_SEGMENT_SHIFT;
+
+    private final AtomicReferenceArray<AtomicLongArray> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+
+    public boolean get(long index) {
+        if (index < 0 || index >= MAX_BITS) {
+            return false;
+        }
+        AtomicLongArray segment = segments.get((int) (index >>> BITS_PER_SEGMENT_SHIFT));
+        if (segment == null) {
+            return false;
+        }
+        return (segment.get(wordIndex(index)) & (1L << index)) != 0;
+    }
+
+    public void set(long index) {
+        AtomicLongArray segment = segmentFor(index);
+        int word = wordIndex(index);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = segment.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!segment.compareAndSet(word, current, current | mask));
+    }
+
+    public void clear(long index) {
+        if (index < 0 || index >= MAX_BITS) {
+            return;
+        }
+        AtomicLongArray segment = segments.get((int) (index >>> BITS_PER_SEGMENT_SHIFT));
+        if (segment == null) {
+            return;
+        }
+        int word = wordIndex(index);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = segment.get(word);
+            if ((current & mask) == 0) {
+                return;
+            }
+        } while (!segment.compareAndSet(word, current, current & ~mask));
+    }
+
+    /**
+     * ORs a Redis bitmap (as returned by GET) into this set. Bits are never cleared here,
+     * so concurrent set() calls are never lost.
+     */
+    public void orRedisBitmap(byte[] bitmap) {
+        for (int i = 0; i < bitmap.length; i++) {
+            int b = bitmap[i] & 0xFF;
+            while (b != 0) {
+                int highest = Integer.numberOfLeadingZeros(b) - 24;   // 0 = MSB of the byte
+                set((long) i * 8 + highest);
+                b &= ~(0x80 >>> highest);
+            }
+        }
+    }
+
+    /**
+     * Encodes the set in the Redis bitmap layout, up to and including the highest set bit.
+     */
+    public byte[] toRedisBitmap() {
+        int lastSegment = -1;
+        for (int s = MAX_SEGMENTS - 1; s >= 0; s--) {
+            if (segments.get(s) != null) {
+                lastSegment = s;
+                break;
+            }
+        }
+        if (lastSegment < 0) {
+            return new byte[0];
+        }
+
+        long byteCount = ((long) (lastSegment + 1) << BITS_PER_SEGMENT_SHIFT) / 8;
+        if (byteCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Bit set too large to encode: " + byteCount + " bytes");
+        }
+
+        byte[] bitmap = new byte[(int) byteCount];
+        for (int s = 0; s <= lastSegment; s++) {
+            AtomicLongArray segment = segments.get(s);
+            if (segment == null) {
+                continue;
+            }
+            long base = (long) s << BITS_PER_SEGMENT_SHIFT;
+            for (int w = 0; w < WORDS_PER_SEGMENT; w++) {
+                long word = segment.get(w);
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    long index = base + ((long) w << 6) + bit;
+                    bitmap[(int) (index >>> 3)] |= (byte) (0x80 >>> (index & 7));
+                    word &= word - 1;
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    private AtomicLongArray segmentFor(long index) {
+        if (index < 0 || index >= MAX_BITS) {
+            throw new IndexOutOfBoundsException("Bit index out of range: " + index);
+        }
+        int s = (int) (index >>> BITS_PER_SEGMENT_SHIFT);
+        AtomicLongArray segment = segments.get(s);
+        if (segment == null) {
+            segments.compareAndSet(s, null, new AtomicLongArray(WORDS_PER_SEGMENT));
+            segment = segments.get(s);
+        }
+        return segment;
+    }
+
+    private static int wordIndex(long index) {
+        return (int) ((index >>> 6) & (WORDS_PER_SEGMENT - 1));
+    }
+}
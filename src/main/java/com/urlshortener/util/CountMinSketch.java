@@ -0,0 +1,63 @@
+package com.urlshortener.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe count-min sketch over long keys: DEPTH rows of width counters, each key counted in
+ * one counter per row. The estimate is the smallest of its counters — never below the true count,
+ * and above it by at most ~e/width of the total with high probability (1 - e^-DEPTH).
+ *
+ * Lock-free: add() is DEPTH atomic increments. Fixed memory (DEPTH × width longs) however many
+ * distinct keys are counted, so it can sit on the redirect path.
+ */
+public final class CountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final AtomicLongArray counters;
+    private final int mask;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int width) {
+        int rowWidth = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.mask = rowWidth - 1;
+        this.counters = new AtomicLongArray(DEPTH * rowWidth);
+    }
+
+    /**
+     * Counts one occurrence of key.
+     *
+     * @return the estimated count of key, including this occurrence
+     */
+    public long add(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(row, key)));
+        }
+        return estimate;
+    }
+
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, key)));
+        }
+        return estimate;
+    }
+
+    private int index(int row, long key) {
+        return row * (mask + 1) + (int) (mix(key ^ SEEDS[row]) & mask);
+    }
+
+    // SplitMix64 finalizer: consecutive IDs land in unrelated columns
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
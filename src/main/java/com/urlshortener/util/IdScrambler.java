@@ -0,0 +1,102 @@
+package com.urlshortener.util;
+
+/**
+ * Keyed bijective permutation over [0, 62^width), so sequential IDs map to
+ * non-sequential, fixed-width short codes without a lookup table.
+ *
+ * A 4-round balanced Feistel network permutes the smallest even bit-width that covers the domain;
+ * values that land outside the domain are re-permuted (cycle walking) until they fall inside it.
+ * Both directions are allocation-free; the padded domain is at most 4x the real one, so walks are short.
+ */
+public final class IdScrambler {
+
+    private static final int ROUNDS = 4;
+
+    private final long domainSize;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public IdScrambler(int width, long key) {
+        if (width < 1 || width > 10) {
+            throw new IllegalArgumentException("Scrambling width must be between 1 and 10, got " + width);
+        }
+
+        long size = 1;
+        for (int i = 0; i < width; i++) {
+            size *= 62;
+        }
+        this.domainSize = size;
+
+        int bits = 64 - Long.numberOfLeadingZeros(size - 1);
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+
+        long seed = key;
+        for (int i = 0; i < ROUNDS; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = seed;
+        }
+    }
+
+    public long domainSize() {
+        return domainSize;
+    }
+
+    public long scramble(long id) {
+        checkDomain(id);
+        long value = id;
+        do {
+            value = permute(value);
+        } while (value >= domainSize);
+        return value;
+    }
+
+    public long unscramble(long scrambled) {
+        checkDomain(scrambled);
+        long value = scrambled;
+        do {
+            value = invert(value);
+        } while (value >= domainSize);
+        return value;
+    }
+
+    private long permute(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, i);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long invert(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(left, i);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long round(long half, int i) {
+        return mix(half ^ roundKeys[i]) & halfMask;
+    }
+
+    private void checkDomain(long value) {
+        if (value < 0 || value >= domainSize) {
+            throw new IllegalArgumentException("Value " + value + " outside scrambling domain [0, " + domainSize + ")");
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
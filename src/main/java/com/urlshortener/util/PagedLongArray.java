@@ -0,0 +1,74 @@
+package com.urlshortener.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Growable array of longs indexed by a (dense) long, e.g. a decoded link ID. Storage is allocated
+ * in pages of PAGE_SIZE slots the first time a slot in the page is written; unwritten slots read 0.
+ *
+ * Reads and updates are lock-free atomic operations on the page; only allocating a page takes a lock.
+ * Memory is 8 bytes per slot up to the highest written index, with no per-entry object.
+ */
+public final class PagedLongArray {
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    public long get(long index) {
+        AtomicLongArray page = pageOrNull(index);
+        return page != null ? page.get((int) (index & PAGE_MASK)) : 0;
+    }
+
+    public void set(long index, long value) {
+        page(index).set((int) (index & PAGE_MASK), value);
+    }
+
+    public long addAndGet(long index, long delta) {
+        return page(index).addAndGet((int) (index & PAGE_MASK), delta);
+    }
+
+    public long incrementAndGet(long index) {
+        return page(index).incrementAndGet((int) (index & PAGE_MASK));
+    }
+
+    /**
+     * @return one past the highest index that has a page, i.e. an upper bound on written indexes
+     */
+    public long capacity() {
+        return (long) pages.length << PAGE_SHIFT;
+    }
+
+    private AtomicLongArray pageOrNull(long index) {
+        long pageIndex = index >>> PAGE_SHIFT;
+        AtomicLongArray[] current = pages;
+        return pageIndex < current.length ? current[(int) pageIndex] : null;
+    }
+
+    private AtomicLongArray page(long index) {
+        AtomicLongArray page = pageOrNull(index);
+        return page != null ? page : allocate(index);
+    }
+
+    private synchronized AtomicLongArray allocate(long index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Negative index " + index);
+        }
+        int pageIndex = Math.toIntExact(index >>> PAGE_SHIFT);
+        AtomicLongArray[] current = pages;
+        if (pageIndex >= current.length) {
+            AtomicLongArray[] grown = new AtomicLongArray[Math.max(pageIndex + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        } else if (current[pageIndex] != null) {
+            return current[pageIndex];
+        } else {
+            current = current.clone();
+        }
+        current[pageIndex] = new AtomicLongArray(PAGE_SIZE);
+        pages = current;
+        return current[pageIndex];
+    }
+}
@@ -8,53 +8,199 @@ public final class RedisLuaScripts {
     private RedisLuaScripts() {}
 
     /**
-     * Rate limiter: atomic increment + expire.
+     * Rate limiter, fixed window: lease a chunk of the client's quota for the current window.
+     * The instance spends the lease locally, so Redis sees one call per lease instead of one per request.
      *
-     * KEYS[1] = rate_limit:{ip}
-     * ARGV[1] = window in seconds
+     * KEYS[1] = rate_limit:{endpoint}:{client}
+     * ARGV[1] = max requests per window
+     * ARGV[2] = window in milliseconds
+     * ARGV[3] = permits wanted (the lease size)
+     * ARGV[4] = permits needed (the request's own permits; less than this grants nothing)
      *
-     * Returns: current count after increment
+     * Returns: {permits granted, milliseconds until the window resets}
      */
-    public static final String RATE_LIMIT_SCRIPT =
-            "local count = redis.call('INCR', KEYS[1]) " +
-            "if count == 1 then " +
-            "    redis.call('EXPIRE', KEYS[1], tonumber(ARGV[1])) " +
+    public static final String RATE_LIMIT_LEASE_SCRIPT =
+            "local used = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local grant = math.min(tonumber(ARGV[3]), tonumber(ARGV[1]) - used) " +
+            "if grant < tonumber(ARGV[4]) then " +
+            "    return {0, redis.call('PTTL', KEYS[1])} " +
             "end " +
-            "return count";
+            "redis.call('INCRBY', KEYS[1], grant) " +
+            // Set the TTL on the window's first lease — atomic with the INCRBY, so the key can't outlive its window
+            "if redis.call('PTTL', KEYS[1]) < 0 then " +
+            "    redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return {grant, redis.call('PTTL', KEYS[1])}";
+
+    /**
+     * Rate limiter, sliding window counter: like RATE_LIMIT_LEASE_SCRIPT, but usage is the current
+     * window's count plus the previous window's count weighted by how much of it still overlaps
+     * the sliding window. Removes the 2x burst a fixed window allows at its boundary.
+     *
+     * KEYS[1] = rate_limit:{endpoint}:{client}:{current window index}
+     * KEYS[2] = rate_limit:{endpoint}:{client}:{previous window index}
+     * ARGV[1] = max requests per window
+     * ARGV[2] = window in milliseconds
+     * ARGV[3] = milliseconds elapsed in the current window
+     * ARGV[4] = permits wanted (the lease size)
+     * ARGV[5] = permits needed
+     *
+     * Returns: {permits granted, milliseconds until the current window ends}
+     */
+    public static final String RATE_LIMIT_SLIDING_LEASE_SCRIPT =
+            "local window = tonumber(ARGV[2]) " +
+            "local elapsed = tonumber(ARGV[3]) " +
+            "local previous = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local used = current + math.ceil(previous * (window - elapsed) / window) " +
+            "local grant = math.min(tonumber(ARGV[4]), tonumber(ARGV[1]) - used) " +
+            "if grant < tonumber(ARGV[5]) then " +
+            "    return {0, window - elapsed} " +
+            "end " +
+            "redis.call('INCRBY', KEYS[1], grant) " +
+            // Kept for two windows: it is the previous window for the whole of the next one
+            "redis.call('PEXPIRE', KEYS[1], window * 2) " +
+            "return {grant, window - elapsed}";
+
+    /**
+     * Shared prelude for the per-link scripts: makes sure a link's state is in the compact layout
+     * (see LinkStateStore) and returns its expiry.
+     *
+     * If the link's fields are missing, they are created from the legacy url:{code}:clicks key when it
+     * still exists (migrating it and deleting the legacy keys), otherwise from the DB fallback values.
+     * The legacy expiry string is never parsed: expiry is fixed at creation, so the DB value is the same instant.
+     */
+    private static final String ENSURE_COMPACT_FUNCTION =
+            "local function ensure(bucket, legacyClicks, legacyExpiry, clicksField, expiryField, fallbackClicks, fallbackExpiry) " +
+            "    local expiry = redis.call('HGET', bucket, expiryField) " +
+            "    if expiry then " +
+            "        return expiry " +
+            "    end " +
+            "    local clicks = redis.call('GET', legacyClicks) or fallbackClicks " +
+            "    redis.call('HSET', bucket, clicksField, clicks, expiryField, fallbackExpiry) " +
+            "    redis.call('DEL', legacyClicks, legacyExpiry) " +
+            "    return fallbackExpiry " +
+            "end ";
 
     /**
-     * Redirect: check expiry + increment clicks + mark dirty — all in one round-trip.
+     * Redirect: check expiry + increment clicks + record analytics + mark dirty — all in one round-trip.
      *
-     * KEYS[1] = url:{shortCode}:clicks
-     * KEYS[2] = url:{shortCode}:expiry
-     * KEYS[3] = dirty_urls (set of recently-modified shortCodes for sync)
+     * KEYS[1] = link:{bucket} (compact per-link state, see LinkStateStore)
+     * KEYS[2] = url:{shortCode}:clicks (legacy layout, migrated on first access)
+     * KEYS[3] = url:{shortCode}:expiry (legacy layout)
+     * KEYS[4] = dirty_urls:{shard} (set of recently-modified shortCodes for sync, shard by shortCode hash)
+     * KEYS[5] = clicks:h:{hour} (hourly click counts, see ClickAnalyticsService)
+     * KEYS[6] = uniques:{shortCode}:{day} (HyperLogLog of the day's visitors)
      *
-     * ARGV[1] = fallback click count from DB (used if Redis key missing)
-     * ARGV[2] = fallback expiry from DB (used if Redis key missing)
-     * ARGV[3] = current time as ISO string (e.g. "2026-02-12T10:30:00")
-     * ARGV[4] = shortCode (to add to dirty set)
+     * ARGV[1] = clicks field in the bucket
+     * ARGV[2] = expiry field in the bucket
+     * ARGV[3] = fallback click count from DB (used if the link has no Redis state)
+     * ARGV[4] = fallback expiry from DB, epoch seconds
+     * ARGV[5] = current time, epoch seconds
+     * ARGV[6] = shortCode (to add to dirty set, and the field in the hour hash)
+     * ARGV[7] = visitor ID
+     * ARGV[8] = hour hash TTL (seconds), set when the link's first click of the hour creates its field
+     * ARGV[9] = HyperLogLog TTL (seconds), set when PFADD changes the estimate
      *
      * Returns:
      *   -1  if expired
      *   new click count  if valid
      */
     public static final String REDIRECT_SCRIPT =
-            // Ensure click key exists; populate from DB fallback if missing
-            "if redis.call('EXISTS', KEYS[1]) == 0 then " +
-            "    redis.call('SET', KEYS[1], ARGV[1]) " +
+            ENSURE_COMPACT_FUNCTION +
+            "local expiry = ensure(KEYS[1], KEYS[2], KEYS[3], ARGV[1], ARGV[2], ARGV[3], ARGV[4]) " +
+            // Integer comparison of epoch seconds
+            "if tonumber(expiry) < tonumber(ARGV[5]) then " +
+            "    return -1 " +
             "end " +
-            // Ensure expiry key exists; populate from DB fallback if missing
-            "if redis.call('EXISTS', KEYS[2]) == 0 then " +
-            "    redis.call('SET', KEYS[2], ARGV[2]) " +
+            "local clicks = redis.call('HINCRBY', KEYS[1], ARGV[1], 1) " +
+            // Hourly series + unique visitors; TTLs are only touched when something new was created
+            "if redis.call('HINCRBY', KEYS[5], ARGV[6], 1) == 1 then " +
+            "    redis.call('EXPIRE', KEYS[5], ARGV[8]) " +
             "end " +
-            // Check expiry: compare stored expiry with current time
-            "local expiry = redis.call('GET', KEYS[2]) " +
-            "if expiry < ARGV[3] then " +
-            "    return -1 " +
+            "if redis.call('PFADD', KEYS[6], ARGV[7]) == 1 then " +
+            "    redis.call('EXPIRE', KEYS[6], ARGV[9]) " +
             "end " +
-            // Increment click count
-            "local clicks = redis.call('INCR', KEYS[1]) " +
             // Mark shortCode as dirty for sync job
-            "redis.call('SADD', KEYS[3], ARGV[4]) " +
+            "redis.call('SADD', KEYS[4], ARGV[6]) " +
             "return clicks";
+
+    /**
+     * Buffered click flush: apply many accumulated click deltas in one round-trip.
+     *
+     * KEYS[1]   = clicks:h:{hour} of the flush (hourly click counts)
+     * KEYS[2..] = four per shortCode: link:{bucket}, url:{shortCode}:clicks, url:{shortCode}:expiry,
+     *             dirty_urls:{shard}
+     *
+     * ARGV[1]   = hour hash TTL (seconds)
+     * ARGV[2..] = six per shortCode (in KEYS order):
+     *   shortCode, click delta, clicks field, expiry field,
+     *   fallback click count from DB, fallback expiry (epoch seconds) from DB
+     *
+     * Unique visitors are added by the flush separately (PFADD with many elements per key).
+     *
+     * Returns: number of shortCodes applied
+     */
+    public static final String CLICK_FLUSH_SCRIPT =
+            ENSURE_COMPACT_FUNCTION +
+            "local n = (#KEYS - 1) / 4 " +
+            "for i = 0, n - 1 do " +
+            "    local k = 2 + i * 4 " +
+            "    local a = 1 + i * 6 " +
+            // Seed like REDIRECT_SCRIPT does, so a missing entry doesn't restart at 0
+            "    ensure(KEYS[k], KEYS[k + 1], KEYS[k + 2], ARGV[a + 3], ARGV[a + 4], ARGV[a + 5], ARGV[a + 6]) " +
+            "    redis.call('HINCRBY', KEYS[k], ARGV[a + 3], ARGV[a + 2]) " +
+            "    redis.call('HINCRBY', KEYS[1], ARGV[a + 1], ARGV[a + 2]) " +
+            "    redis.call('SADD', KEYS[k + 3], ARGV[a + 1]) " +
+            "end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return n";
+
+    /**
+     * Online layout migration: moves a batch of links from the legacy url:{code}:* strings into
+     * their compact buckets. Links already migrated (e.g. by a redirect) are left untouched.
+     *
+     * KEYS = three per link: link:{bucket}, url:{shortCode}:clicks, url:{shortCode}:expiry
+     * ARGV = three per link: clicks field, expiry field, expiry in epoch seconds
+     *
+     * Returns: number of links processed
+     */
+    public static final String LINK_STATE_MIGRATE_SCRIPT =
+            ENSURE_COMPACT_FUNCTION +
+            "local n = #KEYS / 3 " +
+            "for i = 0, n - 1 do " +
+            "    local k = 1 + i * 3 " +
+            "    local a = 1 + i * 3 " +
+            "    ensure(KEYS[k], KEYS[k + 1], KEYS[k + 2], ARGV[a], ARGV[a + 1], '0', ARGV[a + 2]) " +
+            "end " +
+            "return n";
+
+    /**
+     * Extends a lease (a key SET NX PX by its owner) if the caller still holds it.
+     *
+     * KEYS[1] = lease key
+     * ARGV[1] = owner ID
+     * ARGV[2] = new TTL (ms)
+     *
+     * Returns: 1 if extended, 0 if the lease expired or another owner took it
+     */
+    public static final String LEASE_RENEW_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "    return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0";
+
+    /**
+     * Releases a lease if the caller still holds it, so a late release can't drop a new owner's lease.
+     *
+     * KEYS[1] = lease key
+     * ARGV[1] = owner ID
+     *
+     * Returns: 1 if released, 0 otherwise
+     */
+    public static final String LEASE_RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "    return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0";
 }
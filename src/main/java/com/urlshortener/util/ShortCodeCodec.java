@@ -0,0 +1,52 @@
+package com.urlshortener.util;
+
+/**
+ * Maps counter IDs to short codes and back.
+ *
+ * width = 0 keeps the classic minimal-length codes; width > 0 zero-pads every code to that length.
+ * With a scrambler, IDs are permuted first so consecutive codes are not guessable.
+ * Decoding is allocation-free, so malformed or out-of-range codes can be rejected on the
+ * redirect path before any cache or DB lookup.
+ */
+public final class ShortCodeCodec {
+
+    private final int width;
+    private final IdScrambler scrambler;
+
+    public ShortCodeCodec(int width, IdScrambler scrambler) {
+        if (scrambler != null && width < 1) {
+            throw new IllegalArgumentException("ID scrambling requires a fixed code width");
+        }
+        this.width = width;
+        this.scrambler = scrambler;
+    }
+
+    public String encode(long id) {
+        long value = scrambler != null ? scrambler.scramble(id) : id;
+        return Base62Encoder.encode(value, width);
+    }
+
+    /**
+     * @return the counter ID for the code, or -1 if the code cannot have been produced by encode.
+     *         That includes extra leading zero digits ("ab" for "b"): encode never emits them, so
+     *         such a code would only alias another link's ID.
+     */
+    public long decode(CharSequence shortCode) {
+        if (width > 0 && shortCode.length() < width) {
+            return -1;
+        }
+
+        long value = Base62Encoder.decode(shortCode);
+        if (value < 0 || shortCode.length() != Math.max(width, Base62Encoder.digitCount(value))) {
+            return -1;
+        }
+
+        if (scrambler != null) {
+            if (value >= scrambler.domainSize()) {
+                return -1;
+            }
+            return scrambler.unscramble(value);
+        }
+        return value;
+    }
+}
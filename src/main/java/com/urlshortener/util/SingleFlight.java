@@ -0,0 +1,93 @@
+package com.urlshortener.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-key call coalescing: while a load for a key runs, further calls for the same key wait for
+ * it and get its result (or its exception) instead of running their own. The loader runs on the
+ * calling thread of the first call; nothing is cached once it completes.
+ *
+ * loadAsync is the same for loaders that return a future (e.g. a reactive driver's query): no
+ * caller waits, each gets the shared future. The two forms don't coalesce with each other.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Runnable onJoin;
+
+    /**
+     * @param onJoin called whenever a call waits on a load that's already running (e.g. to count them)
+     */
+    public SingleFlight(Runnable onJoin) {
+        this.onJoin = onJoin;
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            onJoin.run();
+            return join(running);
+        }
+
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return the running load's future, or the one loader just started; it's shared, so callers
+     *         must not complete or cancel it
+     */
+    public CompletableFuture<V> loadAsync(K key, Supplier<? extends CompletionStage<V>> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            onJoin.run();
+            return running;
+        }
+
+        // Removed before it completes, so a call that sees it done starts a new load
+        try {
+            loader.get().whenComplete((value, error) -> {
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error instanceof CompletionException e && e.getCause() != null
+                            ? e.getCause() : error);
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight;
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // Rethrow what the loader threw, as the first caller saw it
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
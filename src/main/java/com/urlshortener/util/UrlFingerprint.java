@@ -0,0 +1,83 @@
+package com.urlshortener.util;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Fixed-size fingerprint of a normalized URL, used as the dedupe key for shortening instead of
+ * the URL itself: 128 bits of SHA-256, Base64url-encoded to 22 characters however long the URL is.
+ *
+ * Normalization only applies rewrites that can't change which resource the URL names:
+ * scheme and host are lower-cased, a default port (80 for http, 443 for https) is dropped and an
+ * empty path becomes "/". Path, query and fragment are kept byte for byte.
+ *
+ * At 128 bits a collision is not a practical concern (~2^64 URLs for a 50% chance).
+ */
+public final class UrlFingerprint {
+
+    private static final int FINGERPRINT_BYTES = 16;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private UrlFingerprint() {}
+
+    public static String of(String url) {
+        byte[] digest = SHA_256.get().digest(normalize(url).getBytes(StandardCharsets.UTF_8));
+        return ENCODER.encodeToString(Arrays.copyOf(digest, FINGERPRINT_BYTES));
+    }
+
+    static String normalize(String url) {
+        String trimmed = url.trim();
+        URI uri;
+        try {
+            uri = new URI(trimmed);
+        } catch (URISyntaxException e) {
+            // Not parseable as a URI: fingerprint it as-is rather than guess
+            return trimmed;
+        }
+        if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return trimmed;
+        }
+
+        String scheme = uri.getScheme().toLowerCase();
+        StringBuilder normalized = new StringBuilder(trimmed.length()).append(scheme).append("://");
+
+        if (uri.getHost() == null) {
+            // Registry-based authority (e.g. underscores in the host) — keep it, just lower-cased
+            normalized.append(uri.getRawAuthority().toLowerCase());
+        } else {
+            if (uri.getRawUserInfo() != null) {
+                normalized.append(uri.getRawUserInfo()).append('@');
+            }
+            normalized.append(uri.getHost().toLowerCase());
+            int port = uri.getPort();
+            boolean defaultPort = (port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"));
+            if (port != -1 && !defaultPort) {
+                normalized.append(':').append(port);
+            }
+        }
+
+        String path = uri.getRawPath();
+        normalized.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            normalized.append('?').append(uri.getRawQuery());
+        }
+        if (uri.getRawFragment() != null) {
+            normalized.append('#').append(uri.getRawFragment());
+        }
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package com.urlshortener.service;
+
+import com.urlshortener.util.ConcurrentBitSet;
+import com.urlshortener.util.ShortCodeCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ShortCodeFilter against a mocked RedisTemplate whose bitmap commands act on an in-memory
+ * shared bitmap, as another instance would see it.
+ */
+class ShortCodeFilterTest {
+
+    private final ConcurrentBitSet shared = new ConcurrentBitSet();
+    private final RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+    private final RedisCircuitBreaker circuitBreaker = mock(RedisCircuitBreaker.class);
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+
+    private ShortCodeFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(inv -> inv.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+
+        when(stringCommands.get(any(byte[].class))).thenAnswer(inv -> shared.toRedisBitmap());
+        when(stringCommands.getBit(any(byte[].class), anyLong())).thenAnswer(inv -> shared.get(inv.getArgument(1)));
+        when(stringCommands.setBit(any(byte[].class), anyLong(), anyBoolean())).thenAnswer(inv -> {
+            long id = inv.getArgument(1);
+            boolean previous = shared.get(id);
+            if (inv.<Boolean>getArgument(2)) {
+                shared.set(id);
+            } else {
+                shared.clear(id);
+            }
+            return previous;
+        });
+        when(circuitBreaker.allowRequest()).thenReturn(true);
+
+        filter = new ShortCodeFilter(redisTemplate, mock(MongoTemplate.class), new ShortCodeCodec(0, null),
+                mock(RedisMessageListenerContainer.class), circuitBreaker);
+    }
+
+    @Test
+    void failsOpenUntilLoaded() {
+        assertThat(filter.mightExist(42)).isTrue();
+        verify(stringCommands, never()).getBit(any(byte[].class), anyLong());
+    }
+
+    @Test
+    void loadsSharedBitmap() {
+        shared.set(7);
+        filter.load();
+
+        assertThat(filter.mightExist(7)).isTrue();
+        verify(stringCommands, never()).getBit(any(byte[].class), anyLong());
+    }
+
+    @Test
+    void unknownIdIsConfirmedAbsentWithRedis() {
+        loadWith(1);
+
+        assertThat(filter.mightExist(100)).isFalse();
+        verify(stringCommands).getBit(any(byte[].class), eq(100L));
+    }
+
+    @Test
+    void idAddedOnAnotherInstanceIsFoundAndCached() {
+        loadWith(1);
+        shared.set(200);
+
+        assertThat(filter.mightExist(200)).isTrue();
+        assertThat(filter.mightExist(200)).isTrue();
+        verify(stringCommands, times(1)).getBit(any(byte[].class), anyLong());
+    }
+
+    @Test
+    void addAndRemoveUpdateLocalAndSharedBitmaps() {
+        loadWith(1);
+
+        filter.add(5);
+        assertThat(filter.mightExist(5)).isTrue();
+        assertThat(shared.get(5)).isTrue();
+        verify(redisTemplate).convertAndSend(ShortCodeFilter.CHANNEL, "add:5");
+
+        filter.remove(5);
+        assertThat(filter.mightExist(5)).isFalse();
+        assertThat(shared.get(5)).isFalse();
+        verify(redisTemplate).convertAndSend(ShortCodeFilter.CHANNEL, "remove:5");
+    }
+
+    @Test
+    void appliesMessagesFromOtherInstances() {
+        loadWith(1);
+
+        filter.onMessage(message("addRange:10:3"), null);
+        filter.onMessage(message("remove:11"), null);
+        filter.onMessage(message("add:not-a-number"), null);
+
+        assertThat(filter.mightExist(10)).isTrue();
+        assertThat(filter.mightExist(12)).isTrue();
+        // Only 11 wasn't local, and the shared bitmap doesn't have it either
+        assertThat(filter.mightExist(11)).isFalse();
+        verify(stringCommands, times(1)).getBit(any(byte[].class), anyLong());
+    }
+
+    @Test
+    void failsOpenWhenGetBitFails() {
+        loadWith(1);
+        when(stringCommands.getBit(any(byte[].class), anyLong()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertThat(filter.mightExist(300)).isTrue();
+        verify(circuitBreaker).recordFailure();
+    }
+
+    @Test
+    void failsClosedAndQueuesUpdatesWhileCircuitIsOpen() {
+        loadWith(1);
+        shared.set(400);
+        when(circuitBreaker.allowRequest()).thenReturn(false);
+
+        assertThat(filter.mightExist(400)).isFalse();
+        filter.add(6);
+        assertThat(filter.mightExist(6)).isTrue();
+        assertThat(shared.get(6)).isFalse();
+        verify(stringCommands, never()).getBit(any(byte[].class), anyLong());
+
+        when(circuitBreaker.allowRequest()).thenReturn(true);
+        filter.retryFailedUpdates();
+        assertThat(shared.get(6)).isTrue();
+        verify(redisTemplate).convertAndSend(ShortCodeFilter.CHANNEL, "add:6");
+    }
+
+    private void loadWith(long id) {
+        shared.set(id);
+        filter.load();
+    }
+
+    private static Message message(String body) {
+        Message message = mock(Message.class);
+        when(message.getBody()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}
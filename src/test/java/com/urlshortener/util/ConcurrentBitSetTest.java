@@ -0,0 +1,88 @@
+package com.urlshortener.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrentBitSetTest {
+
+    @Test
+    void setGetAndClear() {
+        ConcurrentBitSet bits = new ConcurrentBitSet();
+        long sparse = 5_000_000_000L;
+
+        bits.set(0);
+        bits.set(63);
+        bits.set(64);
+        bits.set(sparse);
+        assertThat(bits.get(0)).isTrue();
+        assertThat(bits.get(63)).isTrue();
+        assertThat(bits.get(64)).isTrue();
+        assertThat(bits.get(sparse)).isTrue();
+        assertThat(bits.get(1)).isFalse();
+        assertThat(bits.get(sparse - 1)).isFalse();
+
+        bits.clear(63);
+        bits.clear(sparse + 1_000_000_000L);   // unallocated segment: no-op
+        assertThat(bits.get(63)).isFalse();
+        assertThat(bits.get(64)).isTrue();
+    }
+
+    @Test
+    void outOfRangeIndexes() {
+        ConcurrentBitSet bits = new ConcurrentBitSet();
+
+        assertThat(bits.get(-1)).isFalse();
+        assertThat(bits.get(ConcurrentBitSet.MAX_BITS)).isFalse();
+        assertThatThrownBy(() -> bits.set(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> bits.set(ConcurrentBitSet.MAX_BITS)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void usesRedisBitmapLayout() {
+        ConcurrentBitSet bits = new ConcurrentBitSet();
+        bits.set(0);
+        bits.set(9);
+
+        byte[] bitmap = bits.toRedisBitmap();
+        // Bit 0 is the most significant bit of byte 0, as with SETBIT
+        assertThat(bitmap[0]).isEqualTo((byte) 0x80);
+        assertThat(bitmap[1]).isEqualTo((byte) 0x40);
+
+        ConcurrentBitSet copy = new ConcurrentBitSet();
+        copy.set(3);
+        copy.orRedisBitmap(bitmap);
+        assertThat(copy.get(0)).isTrue();
+        assertThat(copy.get(3)).isTrue();
+        assertThat(copy.get(9)).isTrue();
+        assertThat(copy.get(8)).isFalse();
+
+        assertThat(new ConcurrentBitSet().toRedisBitmap()).isEmpty();
+    }
+
+    @Test
+    void concurrentSetsInOneWordAreNotLost() throws InterruptedException {
+        ConcurrentBitSet bits = new ConcurrentBitSet();
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            pool.execute(() -> {
+                for (int i = offset; i < 64 * 1024; i += threads) {
+                    bits.set(i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 64 * 1024; i++) {
+            assertThat(bits.get(i)).as("bit %d", i).isTrue();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.urlshortener.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountMinSketchTest {
+
+    @Test
+    void neverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(1024);
+        for (long key = 0; key < 5_000; key++) {
+            for (int i = 0; i <= key % 7; i++) {
+                sketch.add(key);
+            }
+        }
+
+        for (long key = 0; key < 5_000; key++) {
+            assertThat(sketch.estimate(key)).isGreaterThanOrEqualTo(key % 7 + 1);
+        }
+    }
+
+    @Test
+    void heavyHitterStandsOut() {
+        CountMinSketch sketch = new CountMinSketch(4096);
+        long estimate = 0;
+        for (int i = 0; i < 10_000; i++) {
+            estimate = sketch.add(42);
+            sketch.add(1_000 + i);
+        }
+
+        assertThat(estimate).isGreaterThanOrEqualTo(10_000);
+        // Error bound ~e/width of the 20,000 total, with high probability
+        assertThat(sketch.estimate(42)).isLessThan(10_000 + 100);
+        assertThat(sketch.estimate(7)).isLessThan(100);
+    }
+}
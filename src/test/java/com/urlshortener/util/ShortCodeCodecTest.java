@@ -0,0 +1,98 @@
+package com.urlshortener.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShortCodeCodecTest {
+
+    private static final long WIDTH_6_DOMAIN = 56_800_235_584L; // 62^6
+
+    @Test
+    void minimalWidthRoundTrips() {
+        ShortCodeCodec codec = new ShortCodeCodec(0, null);
+
+        assertThat(codec.encode(0)).isEqualTo("a");
+        assertThat(codec.encode(61)).isEqualTo("9");
+        assertThat(codec.encode(62)).isEqualTo("ba");
+        for (long id : sampleIds(Long.MAX_VALUE)) {
+            assertThat(codec.decode(codec.encode(id))).isEqualTo(id);
+        }
+    }
+
+    @Test
+    void fixedWidthPadsAndRoundTrips() {
+        ShortCodeCodec codec = new ShortCodeCodec(6, null);
+
+        assertThat(codec.encode(1)).isEqualTo("aaaaab");
+        assertThat(codec.decode("aaaaab")).isEqualTo(1);
+        for (long id : sampleIds(WIDTH_6_DOMAIN)) {
+            String code = codec.encode(id);
+            assertThat(code).hasSize(6);
+            assertThat(codec.decode(code)).isEqualTo(id);
+        }
+
+        // IDs past the width grow the code instead of truncating it
+        assertThat(codec.encode(WIDTH_6_DOMAIN)).isEqualTo("baaaaaa");
+        assertThat(codec.decode("baaaaaa")).isEqualTo(WIDTH_6_DOMAIN);
+    }
+
+    @Test
+    void scrambledCodesRoundTripAndAreNotSequential() {
+        ShortCodeCodec codec = new ShortCodeCodec(6, new IdScrambler(6, 42L));
+
+        Set<String> codes = new HashSet<>();
+        for (long id = 0; id < 10_000; id++) {
+            String code = codec.encode(id);
+            assertThat(code).hasSize(6);
+            assertThat(codec.decode(code)).isEqualTo(id);
+            codes.add(code);
+        }
+        assertThat(codes).hasSize(10_000);
+        assertThat(codec.encode(1)).isNotEqualTo("aaaaab");
+
+        for (long id : sampleIds(WIDTH_6_DOMAIN)) {
+            assertThat(codec.decode(codec.encode(id))).isEqualTo(id);
+        }
+    }
+
+    @Test
+    void rejectsCodesEncodeNeverProduces() {
+        ShortCodeCodec minimal = new ShortCodeCodec(0, null);
+        assertThat(minimal.decode("")).isEqualTo(-1);
+        assertThat(minimal.decode("ab")).isEqualTo(-1);          // leading zero digit aliases "b"
+        assertThat(minimal.decode("a-b")).isEqualTo(-1);
+        assertThat(minimal.decode("abcé")).isEqualTo(-1);
+        assertThat(minimal.decode("999999999999")).isEqualTo(-1); // longer than any long
+        assertThat(minimal.decode("99999999999")).isEqualTo(-1);  // overflows a long
+
+        ShortCodeCodec fixed = new ShortCodeCodec(6, null);
+        assertThat(fixed.decode("aaaab")).isEqualTo(-1);         // shorter than the width
+        assertThat(fixed.decode("aaaaaab")).isEqualTo(-1);       // padded past the width
+
+        ShortCodeCodec scrambled = new ShortCodeCodec(6, new IdScrambler(6, 42L));
+        assertThat(scrambled.decode("baaaaaa")).isEqualTo(-1);   // outside the scrambling domain
+    }
+
+    @Test
+    void scramblingRequiresFixedWidth() {
+        assertThatThrownBy(() -> new ShortCodeCodec(0, new IdScrambler(6, 42L)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long[] sampleIds(long bound) {
+        SplittableRandom random = new SplittableRandom(7);
+        long[] ids = new long[1_000];
+        ids[0] = 0;
+        ids[1] = bound - 1;
+        for (int i = 2; i < ids.length; i++) {
+            ids[i] = random.nextLong(bound);
+        }
+        return ids;
+    }
+}